@@ -1,8 +1,66 @@
 import { queryClient } from "./queryClient";
+import type { Vehicle } from "@shared/schema";
 
 let ws: WebSocket | null = null;
 let reconnectTimer: number | null = null;
 
+// Binary feed (see BinaryFeedFormat on the backend): dictionary entries arrive as text frames,
+// positions as 24-byte records keyed by vehicle index.
+type DictionaryEntry = Pick<Vehicle, "id" | "driverName" | "corridor" | "vehicleType">;
+const dictionary = new Map<number, DictionaryEntry>();
+let statuses: string[] = [];
+const UPDATE_BYTES = 24;
+const NO_STATUS = 255;
+
+function applyDictionary(data: any) {
+  if (Array.isArray(data.statuses)) statuses = data.statuses;
+  for (const entry of data.vehicles ?? []) {
+    const { index, ...rest } = entry;
+    dictionary.set(index, rest);
+  }
+}
+
+function applyBinaryFrame(buffer: ArrayBuffer) {
+  const view = new DataView(buffer);
+  if (view.getUint8(0) !== 1 || view.getUint8(1) !== 1) return;
+  const updates = view.getUint32(2);
+  const removedCount = view.getUint32(6);
+  const changed = new Map<string, Vehicle>();
+  let offset = 10;
+  for (let i = 0; i < updates; i++, offset += UPDATE_BYTES) {
+    const entry = dictionary.get(view.getUint32(offset));
+    if (!entry) continue;
+    const status = view.getUint8(offset + 15);
+    const lastUpdate = Number(view.getBigInt64(offset + 16));
+    changed.set(entry.id, {
+      ...entry,
+      latitude: view.getInt32(offset + 4) / 1e6,
+      longitude: view.getInt32(offset + 8) / 1e6,
+      speed: view.getUint16(offset + 12) / 10,
+      fuel: view.getUint8(offset + 14),
+      status: status === NO_STATUS ? (null as unknown as string) : statuses[status],
+      lastUpdate: lastUpdate ? (new Date(lastUpdate).toISOString() as unknown as Date) : null,
+    });
+  }
+  const removed = new Set<string>();
+  for (let i = 0; i < removedCount; i++, offset += 4) {
+    const entry = dictionary.get(view.getUint32(offset));
+    if (entry) removed.add(entry.id);
+  }
+  // Frames carry the full state, so the cached vehicle list is patched instead of refetched
+  queryClient.setQueryData<Vehicle[]>(["/api/vehicles"], (current) => {
+    if (!current) return current;
+    const next = current.filter((v) => !removed.has(v.id)).map((v) => {
+      const update = changed.get(v.id);
+      if (update) changed.delete(v.id);
+      return update ?? v;
+    });
+    return next.concat(Array.from(changed.values()));
+  });
+  queryClient.invalidateQueries({ queryKey: ["/api/analytics/summary"] });
+  queryClient.invalidateQueries({ queryKey: ["/api/analytics/corridors"] });
+}
+
 export function connectWebSocket() {
   const disabled = import.meta.env.VITE_WS_DISABLED === "true";
   if (disabled) {
@@ -15,16 +73,28 @@ export function connectWebSocket() {
   const wsUrl = configuredUrl || defaultUrl;
 
   try {
+    const binary = import.meta.env.VITE_WS_FORMAT !== "json";
     ws = new WebSocket(wsUrl);
+    ws.binaryType = "arraybuffer";
 
     ws.onopen = () => {
       console.log('WebSocket connected', wsUrl);
+      if (binary) {
+        dictionary.clear();
+        ws?.send(JSON.stringify({ action: "format", format: "binary" }));
+      }
     };
 
     ws.onmessage = (event) => {
       try {
+        if (event.data instanceof ArrayBuffer) {
+          applyBinaryFrame(event.data);
+          return;
+        }
         const data = JSON.parse(event.data);
-        if (data.vehicleId || data.type === 'vehicle_update') {
+        if (data.type === 'vehicle_dictionary') {
+          applyDictionary(data);
+        } else if (data.vehicleId || data.type === 'vehicle_update') {
           // Invalidate vehicle-related queries to trigger refetch
           queryClient.invalidateQueries({ queryKey: ["/api/vehicles"] });
           queryClient.invalidateQueries({ queryKey: ["/api/analytics/summary"] });
@@ -0,0 +1,98 @@
+package com.driveinsight.bench;
+
+import com.driveinsight.model.Vehicle;
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.service.AnalyticsService;
+import com.driveinsight.service.ChangeVersion;
+import com.driveinsight.service.FleetAggregates;
+import com.driveinsight.service.FleetColumns;
+import com.driveinsight.service.FleetStateStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Analytics endpoints over the incremental aggregates, against a full recompute baseline. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyticsBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int fleetSize;
+
+    private FleetStateStore store;
+    private AnalyticsService analytics;
+    private String[] ids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Vehicle> vehicles = Fakes.vehicles(fleetSize, 42);
+        store = new FleetStateStore(Fakes.vehicleRepository(vehicles), new Fakes.NoopJdbcTemplate(), new ChangeVersion(), 500, 1000, 1_000_000);
+        analytics = new AnalyticsService(new FleetAggregates(store), new FleetColumns(store, 5, 15, 65536), Fakes.dailyMetricsRepository());
+        store.load();
+        ids = vehicles.stream().map(Vehicle::getId).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Object> summary() {
+        return analytics.getSummary();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> corridorDistribution() {
+        return analytics.getCorridorDistribution();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> fleetStatusDistribution() {
+        return analytics.getFleetStatusDistribution();
+    }
+
+    /** Per-corridor counts, speed and fuel from a scan of the fleet columns. */
+    @Benchmark
+    public List<FleetColumns.Group> corridorBreakdown() {
+        return analytics.getBreakdown("corridor");
+    }
+
+    /** The same breakdown computed from the vehicle records. */
+    @Benchmark
+    public Map<String, double[]> corridorBreakdownFromRecords() {
+        Map<String, double[]> groups = new HashMap<>();
+        for (VehicleState v : store.getAll()) {
+            double[] g = groups.computeIfAbsent(v.corridor(), k -> new double[5]);
+            g[0]++;
+            if ("active".equalsIgnoreCase(v.status())) g[1]++;
+            if (v.speed() >= 5) g[2]++;
+            g[3] += v.speed();
+            g[4] += v.fuel();
+        }
+        return groups;
+    }
+
+    /** What every analytics call cost before aggregates were maintained incrementally. */
+    @Benchmark
+    public Map<String, Long> recomputeCorridorsBaseline() {
+        Map<String, Long> counts = new HashMap<>();
+        for (VehicleState v : store.getAll()) counts.merge(v.corridor(), 1L, Long::sum);
+        return counts;
+    }
+
+    /** Cost of one position update including all change listeners. */
+    @Benchmark
+    public Object applyUpdate() {
+        String id = ids[next++ % ids.length];
+        return store.update(id, s -> s.withPosition(s.latitude() + 0.0001, s.longitude(), s.speed(), Instant.now()));
+    }
+}
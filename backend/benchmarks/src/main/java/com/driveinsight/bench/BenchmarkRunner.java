@@ -0,0 +1,30 @@
+package com.driveinsight.bench;
+
+import org.openjdk.jmh.Main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH arguments and, unless a result file is
+ * given, writes a timestamped JSON report to {@code jmh-results/} so runs can be diffed.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        if (!argList.contains("-rff") && !argList.contains("-h") && !argList.contains("-l")) {
+            Path dir = Path.of("jmh-results");
+            Files.createDirectories(dir);
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            argList.addAll(List.of("-rf", "json", "-rff", dir.resolve("jmh-" + stamp + ".json").toString()));
+        }
+        Main.main(argList.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,93 @@
+package com.driveinsight.bench;
+
+import com.driveinsight.model.Vehicle;
+import com.driveinsight.service.ChangeVersion;
+import com.driveinsight.service.FleetColumns;
+import com.driveinsight.service.FleetStateStore;
+import com.driveinsight.service.VehicleUpdateBroadcaster;
+import com.driveinsight.ws.FramePool;
+import com.driveinsight.ws.SubscriptionRegistry;
+import com.driveinsight.ws.VehicleWebSocketHandler;
+import com.driveinsight.ws.WebSocketSessionManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.socket.TextMessage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One broadcast tick end to end: build the delta frame for the changed vehicles, fan it out to
+ * N sessions and wait until every session has received it, on the JSON or the binary feed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    private static final int FLEET_SIZE = 10_000;
+
+    @Param({"10", "100", "1000"})
+    int sessions;
+
+    @Param({"100", "1000"})
+    int changedVehicles;
+
+    @Param({"json", "binary"})
+    String format;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private FleetStateStore store;
+    private VehicleWebSocketHandler handler;
+    private VehicleUpdateBroadcaster broadcaster;
+    private String[] ids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<Vehicle> vehicles = Fakes.vehicles(FLEET_SIZE, 42);
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        store = new FleetStateStore(Fakes.vehicleRepository(vehicles), new Fakes.NoopJdbcTemplate(), new ChangeVersion(), 500, 1000, 1_000_000);
+        SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+        handler = new VehicleWebSocketHandler(new WebSocketSessionManager(5000, 512 * 1024), subscriptions, mapper, new SimpleMeterRegistry(), 4);
+        FramePool pool = new FramePool(new SimpleMeterRegistry(), 16, 64 * 1024, 4 * 1024 * 1024);
+        broadcaster = new VehicleUpdateBroadcaster(store, handler, subscriptions, mapper, pool, new FleetColumns(store, 5, 15, 65536));
+        store.load();
+        broadcaster.flush();
+        TextMessage binary = new TextMessage("{\"action\":\"format\",\"format\":\"binary\"}");
+        for (int i = 0; i < sessions; i++) {
+            Fakes.CountingSession session = new Fakes.CountingSession(delivered);
+            handler.afterConnectionEstablished(session);
+            if ("binary".equals(format)) handler.handleMessage(session, binary);
+        }
+        // Switches the binary sessions over; each gets the dictionary and a full frame
+        broadcaster.flush();
+        ids = vehicles.stream().map(Vehicle::getId).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handler.shutdown();
+        store.shutdown();
+    }
+
+    @Benchmark
+    public long tick() {
+        for (int i = 0; i < changedVehicles; i++) {
+            String id = ids[next++ % ids.length];
+            store.update(id, s -> s.withPosition(s.latitude() + 0.0001, s.longitude(), s.speed() + 0.1, Instant.now()));
+        }
+        long target = delivered.get() + sessions;
+        broadcaster.flush();
+        while (delivered.get() < target) {
+            Thread.onSpinWait();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,162 @@
+package com.driveinsight.bench;
+
+import com.driveinsight.model.Vehicle;
+import com.driveinsight.repo.DailyMetricsRecordRepository;
+import com.driveinsight.repo.RouteTrackRepository;
+import com.driveinsight.repo.VehicleRepository;
+import com.driveinsight.service.CorridorGeometry;
+import com.driveinsight.service.TrackCodec;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** In-memory stand-ins for the database and WebSocket pieces the benchmarks drive. */
+final class Fakes {
+    private static final String[] STATUSES = {"active", "active", "active", "idle", "maintenance", "offline"};
+    private static final String[] TYPES = {"truck", "truck", "van", "sedan"};
+
+    private Fakes() {}
+
+    static List<Vehicle> vehicles(int count, long seed) {
+        Random random = new Random(seed);
+        List<CorridorGeometry.Corridor> corridors = new ArrayList<>(CorridorGeometry.all());
+        List<Vehicle> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CorridorGeometry.Corridor c = corridors.get(i % corridors.size());
+            double[] p = c.pointAt(random.nextDouble() * c.lengthKm());
+            Vehicle v = new Vehicle();
+            v.setId(String.format("B-%06d", i));
+            v.setDriverName("Driver " + i);
+            v.setCorridor(c.name());
+            v.setSpeed(random.nextDouble() * 100);
+            v.setFuel(random.nextInt(100));
+            v.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+            v.setVehicleType(TYPES[random.nextInt(TYPES.length)]);
+            v.setLatitude(p[0]);
+            v.setLongitude(p[1]);
+            v.setLastUpdate(Instant.now());
+            result.add(v);
+        }
+        return result;
+    }
+
+    static VehicleRepository vehicleRepository(List<Vehicle> vehicles) {
+        return repository(VehicleRepository.class, (name, args) -> switch (name) {
+            case "findAll" -> vehicles;
+            default -> throw new UnsupportedOperationException(name);
+        });
+    }
+
+    static DailyMetricsRecordRepository dailyMetricsRepository() {
+        return repository(DailyMetricsRecordRepository.class, (name, args) -> switch (name) {
+            case "sumTotalDistance" -> 0.0;
+            default -> throw new UnsupportedOperationException(name);
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T repository(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> switch (method.getName()) {
+            case "toString" -> "fake " + type.getSimpleName();
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> handler.invoke(method.getName(), args);
+        }));
+    }
+
+    /** Swallows the batch writer's upserts. */
+    static final class NoopJdbcTemplate extends JdbcTemplate {
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize, ParameterizedPreparedStatementSetter<T> pss) {
+            return new int[0][];
+        }
+
+        @Override
+        public int update(String sql, PreparedStatementSetter pss) {
+            return 0;
+        }
+    }
+
+    /** Route tracks held in memory, encoded exactly as the real table stores them. */
+    static final class InMemoryTrackRepository extends RouteTrackRepository {
+        private final Map<Long, List<Segment>> tracks = new HashMap<>();
+
+        InMemoryTrackRepository() {
+            super(new NoopJdbcTemplate());
+        }
+
+        void put(long routeId, double[] lats, double[] lngs, int segmentPoints) {
+            List<Segment> segments = new ArrayList<>();
+            for (int from = 0, s = 0; from < lats.length; from += segmentPoints, s++) {
+                int to = Math.min(lats.length, from + segmentPoints);
+                segments.add(new Segment(s, from + 1, to - from, TrackCodec.encode(lats, lngs, from, to)));
+            }
+            tracks.put(routeId, segments);
+        }
+
+        @Override
+        public boolean exists(long routeId) {
+            return tracks.containsKey(routeId);
+        }
+
+        @Override
+        public void forEachSegment(long routeId, SegmentHandler handler) {
+            try {
+                for (Segment s : tracks.getOrDefault(routeId, List.of())) handler.accept(s);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void forEachLegacyPoint(long routeId, RowCallbackHandler handler) {
+        }
+    }
+
+    /** Open session that counts what it is sent into a shared counter; never blocks. */
+    static final class CountingSession implements WebSocketSession {
+        private static final AtomicLong IDS = new AtomicLong();
+        private final String id = "bench-" + IDS.incrementAndGet();
+        private final AtomicLong messages;
+
+        CountingSession(AtomicLong messages) {
+            this.messages = messages;
+        }
+
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return null; }
+        @Override public HttpHeaders getHandshakeHeaders() { return new HttpHeaders(); }
+        @Override public Map<String, Object> getAttributes() { return new HashMap<>(); }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return null; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getTextMessageSizeLimit() { return Integer.MAX_VALUE; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getBinaryMessageSizeLimit() { return Integer.MAX_VALUE; }
+        @Override public List<WebSocketExtension> getExtensions() { return List.of(); }
+        @Override public void sendMessage(WebSocketMessage<?> message) { messages.incrementAndGet(); }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() { }
+        @Override public void close(CloseStatus status) { }
+    }
+}
@@ -0,0 +1,75 @@
+package com.driveinsight.bench;
+
+import com.driveinsight.model.RoutePoint;
+import com.driveinsight.service.RouteTrackService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /api/routes/{id}/points: streaming the encoded track, a simplified zoomed-out view, and
+ * the previous approach of serializing one RoutePoint entity per fix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteRetrievalBenchmark {
+    private static final long ROUTE_ID = 1L;
+
+    @Param({"1000", "10000", "100000"})
+    int points;
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private RouteTrackService service;
+    private List<RoutePoint> entities;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        double[] lats = new double[points];
+        double[] lngs = new double[points];
+        Random random = new Random(7);
+        double lat = -15.7861;
+        double lng = 35.0058;
+        entities = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            lat += (random.nextDouble() - 0.6) * 0.0005;
+            lng += (random.nextDouble() - 0.5) * 0.0005;
+            lats[i] = lat;
+            lngs[i] = lng;
+            RoutePoint p = new RoutePoint();
+            p.setId((long) i + 1);
+            p.setRouteId(ROUTE_ID);
+            p.setLatitude(lat);
+            p.setLongitude(lng);
+            p.setSequence(i + 1);
+            entities.add(p);
+        }
+        Fakes.InMemoryTrackRepository repository = new Fakes.InMemoryTrackRepository();
+        repository.put(ROUTE_ID, lats, lngs, RouteTrackService.SEGMENT_POINTS);
+        service = new RouteTrackService(repository, mapper, 16);
+    }
+
+    @Benchmark
+    public void streamEncodedTrack() throws Exception {
+        service.writePointsJson(ROUTE_ID, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void simplifiedZoom8() throws Exception {
+        service.writeSimplifiedJson(ROUTE_ID, RouteTrackService.toleranceForZoom(8), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void entityListBaseline() throws Exception {
+        mapper.writeValue(OutputStream.nullOutputStream(), entities);
+    }
+}
@@ -0,0 +1,42 @@
+package com.driveinsight.bench;
+
+import com.driveinsight.model.Vehicle;
+import com.driveinsight.model.VehicleState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Jackson cost of the GET /api/vehicles payload, as state records and as JPA entities. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int fleetSize;
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private List<Vehicle> entities;
+    private List<VehicleState> states;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        entities = Fakes.vehicles(fleetSize, 42);
+        states = entities.stream().map(VehicleState::from).toList();
+    }
+
+    @Benchmark
+    public byte[] vehicleStates() throws Exception {
+        return mapper.writeValueAsBytes(states);
+    }
+
+    @Benchmark
+    public byte[] vehicleEntities() throws Exception {
+        return mapper.writeValueAsBytes(entities);
+    }
+}
@@ -2,11 +2,14 @@ package com.driveinsight;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 
 @SpringBootApplication
 public class Application {
     public static void main(String[] args) {
-        SpringApplication.run(Application.class, args);
+        SpringApplication app = new SpringApplication(Application.class);
+        // Keeps startup steps for /actuator/startup
+        app.setApplicationStartup(new BufferingApplicationStartup(4096));
+        app.run(args);
     }
 }
-
@@ -0,0 +1,148 @@
+package com.driveinsight.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Minimal embedded broker for the {@link ClusterBus}: relays every frame a node sends to every
+ * other connected node, unchanged. It runs inside whichever node sets
+ * {@code fleet.cluster.broker.embedded}, which is enough to run several JVMs locally; it keeps
+ * nothing, so nodes that connect later only see what is published from then on.
+ *
+ * <p>Each connection has a bounded send queue and its own writer thread, so one slow node drops
+ * frames instead of holding up the others.
+ */
+@Component
+public class ClusterBroker {
+    private static final Logger log = LoggerFactory.getLogger(ClusterBroker.class);
+
+    private final boolean enabled;
+    private final int port;
+    private final int queueCapacity;
+    private final Set<Peer> peers = ConcurrentHashMap.newKeySet();
+    private final Counter relayed;
+    private final Counter dropped;
+    private volatile ServerSocket server;
+
+    public ClusterBroker(MeterRegistry meterRegistry,
+                         @Value("${fleet.cluster.enabled:false}") boolean clusterEnabled,
+                         @Value("${fleet.cluster.broker.embedded:false}") boolean embedded,
+                         @Value("${fleet.cluster.broker.port:7400}") int port,
+                         @Value("${fleet.cluster.bus.queue-capacity:10000}") int queueCapacity) {
+        this.enabled = clusterEnabled && embedded;
+        this.port = port;
+        this.queueCapacity = queueCapacity;
+        this.relayed = meterRegistry.counter("fleet.cluster.broker.frames", "result", "relayed");
+        this.dropped = meterRegistry.counter("fleet.cluster.broker.frames", "result", "dropped");
+    }
+
+    // Alongside ClusterBus.start; the bus retries until the broker is listening
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 3)
+    public synchronized void start() throws IOException {
+        if (!enabled || server != null) return;
+        ServerSocket s = new ServerSocket();
+        s.setReuseAddress(true);
+        s.bind(new InetSocketAddress(port));
+        server = s;
+        ClusterBus.daemon(this::acceptLoop, "cluster-broker").start();
+        log.info("Embedded cluster broker listening on port {}", port);
+    }
+
+    private void acceptLoop() {
+        ServerSocket s = server;
+        while (s != null && !s.isClosed()) {
+            try {
+                Socket socket = s.accept();
+                socket.setTcpNoDelay(true);
+                Peer peer = new Peer(socket);
+                peers.add(peer);
+                ClusterBus.daemon(peer::read, "cluster-broker-read").start();
+                ClusterBus.daemon(peer::write, "cluster-broker-write").start();
+            } catch (IOException e) {
+                if (!s.isClosed()) log.warn("Cluster broker accept failed", e);
+            }
+        }
+    }
+
+    private final class Peer {
+        private final Socket socket;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Peer(Socket socket) {
+            this.socket = socket;
+        }
+
+        void read() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (true) {
+                    byte[] frame = ClusterBus.readFrame(in);
+                    for (Peer other : peers) {
+                        if (other == this) continue;
+                        if (other.queue.offer(frame)) relayed.increment();
+                        else dropped.increment();
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void write() {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                while (!socket.isClosed()) {
+                    byte[] frame = queue.take();
+                    out.writeInt(frame.length);
+                    out.write(frame);
+                    if (queue.isEmpty()) out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+            }
+        }
+
+        void close() {
+            if (!peers.remove(this)) return;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+            // Wake the writer, which is blocked on the empty queue
+            queue.offer(new byte[0]);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        ServerSocket s = server;
+        server = null;
+        if (s != null) s.close();
+        peers.forEach(Peer::close);
+    }
+}
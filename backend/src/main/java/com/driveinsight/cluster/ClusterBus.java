@@ -0,0 +1,226 @@
+package com.driveinsight.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This node's connection to the inter-node update bus. Messages are published to a topic and
+ * delivered to every other node's subscribers of that topic, never back to the sender, in the
+ * order each sender published them. Delivery is at most once: messages published while the
+ * connection is down, or beyond a full queue, are dropped. Every message carries the latest
+ * state of what it describes, and the {@link ClusterReplicator}'s periodic resync repairs
+ * anything that does not change again.
+ *
+ * <p>The broker is the {@link ClusterBroker} relay that one node embeds, which keeps local
+ * multi-JVM runs free of external services; the wire protocol is small enough to put a real
+ * broker behind this class instead. Frames are {@code length:4 topic:1 sender:2 payload}, where
+ * length counts everything after itself. Publishing never blocks: frames are queued for a writer
+ * thread, and dropped with a count when the queue is full. Subscribers run on the reader thread,
+ * so they must be quick.
+ */
+@Component
+public class ClusterBus {
+    private static final Logger log = LoggerFactory.getLogger(ClusterBus.class);
+    static final int MAX_FRAME_BYTES = 16 << 20;
+    private static final long RECONNECT_MS = 1000;
+
+    public enum Topic { HEARTBEAT, VEHICLES, ALERTS, TELEMETRY, SYNC }
+
+    @FunctionalInterface
+    public interface Subscriber {
+        void onMessage(int sender, byte[] payload);
+    }
+
+    private final boolean enabled;
+    private final int nodeIndex;
+    private final String host;
+    private final int port;
+    private final BlockingQueue<byte[]> outbound;
+    private final Map<Topic, List<Subscriber>> subscribers = new EnumMap<>(Topic.class);
+    private final Counter sent;
+    private final Counter received;
+    private final Counter dropped;
+    private volatile boolean running;
+    private volatile Socket socket;
+    private volatile DataOutputStream out;
+
+    public ClusterBus(MeterRegistry meterRegistry,
+                      @Value("${fleet.cluster.enabled:false}") boolean enabled,
+                      @Value("${fleet.cluster.node-index:0}") int nodeIndex,
+                      @Value("${fleet.cluster.broker.host:localhost}") String host,
+                      @Value("${fleet.cluster.broker.port:7400}") int port,
+                      @Value("${fleet.cluster.bus.queue-capacity:10000}") int queueCapacity) {
+        this.enabled = enabled;
+        this.nodeIndex = nodeIndex;
+        this.host = host;
+        this.port = port;
+        this.outbound = new ArrayBlockingQueue<>(queueCapacity);
+        for (Topic topic : Topic.values()) subscribers.put(topic, new CopyOnWriteArrayList<>());
+        this.sent = meterRegistry.counter("fleet.cluster.bus.messages", "result", "sent");
+        this.received = meterRegistry.counter("fleet.cluster.bus.messages", "result", "received");
+        this.dropped = meterRegistry.counter("fleet.cluster.bus.messages", "result", "dropped");
+    }
+
+    // After the fleet is loaded, so replicated changes land on a populated store
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 3)
+    public synchronized void start() {
+        if (!enabled || running) return;
+        running = true;
+        daemon(this::readLoop, "cluster-bus-reader").start();
+        daemon(this::writeLoop, "cluster-bus-writer").start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isConnected() {
+        return out != null;
+    }
+
+    public void subscribe(Topic topic, Subscriber subscriber) {
+        subscribers.get(topic).add(subscriber);
+    }
+
+    /** Queues {@code payload} for every other node; returns false if it was dropped. */
+    public boolean publish(Topic topic, byte[] payload) {
+        if (!running || out == null) {
+            dropped.increment();
+            return false;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(7 + payload.length);
+        frame.putInt(3 + payload.length).put((byte) topic.ordinal()).putShort((short) nodeIndex).put(payload);
+        if (!outbound.offer(frame.array())) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void readLoop() {
+        while (running) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress(host, port), (int) RECONNECT_MS);
+                s.setTcpNoDelay(true);
+                socket = s;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                log.info("Cluster bus connected to {}:{} as node {}", host, port, nodeIndex);
+                while (running) dispatch(readFrame(in));
+            } catch (IOException e) {
+                if (running) log.warn("Cluster bus connection to {}:{} lost: {}", host, port, e.toString());
+            } finally {
+                out = null;
+                socket = null;
+            }
+            sleep(RECONNECT_MS);
+        }
+    }
+
+    private void dispatch(byte[] frame) {
+        int ordinal = frame[0] & 0xff;
+        if (ordinal >= Topic.values().length) return;
+        int sender = ((frame[1] & 0xff) << 8) | (frame[2] & 0xff);
+        byte[] payload = new byte[frame.length - 3];
+        System.arraycopy(frame, 3, payload, 0, payload.length);
+        received.increment();
+        for (Subscriber subscriber : subscribers.get(Topic.values()[ordinal])) {
+            try {
+                subscriber.onMessage(sender, payload);
+            } catch (RuntimeException e) {
+                log.warn("Cluster bus subscriber failed", e);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                byte[] frame = outbound.poll(RECONNECT_MS, TimeUnit.MILLISECONDS);
+                if (frame == null) continue;
+                DataOutputStream o = out;
+                if (o == null) {
+                    dropped.increment();
+                    continue;
+                }
+                try {
+                    o.write(frame);
+                    sent.increment();
+                    // Frames queued behind this one share the flush
+                    if (outbound.isEmpty()) o.flush();
+                } catch (IOException e) {
+                    // The reader sees the closed socket and reconnects
+                    closeSocket();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Reads one frame and returns everything after its length prefix. */
+    static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 3 || length > MAX_FRAME_BYTES) throw new IOException("Bad cluster frame length " + length);
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    static Thread daemon(Runnable task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeSocket() {
+        Socket s = socket;
+        if (s == null) return;
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        closeSocket();
+    }
+}
@@ -0,0 +1,203 @@
+package com.driveinsight.cluster;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Which nodes are up and which of them owns each vehicle. Vehicles are hashed into a fixed
+ * number of shards, and each shard is owned by the live node that scores highest for it under
+ * rendezvous hashing. Every node computes the same owners from the same member list without
+ * electing anyone, and when a node joins or leaves only the shards it gains or loses move.
+ *
+ * <p>Nodes announce themselves with a heartbeat on the {@link ClusterBus} and are dropped once
+ * they have been silent for {@code member-timeout-ms}. Heartbeats run on their own thread, so a
+ * slow database flush on the shared scheduler cannot make a healthy node look dead. The owner of a vehicle simulates it,
+ * applies its telemetry, persists it and derives alerts, trips and rollups from it; every other
+ * node holds a replica. A node claims no shards until it has been heartbeating for a full
+ * timeout, by which point it has heard from every live peer, so a starting node does not briefly
+ * take over the whole fleet.
+ *
+ * <p>With clustering disabled this node owns everything.
+ */
+@Component
+public class ClusterMembership {
+    private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+    private static final byte[] HEARTBEAT = new byte[0];
+
+    public record Status(boolean enabled, int nodeIndex, boolean connected, boolean settled,
+                         List<Integer> members, int ownedShards, int shards) {}
+
+    private final ClusterBus bus;
+    private final boolean enabled;
+    private final int nodeIndex;
+    private final int maxNodes;
+    private final long timeoutNanos;
+    // node index -> System.nanoTime() of its last heartbeat; this node is not in it
+    private final Map<Integer, Long> lastSeen = new ConcurrentHashMap<>();
+    private volatile int[] owners;
+    private volatile List<Integer> members;
+    private volatile boolean settled;
+    private long firstHeartbeatNanos;
+    private final ScheduledExecutorService heartbeats;
+
+    public ClusterMembership(ClusterBus bus,
+                             MeterRegistry meterRegistry,
+                             @Value("${fleet.cluster.enabled:false}") boolean enabled,
+                             @Value("${fleet.cluster.node-index:0}") int nodeIndex,
+                             @Value("${fleet.cluster.max-nodes:64}") int maxNodes,
+                             @Value("${fleet.cluster.shards:256}") int shards,
+                             @Value("${fleet.cluster.member-timeout-ms:5000}") long timeoutMs,
+                             @Value("${fleet.cluster.heartbeat-ms:1000}") long heartbeatMs) {
+        if (nodeIndex < 0 || nodeIndex >= maxNodes) {
+            throw new IllegalArgumentException("fleet.cluster.node-index must be between 0 and " + (maxNodes - 1));
+        }
+        this.bus = bus;
+        this.enabled = enabled;
+        this.nodeIndex = nodeIndex;
+        this.maxNodes = maxNodes;
+        this.timeoutNanos = timeoutMs * 1_000_000;
+        this.owners = new int[Math.max(1, shards)];
+        Arrays.fill(owners, nodeIndex);
+        this.members = List.of(nodeIndex);
+        bus.subscribe(ClusterBus.Topic.HEARTBEAT, (sender, payload) -> seen(sender));
+        Gauge.builder("fleet.cluster.members", this, m -> m.members().size()).register(meterRegistry);
+        Gauge.builder("fleet.cluster.shards.owned", this, ClusterMembership::ownedShards).register(meterRegistry);
+        if (enabled) {
+            heartbeats = Executors.newSingleThreadScheduledExecutor(r -> ClusterBus.daemon(r, "cluster-heartbeat"));
+            heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        } else {
+            heartbeats = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int nodeIndex() {
+        return nodeIndex;
+    }
+
+    /** Whether this node knows the live members, and so who owns what; always true when clustering is off. */
+    public boolean isSettled() {
+        return !enabled || settled;
+    }
+
+    public Status status() {
+        return new Status(enabled, nodeIndex, bus.isConnected(), isSettled(), members, ownedShards(), owners.length);
+    }
+
+    /** Live nodes in index order, including this one. */
+    public List<Integer> members() {
+        return members;
+    }
+
+    /**
+     * Spacing of ids allocated by this node: every node allocates from its own residue class
+     * modulo {@code max-nodes}, so ids never collide without coordination.
+     */
+    public int idStride() {
+        return enabled ? maxNodes : 1;
+    }
+
+    /** The node that owns {@code vehicleId} as far as this node knows. */
+    public int owner(String vehicleId) {
+        int[] o = owners;
+        return o[Math.floorMod(vehicleId.hashCode(), o.length)];
+    }
+
+    /** Whether this node should act as the single writer for {@code vehicleId}. */
+    public boolean owns(String vehicleId) {
+        return !enabled || (settled && owner(vehicleId) == nodeIndex);
+    }
+
+    void heartbeat() {
+        try {
+            beat();
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule and silence this node for good
+            log.warn("Cluster heartbeat failed", e);
+        }
+    }
+
+    private void beat() {
+        if (!bus.isConnected()) {
+            // Cut off from the others: nobody's heartbeats arrive, and neither should ownership be claimed
+            firstHeartbeatNanos = 0;
+            settled = false;
+            return;
+        }
+        bus.publish(ClusterBus.Topic.HEARTBEAT, HEARTBEAT);
+        long now = System.nanoTime();
+        if (firstHeartbeatNanos == 0) firstHeartbeatNanos = now;
+        boolean expired = lastSeen.entrySet().removeIf(e -> now - e.getValue() > timeoutNanos);
+        if (!settled && now - firstHeartbeatNanos >= timeoutNanos) {
+            settled = true;
+            expired = true;
+        }
+        if (expired) recompute();
+    }
+
+    private void seen(int sender) {
+        if (sender == nodeIndex) {
+            log.warn("Another node is using cluster node index {}", sender);
+            return;
+        }
+        if (lastSeen.put(sender, System.nanoTime()) == null) recompute();
+    }
+
+    private synchronized void recompute() {
+        List<Integer> live = new ArrayList<>(lastSeen.keySet());
+        live.add(nodeIndex);
+        live.sort(null);
+        int[] next = new int[owners.length];
+        for (int shard = 0; shard < next.length; shard++) {
+            long best = Long.MIN_VALUE;
+            for (int node : live) {
+                long score = mix(shard * 0x9E3779B97F4A7C15L + node);
+                if (score > best) {
+                    best = score;
+                    next[shard] = node;
+                }
+            }
+        }
+        owners = next;
+        if (!live.equals(members)) {
+            members = List.copyOf(live);
+            log.info("Cluster members {}; node {} owns {} of {} shards", live, nodeIndex, ownedShards(), next.length);
+        }
+    }
+
+    private int ownedShards() {
+        if (enabled && !settled) return 0;
+        int n = 0;
+        for (int owner : owners) if (owner == nodeIndex) n++;
+        return n;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (heartbeats != null) heartbeats.shutdownNow();
+    }
+
+    // SplitMix64 finalizer: spreads consecutive shard and node numbers over the whole range
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
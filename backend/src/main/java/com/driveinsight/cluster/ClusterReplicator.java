@@ -0,0 +1,275 @@
+package com.driveinsight.cluster;
+
+import com.driveinsight.model.AlertRecord;
+import com.driveinsight.model.TelemetrySample;
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.service.ActiveAlertRegistry;
+import com.driveinsight.service.FleetStateListener;
+import com.driveinsight.service.FleetStateStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every node's fleet state and active alerts in step over the {@link ClusterBus}, so each
+ * node's WebSocket feed and read endpoints cover the whole fleet while every vehicle is written
+ * by one node.
+ *
+ * <ul>
+ *   <li>Vehicle changes made on this node are coalesced per vehicle, like the WebSocket
+ *   broadcast, and published every {@code replicate-interval-ms}; other nodes apply them with
+ *   {@link FleetStateStore#replicate}.</li>
+ *   <li>Alert changes are published the same way and applied with
+ *   {@link ActiveAlertRegistry#applyReplica}.</li>
+ *   <li>Telemetry for a vehicle another node owns is forwarded to it, so samples can be posted to
+ *   any node.</li>
+ * </ul>
+ *
+ * Payloads are JSON. Replicas are not persisted again: the node that made a change wrote it.
+ *
+ * <p>The bus delivers at most once, so a lost message would leave replicas stale until the
+ * vehicle or alert changed again, which for a parked vehicle or a resolved alert may be never.
+ * Every {@code resync-interval-ms}, whenever the member list changes, and on request, each node
+ * therefore republishes the state of everything it owns. It follows that with a {@link Sync}
+ * listing the ids. A receiver that agrees on the member list drops the sender's vehicles and
+ * active alerts missing from it. A node that has just (re)connected asks the others to resync
+ * straight away.
+ */
+@Component
+public class ClusterReplicator implements FleetStateListener {
+    private static final Logger log = LoggerFactory.getLogger(ClusterReplicator.class);
+    private static final VehicleState REMOVED = new VehicleState(null, null, null, 0, 0, null, null, 0, 0, null);
+
+    /** One VEHICLES message: the latest state of each changed vehicle, and the ids of deleted ones. */
+    public record VehicleBatch(List<VehicleState> states, List<String> removed) {}
+
+    /**
+     * One SYNC message: every vehicle and active alert the sender owns under {@code members}, sent
+     * after their states. {@code request} asks the receivers to resync in turn.
+     */
+    public record Sync(List<Integer> members, List<String> vehicles, List<Long> alerts, boolean request) {}
+
+    private final ClusterBus bus;
+    private final ClusterMembership membership;
+    private final FleetStateStore fleetState;
+    private final ActiveAlertRegistry alerts;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final long resyncIntervalNanos;
+    private final Map<String, VehicleState> pendingVehicles = new ConcurrentHashMap<>();
+    private final Map<Long, AlertRecord> pendingAlerts = new ConcurrentHashMap<>();
+    private final BlockingQueue<TelemetrySample> forwarded;
+    private final List<Consumer<TelemetrySample>> receivers = new CopyOnWriteArrayList<>();
+    private final Counter published;
+    private final Counter applied;
+    private final Counter pruned;
+    private volatile boolean resyncRequested;
+    // Owned by the flush, which the scheduler never runs concurrently with itself
+    private long lastResyncNanos;
+    private List<Integer> lastMembers = List.of();
+    private boolean wasConnected;
+    private boolean requestPending;
+
+    public ClusterReplicator(ClusterBus bus,
+                             ClusterMembership membership,
+                             FleetStateStore fleetState,
+                             ActiveAlertRegistry alerts,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${fleet.cluster.batch-size:1000}") int batchSize,
+                             @Value("${fleet.cluster.resync-interval-ms:30000}") long resyncIntervalMs,
+                             @Value("${fleet.cluster.bus.queue-capacity:10000}") int queueCapacity) {
+        this.bus = bus;
+        this.membership = membership;
+        this.fleetState = fleetState;
+        this.alerts = alerts;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.resyncIntervalNanos = resyncIntervalMs * 1_000_000;
+        this.forwarded = new ArrayBlockingQueue<>(queueCapacity);
+        this.published = meterRegistry.counter("fleet.cluster.replicated", "direction", "out");
+        this.applied = meterRegistry.counter("fleet.cluster.replicated", "direction", "in");
+        this.pruned = meterRegistry.counter("fleet.cluster.replicated", "direction", "pruned");
+        if (!bus.isEnabled()) return;
+        fleetState.addListener(this);
+        alerts.addListener(a -> pendingAlerts.put(a.getId(), a));
+        bus.subscribe(ClusterBus.Topic.VEHICLES, (sender, payload) -> onVehicles(payload));
+        bus.subscribe(ClusterBus.Topic.ALERTS, (sender, payload) -> onAlerts(payload));
+        bus.subscribe(ClusterBus.Topic.TELEMETRY, (sender, payload) -> onTelemetry(payload));
+        bus.subscribe(ClusterBus.Topic.SYNC, this::onSync);
+    }
+
+    // Only changes made here are published; replicas came from the bus
+    @Override
+    public boolean localOnly() {
+        return true;
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        pendingVehicles.put(previous != null ? previous.id() : current.id(), current != null ? current : REMOVED);
+    }
+
+    /** Registers the consumer of samples forwarded to this node because it owns their vehicle. */
+    public void onForwarded(Consumer<TelemetrySample> receiver) {
+        receivers.add(receiver);
+    }
+
+    /** Queues a sample for the node that owns its vehicle; false if the queue is full. */
+    public boolean forward(TelemetrySample sample) {
+        return forwarded.offer(sample);
+    }
+
+    @Scheduled(fixedDelayString = "${fleet.cluster.replicate-interval-ms:100}")
+    public void flush() {
+        if (!bus.isEnabled()) return;
+        List<VehicleState> states = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (String id : new ArrayList<>(pendingVehicles.keySet())) {
+            VehicleState v = pendingVehicles.remove(id);
+            if (v == null) continue;
+            if (v == REMOVED) removed.add(id);
+            else states.add(v);
+            if (states.size() + removed.size() >= batchSize) {
+                send(ClusterBus.Topic.VEHICLES, new VehicleBatch(states, removed), states.size() + removed.size());
+                states = new ArrayList<>();
+                removed = new ArrayList<>();
+            }
+        }
+        if (!states.isEmpty() || !removed.isEmpty()) {
+            send(ClusterBus.Topic.VEHICLES, new VehicleBatch(states, removed), states.size() + removed.size());
+        }
+
+        List<AlertRecord> changed = new ArrayList<>();
+        for (Long id : new ArrayList<>(pendingAlerts.keySet())) {
+            AlertRecord a = pendingAlerts.remove(id);
+            if (a != null) changed.add(a);
+        }
+        for (int from = 0; from < changed.size(); from += batchSize) {
+            List<AlertRecord> chunk = changed.subList(from, Math.min(changed.size(), from + batchSize));
+            send(ClusterBus.Topic.ALERTS, chunk, chunk.size());
+        }
+
+        List<TelemetrySample> samples = new ArrayList<>();
+        while (forwarded.drainTo(samples, batchSize) > 0) {
+            send(ClusterBus.Topic.TELEMETRY, samples, samples.size());
+            samples = new ArrayList<>();
+        }
+
+        boolean connected = bus.isConnected();
+        if (connected && !wasConnected) requestPending = true;
+        wasConnected = connected;
+        // An unsettled node owns nothing and cannot tell whose replicas are whose
+        if (!connected || !membership.isSettled()) return;
+        long now = System.nanoTime();
+        List<Integer> members = membership.members();
+        if (requestPending || resyncRequested || !members.equals(lastMembers) || now - lastResyncNanos >= resyncIntervalNanos) {
+            resyncRequested = false;
+            lastMembers = members;
+            lastResyncNanos = now;
+            resync(members, requestPending);
+            requestPending = false;
+        }
+    }
+
+    private void resync(List<Integer> members, boolean request) {
+        List<VehicleState> owned = new ArrayList<>();
+        for (VehicleState v : fleetState.getAll()) if (membership.owns(v.id())) owned.add(v);
+        List<AlertRecord> ownedAlerts = new ArrayList<>();
+        for (AlertRecord a : alerts.getActive()) if (membership.owns(a.getVehicleId())) ownedAlerts.add(a);
+        for (int from = 0; from < owned.size(); from += batchSize) {
+            List<VehicleState> chunk = owned.subList(from, Math.min(owned.size(), from + batchSize));
+            send(ClusterBus.Topic.VEHICLES, new VehicleBatch(chunk, List.of()), chunk.size());
+        }
+        for (int from = 0; from < ownedAlerts.size(); from += batchSize) {
+            List<AlertRecord> chunk = ownedAlerts.subList(from, Math.min(ownedAlerts.size(), from + batchSize));
+            send(ClusterBus.Topic.ALERTS, chunk, chunk.size());
+        }
+        send(ClusterBus.Topic.SYNC, new Sync(members, owned.stream().map(VehicleState::id).toList(),
+                ownedAlerts.stream().map(AlertRecord::getId).toList(), request), 0);
+    }
+
+    private void send(ClusterBus.Topic topic, Object message, int items) {
+        try {
+            if (bus.publish(topic, objectMapper.writeValueAsBytes(message))) published.increment(items);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to encode cluster {} message", topic, e);
+        }
+    }
+
+    private void onVehicles(byte[] payload) {
+        VehicleBatch batch = read(payload, new TypeReference<>() {});
+        if (batch == null) return;
+        if (batch.states() != null) batch.states().forEach(fleetState::replicate);
+        if (batch.removed() != null) batch.removed().forEach(fleetState::replicateRemoval);
+        applied.increment((batch.states() != null ? batch.states().size() : 0)
+                + (batch.removed() != null ? batch.removed().size() : 0));
+    }
+
+    private void onAlerts(byte[] payload) {
+        List<AlertRecord> changed = read(payload, new TypeReference<>() {});
+        if (changed == null) return;
+        changed.forEach(alerts::applyReplica);
+        applied.increment(changed.size());
+    }
+
+    // Every node receives every forwarded sample and applies those it owns; an unsettled node owns none
+    private void onTelemetry(byte[] payload) {
+        List<TelemetrySample> samples = read(payload, new TypeReference<>() {});
+        if (samples == null) return;
+        for (TelemetrySample sample : samples) {
+            if (sample.vehicleId() == null || !membership.owns(sample.vehicleId())) continue;
+            receivers.forEach(r -> r.accept(sample));
+        }
+    }
+
+    private void onSync(int sender, byte[] payload) {
+        Sync sync = read(payload, new TypeReference<>() {});
+        if (sync == null) return;
+        if (sync.request()) resyncRequested = true;
+        // With different member lists the two nodes disagree on who owns what, and pruning could drop live replicas
+        if (!membership.isSettled() || sync.members() == null || !sync.members().equals(membership.members())) return;
+        Set<String> vehicles = sync.vehicles() != null ? new HashSet<>(sync.vehicles()) : Set.of();
+        int removed = 0;
+        for (VehicleState v : fleetState.getAll()) {
+            if (membership.owner(v.id()) == sender && !vehicles.contains(v.id())) {
+                fleetState.replicateRemoval(v.id());
+                removed++;
+            }
+        }
+        Set<Long> active = sync.alerts() != null ? new HashSet<>(sync.alerts()) : Set.of();
+        removed += alerts.retainReplicas(vehicleId -> membership.owner(vehicleId) == sender, active);
+        if (removed > 0) {
+            pruned.increment(removed);
+            log.info("Resync from node {} removed {} stale replicas", sender, removed);
+        }
+    }
+
+    private <T> T read(byte[] payload, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(payload, type);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed cluster message: {}", e.toString());
+            return null;
+        }
+    }
+}
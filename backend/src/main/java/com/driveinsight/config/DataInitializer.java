@@ -1,24 +1,167 @@
 package com.driveinsight.config;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
+/**
+ * Brings the schema up to date before anything reads the database, then optionally seeds the
+ * demo fleet.
+ *
+ * <p>Migrations are the {@code db/migration/V<n>__<description>.sql} scripts. Each is applied
+ * once, in version order, and recorded in {@code schema_version} with a checksum of its text, so
+ * a boot against an up-to-date database costs one query; editing a script that was already
+ * applied fails startup rather than leaving databases that disagree. Statements that only
+ * re-create something already there (a table, column or index) are skipped, so databases built
+ * by the older replay-everything scripts upgrade in place. Nodes starting together serialize on
+ * a MySQL named lock.
+ *
+ * <p>Seeding ({@code fleet.db.seed}) runs {@code db/seed/demo.sql} only while the vehicles table
+ * is empty, so restarts never add rows.
+ */
 @Component
 public class DataInitializer implements CommandLineRunner {
-    @Autowired
-    private DataSource dataSource;
+    private static final Logger log = LoggerFactory.getLogger(DataInitializer.class);
+    private static final Pattern MIGRATION = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final String LOCK = "driveinsight.schema";
+    // Table, column, index or foreign key already exists
+    private static final Set<Integer> ALREADY_APPLIED = Set.of(1050, 1060, 1061, 1826);
+
+    private record Migration(int version, String description, Resource script, long checksum) {}
+
+    private final DataSource dataSource;
+    private final boolean seed;
+    private final int lockTimeoutSeconds;
+
+    public DataInitializer(DataSource dataSource,
+                           @Value("${fleet.db.seed:false}") boolean seed,
+                           @Value("${fleet.db.lock-timeout-seconds:60}") int lockTimeoutSeconds) {
+        this.dataSource = dataSource;
+        this.seed = seed;
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
+    }
 
     @Override
     public void run(String... args) throws Exception {
-        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
-        populator.addScript(new ClassPathResource("schema.sql"));
-        populator.addScript(new ClassPathResource("data.sql"));
-        populator.execute(dataSource);
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            // Every statement runs on this connection, which holds the named lock
+            JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            Integer locked = jdbc.queryForObject("SELECT GET_LOCK(?, ?)", Integer.class, LOCK, lockTimeoutSeconds);
+            if (locked == null || locked != 1) {
+                throw new IllegalStateException("Timed out after " + lockTimeoutSeconds + " s waiting for the schema lock");
+            }
+            try {
+                int applied = migrate(jdbc, connection);
+                boolean seeded = seed && seed(jdbc, connection);
+                log.info("Schema up to date in {} ms ({} migrations applied{})",
+                        (System.nanoTime() - start) / 1_000_000, applied, seeded ? ", demo data seeded" : "");
+            } finally {
+                jdbc.queryForObject("SELECT RELEASE_LOCK(?)", Integer.class, LOCK);
+            }
+        }
+    }
+
+    private int migrate(JdbcTemplate jdbc, Connection connection) throws IOException, SQLException {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INT PRIMARY KEY, " +
+                "description VARCHAR(200) NOT NULL, " +
+                "checksum BIGINT NOT NULL, " +
+                "execution_ms BIGINT NOT NULL, " +
+                "installed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        Map<Integer, Long> checksums = new HashMap<>();
+        jdbc.query("SELECT version, checksum FROM schema_version", rs -> {
+            checksums.put(rs.getInt(1), rs.getLong(2));
+        });
+        int applied = 0;
+        for (Migration m : migrations()) {
+            Long checksum = checksums.get(m.version());
+            if (checksum != null) {
+                if (checksum != m.checksum()) {
+                    throw new IllegalStateException("Migration V" + m.version() + " was changed after it was applied; " +
+                            "add a new migration instead");
+                }
+                continue;
+            }
+            long start = System.nanoTime();
+            for (String sql : statements(m.script())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(sql);
+                } catch (SQLException e) {
+                    if (!ALREADY_APPLIED.contains(e.getErrorCode())) {
+                        throw new IllegalStateException("Migration V" + m.version() + " failed at: " + sql, e);
+                    }
+                    log.debug("V{}: skipping statement already in effect: {}", m.version(), e.getMessage());
+                }
+            }
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            jdbc.update("INSERT INTO schema_version (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)",
+                    m.version(), m.description(), m.checksum(), ms);
+            log.info("Applied migration V{} {} in {} ms", m.version(), m.description(), ms);
+            applied++;
+        }
+        return applied;
     }
-}
 
+    private static List<Migration> migrations() throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        for (Resource r : new PathMatchingResourcePatternResolver().getResources("classpath:db/migration/V*__*.sql")) {
+            Matcher m = MIGRATION.matcher(r.getFilename() != null ? r.getFilename() : "");
+            if (!m.matches()) continue;
+            CRC32 crc = new CRC32();
+            crc.update(r.getContentAsByteArray());
+            migrations.add(new Migration(Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '), r, crc.getValue()));
+        }
+        migrations.sort(Comparator.comparingInt(Migration::version));
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version() == migrations.get(i - 1).version()) {
+                throw new IllegalStateException("Two migrations have version " + migrations.get(i).version());
+            }
+        }
+        return migrations;
+    }
+
+    // Migration scripts end each statement with ';' and comment only with whole '--' lines
+    private static List<String> statements(Resource script) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String line : script.getContentAsString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.trim().startsWith("--")) text.append(line).append('\n');
+        }
+        List<String> statements = new ArrayList<>();
+        for (String sql : text.toString().split(";")) {
+            if (!sql.isBlank()) statements.add(sql.trim());
+        }
+        return statements;
+    }
+
+    private static boolean seed(JdbcTemplate jdbc, Connection connection) {
+        Integer vehicles = jdbc.queryForObject("SELECT COUNT(*) FROM vehicles", Integer.class);
+        if (vehicles == null || vehicles > 0) return false;
+        ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/seed/demo.sql"));
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+package com.driveinsight.config;
+
+import com.driveinsight.service.FleetStateListener;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Keeps the live pipeline eager under {@code spring.main.lazy-initialization} (the {@code lazy}
+ * profile). Fleet state listeners register with the store when constructed and {@code @Scheduled}
+ * methods are only scheduled once their bean exists, so either would silently stop working if
+ * left for first use; controllers, repositories and everything else still wait for their first
+ * request.
+ */
+@Configuration
+public class LazyInitConfig {
+    @Bean
+    static LazyInitializationExcludeFilter eagerFleetPipeline() {
+        return (beanName, definition, type) -> FleetStateListener.class.isAssignableFrom(type)
+                || !MethodIntrospector.selectMethods(type, (MethodIntrospector.MetadataLookup<Scheduled>) method ->
+                        AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class)).isEmpty();
+    }
+}
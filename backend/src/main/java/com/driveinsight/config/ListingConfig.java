@@ -0,0 +1,46 @@
+package com.driveinsight.config;
+
+import com.driveinsight.service.ListingService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+
+import java.io.IOException;
+
+@Configuration
+public class ListingConfig {
+    /**
+     * Writes streamed listings straight to the response. The listing endpoints return
+     * {@code ResponseEntity<?>}, whose body the streaming return-value handlers don't recognise,
+     * so without this the body would fall through to Jackson.
+     */
+    @Bean
+    public HttpMessageConverter<ListingService.BodyWriter> listingStreamConverter() {
+        return new AbstractHttpMessageConverter<>(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON) {
+            @Override
+            protected boolean supports(Class<?> clazz) {
+                return ListingService.BodyWriter.class.isAssignableFrom(clazz);
+            }
+
+            @Override
+            public boolean canRead(Class<?> clazz, MediaType mediaType) {
+                return false;
+            }
+
+            @Override
+            protected ListingService.BodyWriter readInternal(Class<? extends ListingService.BodyWriter> clazz,
+                                                             HttpInputMessage inputMessage) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            protected void writeInternal(ListingService.BodyWriter body, HttpOutputMessage outputMessage) throws IOException {
+                body.writeTo(outputMessage.getBody());
+            }
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package com.driveinsight.config;
+
+import com.driveinsight.service.FleetSimulator;
+import com.driveinsight.service.FleetStateStore;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class MetricsConfig {
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    @Bean
+    public MeterBinder fleetStateMetrics(FleetStateStore fleetState) {
+        return registry -> {
+            Gauge.builder("fleet.vehicles", fleetState, FleetStateStore::size)
+                    .description("Vehicles held in the in-memory fleet state")
+                    .register(registry);
+            Gauge.builder("fleet.writer.pending", fleetState, FleetStateStore::pendingWrites)
+                    .description("Distinct vehicles waiting for the write-behind flush")
+                    .register(registry);
+            FunctionTimer.builder("fleet.writer.flush", fleetState,
+                            FleetStateStore::flushCount, FleetStateStore::flushNanos, TimeUnit.NANOSECONDS)
+                    .description("Batch upserts of vehicle rows")
+                    .register(registry);
+            FunctionCounter.builder("fleet.writer.rows", fleetState, FleetStateStore::flushedRows)
+                    .description("Vehicle rows written by the batch writer")
+                    .register(registry);
+            FunctionCounter.builder("fleet.writer.coalesced", fleetState, FleetStateStore::coalescedWrites)
+                    .description("Updates absorbed by a vehicle already pending a write")
+                    .register(registry);
+            FunctionCounter.builder("fleet.writer.failures", fleetState, FleetStateStore::flushFailures)
+                    .description("Batch upserts that failed")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder simulatorMetrics(FleetSimulator simulator) {
+        return registry -> Gauge.builder("fleet.simulator.rate", simulator, s -> s.stats().achievedRate())
+                .description("Achieved simulator updates per second")
+                .register(registry);
+    }
+}
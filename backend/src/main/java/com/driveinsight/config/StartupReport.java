@@ -0,0 +1,42 @@
+package com.driveinsight.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a node takes to become useful: from JVM start until the last ready listener
+ * has run, which includes restoring the fleet, unlike Spring's own "Started ... in" line. Exposed
+ * as {@code fleet.startup.ready.time}; per-step timings of the context itself are at
+ * {@code /actuator/startup}.
+ */
+@Component
+public class StartupReport {
+    private static final Logger log = LoggerFactory.getLogger(StartupReport.class);
+
+    private volatile long readyMillis;
+
+    public StartupReport(MeterRegistry meterRegistry) {
+        TimeGauge.builder("fleet.startup.ready.time", this, TimeUnit.MILLISECONDS, r -> r.readyMillis)
+                .description("Time from JVM start until the fleet was loaded and the node ready")
+                .register(meterRegistry);
+    }
+
+    // After every other ready listener
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onReady(ApplicationReadyEvent event) {
+        readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        log.info("Ready in {} ms from JVM start (application context {} ms, then fleet load and ready listeners)",
+                readyMillis, event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : -1);
+    }
+}
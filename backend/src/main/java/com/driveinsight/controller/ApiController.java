@@ -1,54 +1,122 @@
 package com.driveinsight.controller;
 
+import com.driveinsight.cluster.ClusterMembership;
 import com.driveinsight.model.*;
 import com.driveinsight.repo.*;
+import com.driveinsight.service.ActiveAlertRegistry;
 import com.driveinsight.service.AnalyticsService;
+import com.driveinsight.service.ChangeVersion;
+import com.driveinsight.repo.RecordCursorRepository.Listing;
+import com.driveinsight.service.FleetStateStore;
+import com.driveinsight.service.GeoMath;
+import com.driveinsight.service.ListingService;
+import com.driveinsight.service.ResponseCache;
+import com.driveinsight.service.RouteTrackService;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
 public class ApiController {
-    private final VehicleRepository vehicleRepository;
+    private final FleetStateStore fleetState;
+    private final ClusterMembership membership;
     private final RouteRecordRepository routeRepository;
-    private final AlertRecordRepository alertRepository;
+    private final ActiveAlertRegistry alertRegistry;
     private final DailyMetricsRecordRepository dailyMetricsRepository;
     private final AnalyticsService analyticsService;
-    private final RoutePointRepository routePointRepository;
+    private final RouteTrackService routeTrackService;
+    private final ListingService listingService;
+    private final ResponseCache responseCache;
+    private final ChangeVersion changeVersion;
 
-    public ApiController(VehicleRepository vehicleRepository,
+    private static final int DEFAULT_RANGE_DAYS = 30;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    public ApiController(FleetStateStore fleetState,
+                         ClusterMembership membership,
                          RouteRecordRepository routeRepository,
-                         AlertRecordRepository alertRepository,
+                         ActiveAlertRegistry alertRegistry,
                          DailyMetricsRecordRepository dailyMetricsRepository,
                          AnalyticsService analyticsService,
-                         RoutePointRepository routePointRepository) {
-        this.vehicleRepository = vehicleRepository;
+                         RouteTrackService routeTrackService,
+                         ListingService listingService,
+                         ResponseCache responseCache,
+                         ChangeVersion changeVersion) {
+        this.fleetState = fleetState;
+        this.membership = membership;
         this.routeRepository = routeRepository;
-        this.alertRepository = alertRepository;
+        this.alertRegistry = alertRegistry;
         this.dailyMetricsRepository = dailyMetricsRepository;
         this.analyticsService = analyticsService;
-        this.routePointRepository = routePointRepository;
+        this.routeTrackService = routeTrackService;
+        this.listingService = listingService;
+        this.responseCache = responseCache;
+        this.changeVersion = changeVersion;
     }
 
+    /*
+     * List endpoints return the whole collection when called without parameters. With any of
+     * them they switch to keyset pages ({content, next}; pass next back as after) or, with
+     * stream=ndjson|json, to a body written row by row. fields=a,b,c projects each row; the
+     * key is always included.
+     *
+     * The whole-collection and analytics responses that dashboards poll are served from the
+     * ResponseCache, with an ETag that answers an unchanged If-None-Match with a 304.
+     */
+
     // Vehicles CRUD
     @GetMapping("/vehicles")
-    public List<Vehicle> getVehicles() { return vehicleRepository.findAll(); }
+    public ResponseEntity<?> getVehicles(@RequestParam(required = false) String after,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) String fields,
+                                         @RequestParam(required = false) String stream,
+                                         WebRequest request) {
+        if (after == null && limit == null && fields == null && stream == null) {
+            return responseCache.respond("vehicles", request, fleetState::getAll, ChangeVersion.Scope.VEHICLES);
+        }
+        List<String> projection = ListingService.parseFields(fields);
+        return listing(stream,
+                () -> listingService.vehiclePage(after, pageSize(limit), projection),
+                format -> listingService.vehicleStream(after, projection, format));
+    }
 
     @GetMapping("/vehicles/{id}")
-    public ResponseEntity<Vehicle> getVehicle(@PathVariable String id) {
-        return vehicleRepository.findById(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<VehicleState> getVehicle(@PathVariable String id) {
+        return fleetState.get(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/vehicles")
-    public Vehicle createVehicle(@RequestBody Vehicle vehicle) { return vehicleRepository.save(vehicle); }
+    public ResponseEntity<?> createVehicle(@RequestBody Vehicle vehicle) {
+        if (vehicle.getId() == null) return ResponseEntity.badRequest().body(Map.of("error", "id is required"));
+        ResponseEntity<?> notOwner = notOwner(vehicle.getId());
+        if (notOwner != null) return notOwner;
+        return ResponseEntity.ok(fleetState.create(vehicle));
+    }
 
     @PatchMapping("/vehicles/{id}")
-    public ResponseEntity<Vehicle> updateVehicle(@PathVariable String id, @RequestBody Vehicle updates) {
-        return vehicleRepository.findById(id).map(existing -> {
+    public ResponseEntity<?> updateVehicle(@PathVariable String id, @RequestBody Vehicle updates) {
+        ResponseEntity<?> notOwner = notOwner(id);
+        if (notOwner != null) return notOwner;
+        return fleetState.update(id, current -> {
+            Vehicle existing = current.toEntity();
             if (updates.getDriverName() != null) existing.setDriverName(updates.getDriverName());
             if (updates.getCorridor() != null) existing.setCorridor(updates.getCorridor());
             if (updates.getStatus() != null) existing.setStatus(updates.getStatus());
@@ -57,14 +125,17 @@ public class ApiController {
             if (updates.getFuel() != 0) existing.setFuel(updates.getFuel());
             if (updates.getLatitude() != 0) existing.setLatitude(updates.getLatitude());
             if (updates.getLongitude() != 0) existing.setLongitude(updates.getLongitude());
-            return ResponseEntity.ok(vehicleRepository.save(existing));
-        }).orElse(ResponseEntity.notFound().build());
+            // Listeners time each change by lastUpdate
+            existing.setLastUpdate(Instant.now());
+            return VehicleState.from(existing);
+        }).<ResponseEntity<?>>map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/vehicles/{id}")
-    public ResponseEntity<Void> deleteVehicle(@PathVariable String id) {
-        if (vehicleRepository.existsById(id)) {
-            vehicleRepository.deleteById(id);
+    public ResponseEntity<?> deleteVehicle(@PathVariable String id) {
+        ResponseEntity<?> notOwner = notOwner(id);
+        if (notOwner != null) return notOwner;
+        if (fleetState.delete(id)) {
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.notFound().build();
@@ -72,44 +143,255 @@ public class ApiController {
 
     // Alerts
     @GetMapping("/alerts")
-    public List<AlertRecord> getAlerts() { return alertRepository.findByIsActiveTrue(); }
+    public ResponseEntity<?> getAlerts(@RequestParam(required = false) Long after,
+                                       @RequestParam(required = false) Integer limit,
+                                       @RequestParam(required = false) String fields,
+                                       @RequestParam(required = false) String stream,
+                                       WebRequest request) {
+        if (after == null && limit == null && fields == null && stream == null) {
+            return responseCache.respond("alerts", request, alertRegistry::getActive, ChangeVersion.Scope.ALERTS);
+        }
+        List<String> projection = ListingService.parseFields(fields);
+        return listing(stream,
+                () -> listingService.alertPage(after, pageSize(limit), projection),
+                format -> listingService.alertStream(after, projection, format));
+    }
+
+    @GetMapping("/alerts/vehicle/{vehicleId}")
+    public List<AlertRecord> getAlertsByVehicle(@PathVariable String vehicleId) { return alertRegistry.getActive(vehicleId); }
 
+    // Returns the already-active alert instead when the vehicle has one of the same type
     @PostMapping("/alerts")
-    public AlertRecord createAlert(@RequestBody AlertRecord alert) { return alertRepository.save(alert); }
+    public ResponseEntity<AlertRecord> createAlert(@RequestBody AlertRecord alert) {
+        // Required and sized as the alerts columns are, so the queued insert cannot fail on them
+        if (alert.getVehicleId() == null || !fits(alert.getType(), 50) || !fits(alert.getSeverity(), 50)
+                || !fits(alert.getMessage(), 255)) {
+            return ResponseEntity.badRequest().build();
+        }
+        // The alert row references the vehicle, so an unknown one could never be written
+        if (fleetState.get(alert.getVehicleId()).isEmpty()) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(alertRegistry.create(alert));
+    }
+
+    private static boolean fits(String value, int maxLength) {
+        return value != null && !value.isBlank() && value.length() <= maxLength;
+    }
+
+    @PostMapping("/alerts/{id}/acknowledge")
+    public ResponseEntity<AlertRecord> acknowledgeAlert(@PathVariable long id) {
+        return alertRegistry.acknowledge(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/alerts/{id}/resolve")
+    public ResponseEntity<AlertRecord> resolveAlert(@PathVariable long id) {
+        return alertRegistry.resolve(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
 
     // Routes
     @GetMapping("/routes")
-    public List<RouteRecord> getRoutes() { return routeRepository.findAll(); }
+    public ResponseEntity<?> getRoutes(@RequestParam(required = false) Long after,
+                                       @RequestParam(required = false) Integer limit,
+                                       @RequestParam(required = false) String fields,
+                                       @RequestParam(required = false) String stream) {
+        if (after == null && limit == null && fields == null && stream == null) return ResponseEntity.ok(routeRepository.findAll());
+        return records(RecordCursorRepository.ROUTES, null, after, limit, fields, stream);
+    }
 
     @GetMapping("/routes/vehicle/{vehicleId}")
-    public List<RouteRecord> getRoutesByVehicle(@PathVariable String vehicleId) { return routeRepository.findByVehicleId(vehicleId); }
+    public ResponseEntity<?> getRoutesByVehicle(@PathVariable String vehicleId,
+                                                @RequestParam(required = false) Long after,
+                                                @RequestParam(required = false) Integer limit,
+                                                @RequestParam(required = false) String fields,
+                                                @RequestParam(required = false) String stream) {
+        if (after == null && limit == null && fields == null && stream == null) return ResponseEntity.ok(routeRepository.findByVehicleId(vehicleId));
+        return records(RecordCursorRepository.ROUTES, vehicleId, after, limit, fields, stream);
+    }
 
     @PostMapping("/routes")
-    public RouteRecord createRoute(@RequestBody RouteRecord route) { return routeRepository.save(route); }
+    public RouteRecord createRoute(@RequestBody RouteRecord route) {
+        RouteRecord saved = routeRepository.save(route);
+        changeVersion.bump(ChangeVersion.Scope.HISTORY);
+        return saved;
+    }
 
+    // tolerance (metres) or zoom (web-mercator level) select a precomputed simplified polyline
     @GetMapping("/routes/{routeId}/points")
-    public List<RoutePoint> getRoutePoints(@PathVariable Long routeId) {
-        return routePointRepository.findByRouteIdOrderBySequenceAsc(routeId);
+    public ResponseEntity<StreamingResponseBody> getRoutePoints(@PathVariable Long routeId,
+                                                                @RequestParam(required = false) Double tolerance,
+                                                                @RequestParam(required = false) Integer zoom) {
+        Double metres = tolerance != null ? tolerance : zoom != null ? RouteTrackService.toleranceForZoom(zoom) : null;
+        StreamingResponseBody body = metres == null
+                ? out -> routeTrackService.writePointsJson(routeId, out)
+                : out -> routeTrackService.writeSimplifiedJson(routeId, metres, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // Body is [[lat, lng], ...] in path order
+    @PostMapping("/routes/{routeId}/track")
+    public ResponseEntity<Map<String, Object>> appendRouteTrack(@PathVariable Long routeId, @RequestBody List<double[]> points) {
+        // Out-of-range values would overflow the track encoding; comparisons also reject NaN
+        if (points.stream().anyMatch(p -> p == null || p.length < 2 || !GeoMath.isValidPosition(p[0], p[1]))) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!routeRepository.existsById(routeId)) return ResponseEntity.notFound().build();
+        double[] lats = new double[points.size()];
+        double[] lngs = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            lats[i] = points.get(i)[0];
+            lngs[i] = points.get(i)[1];
+        }
+        return ResponseEntity.ok(Map.of("appended", routeTrackService.append(routeId, lats, lngs)));
+    }
+
+    @PostMapping("/routes/{routeId}/track/compact")
+    public Map<String, Object> compactRouteTrack(@PathVariable Long routeId) {
+        return Map.of("compacted", routeTrackService.compact(routeId));
     }
 
     // Daily metrics
     @GetMapping("/metrics/daily")
-    public List<DailyMetricsRecord> getDailyMetrics() { return dailyMetricsRepository.findAll(); }
+    public ResponseEntity<?> getDailyMetrics(@RequestParam(required = false) Long after,
+                                             @RequestParam(required = false) Integer limit,
+                                             @RequestParam(required = false) String fields,
+                                             @RequestParam(required = false) String stream) {
+        if (after == null && limit == null && fields == null && stream == null) return ResponseEntity.ok(dailyMetricsRepository.findAll());
+        return records(RecordCursorRepository.DAILY_METRICS, null, after, limit, fields, stream);
+    }
 
     @GetMapping("/metrics/daily/vehicle/{vehicleId}")
-    public List<DailyMetricsRecord> getDailyMetricsByVehicle(@PathVariable String vehicleId) { return dailyMetricsRepository.findByVehicleId(vehicleId); }
+    public ResponseEntity<?> getDailyMetricsByVehicle(@PathVariable String vehicleId,
+                                                      @RequestParam(required = false) Long after,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      @RequestParam(required = false) String fields,
+                                                      @RequestParam(required = false) String stream) {
+        if (after == null && limit == null && fields == null && stream == null) return ResponseEntity.ok(dailyMetricsRepository.findByVehicleId(vehicleId));
+        return records(RecordCursorRepository.DAILY_METRICS, vehicleId, after, limit, fields, stream);
+    }
+
+    // Date-bounded variants: from/to are inclusive UTC days, defaulting to the last 30 days
+    @GetMapping("/metrics/daily/range")
+    public Map<String, Object> getDailyMetricsRange(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                    @RequestParam(defaultValue = "0") int page,
+                                                    @RequestParam(defaultValue = "100") int size) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_RANGE_DAYS - 1);
+        return pageOf(dailyMetricsRepository.findByDateGreaterThanEqualAndDateLessThanOrderByDateAscIdAsc(
+                startOf(start), startOf(end.plusDays(1)), pageRequest(page, size)));
+    }
+
+    @GetMapping("/metrics/daily/vehicle/{vehicleId}/range")
+    public Map<String, Object> getDailyMetricsRangeByVehicle(@PathVariable String vehicleId,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                             @RequestParam(defaultValue = "0") int page,
+                                                             @RequestParam(defaultValue = "100") int size) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_RANGE_DAYS - 1);
+        return pageOf(dailyMetricsRepository.findByVehicleIdAndDateGreaterThanEqualAndDateLessThanOrderByDateAscIdAsc(
+                vehicleId, startOf(start), startOf(end.plusDays(1)), pageRequest(page, size)));
+    }
+
+    @GetMapping("/metrics/daily/aggregate")
+    public List<Map<String, Object>> getDailyMetricsAggregate(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                              @RequestParam(defaultValue = "vehicle") String groupBy) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_RANGE_DAYS - 1);
+        return analyticsService.getDailyMetricsAggregate(startOf(start), startOf(end.plusDays(1)), groupBy);
+    }
 
     // Analytics
+    // Today's distance comes from daily_metrics, so the summary also changes with HISTORY
     @GetMapping("/analytics/summary")
-    public Map<String, Object> getSummary() { return analyticsService.getSummary(); }
+    public ResponseEntity<?> getSummary(WebRequest request) {
+        return responseCache.respond("analytics/summary", request, analyticsService::getSummary,
+                ChangeVersion.Scope.VEHICLES, ChangeVersion.Scope.HISTORY);
+    }
 
     @GetMapping("/analytics/corridors")
-    public List<Map<String, Object>> corridors() { return analyticsService.getCorridorDistribution(); }
+    public ResponseEntity<?> corridors(WebRequest request) {
+        return responseCache.respond("analytics/corridors", request, analyticsService::getCorridorDistribution, ChangeVersion.Scope.VEHICLES);
+    }
 
     @GetMapping("/analytics/vehicle-types")
-    public List<Map<String, Object>> vehicleTypes() { return analyticsService.getVehicleTypeDistribution(); }
+    public ResponseEntity<?> vehicleTypes(WebRequest request) {
+        return responseCache.respond("analytics/vehicle-types", request, analyticsService::getVehicleTypeDistribution, ChangeVersion.Scope.VEHICLES);
+    }
+
+    @GetMapping("/analytics/breakdown")
+    public ResponseEntity<?> breakdown(@RequestParam(defaultValue = "corridor") String groupBy, WebRequest request) {
+        String key = groupBy.toLowerCase(Locale.ROOT);
+        if (!List.of("corridor", "type", "status").contains(key)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "groupBy must be corridor, type or status"));
+        }
+        return responseCache.respond("analytics/breakdown/" + key, request, () -> analyticsService.getBreakdown(key), ChangeVersion.Scope.VEHICLES);
+    }
 
     @GetMapping("/analytics/fleet-status")
-    public List<Map<String, Object>> fleetStatus() { return analyticsService.getFleetStatusDistribution(); }
-}
+    public ResponseEntity<?> fleetStatus(WebRequest request) {
+        return responseCache.respond("analytics/fleet-status", request, analyticsService::getFleetStatusDistribution, ChangeVersion.Scope.VEHICLES);
+    }
+
+    private ResponseEntity<?> records(Listing listing, String vehicleId, Long after, Integer limit, String fields, String stream) {
+        List<String> projection = ListingService.parseFields(fields);
+        return listing(stream,
+                () -> listingService.recordPage(listing, vehicleId, after, pageSize(limit), projection),
+                format -> listingService.recordStream(listing, vehicleId, after, projection, format));
+    }
 
+    // In cluster mode a vehicle is written only by its owner; a write made here would race the
+    // owner's and be overwritten by its replicas. Null when this node may write the vehicle.
+    private ResponseEntity<?> notOwner(String vehicleId) {
+        if (membership.owns(vehicleId)) return null;
+        if (!membership.isSettled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(Map.of("error", "cluster membership is not settled yet"));
+        }
+        int owner = membership.owner(vehicleId);
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "vehicle " + vehicleId + " is owned by node " + owner, "owner", owner));
+    }
+
+    // Projections are resolved before the response starts, so unknown fields are still a 400
+    private static ResponseEntity<?> listing(String stream,
+                                             Supplier<Map<String, Object>> page,
+                                             Function<ListingService.Format, ListingService.BodyWriter> streamed) {
+        try {
+            if (stream == null) return ResponseEntity.ok(page.get());
+            ListingService.Format format = switch (stream.toLowerCase()) {
+                case "ndjson" -> ListingService.Format.NDJSON;
+                case "json", "true" -> ListingService.Format.JSON;
+                default -> throw new IllegalArgumentException("stream must be ndjson or json");
+            };
+            // Written by ListingConfig's converter; the projection was validated by apply()
+            return ResponseEntity.ok()
+                    .contentType(format == ListingService.Format.NDJSON ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                    .body(streamed.apply(format));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static int pageSize(Integer limit) {
+        return limit == null ? 100 : Math.min(Math.max(1, limit), MAX_PAGE_SIZE);
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static PageRequest pageRequest(int page, int size) {
+        return PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), MAX_PAGE_SIZE));
+    }
+
+    private static Map<String, Object> pageOf(Slice<?> slice) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("content", slice.getContent());
+        m.put("page", slice.getNumber());
+        m.put("size", slice.getSize());
+        m.put("hasNext", slice.hasNext());
+        return m;
+    }
+}
@@ -0,0 +1,18 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.cluster.ClusterMembership;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/cluster")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class ClusterController {
+    private final ClusterMembership membership;
+
+    public ClusterController(ClusterMembership membership) {
+        this.membership = membership;
+    }
+
+    @GetMapping
+    public ClusterMembership.Status status() { return membership.status(); }
+}
@@ -0,0 +1,39 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.service.CorridorAnalytics;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/corridors")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class CorridorController {
+    private final CorridorAnalytics corridorAnalytics;
+
+    public CorridorController(CorridorAnalytics corridorAnalytics) {
+        this.corridorAnalytics = corridorAnalytics;
+    }
+
+    @GetMapping
+    public List<CorridorAnalytics.CorridorStats> corridors() {
+        return corridorAnalytics.corridors();
+    }
+
+    @GetMapping("/{corridor}")
+    public ResponseEntity<CorridorAnalytics.CorridorStats> corridor(@PathVariable String corridor) {
+        return corridorAnalytics.corridor(corridor).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+
+    // Every vehicle on the corridor with its ETAs, ordered from the origin
+    @GetMapping("/{corridor}/vehicles")
+    public ResponseEntity<List<CorridorAnalytics.Eta>> vehicles(@PathVariable String corridor) {
+        return corridorAnalytics.etas(corridor).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/vehicle/{vehicleId}/eta")
+    public ResponseEntity<CorridorAnalytics.Eta> eta(@PathVariable String vehicleId) {
+        return corridorAnalytics.eta(vehicleId).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+}
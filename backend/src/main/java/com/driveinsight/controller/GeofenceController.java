@@ -0,0 +1,42 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.model.Geofence;
+import com.driveinsight.service.GeofenceService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/geofences")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class GeofenceController {
+    private final GeofenceService geofenceService;
+
+    public GeofenceController(GeofenceService geofenceService) {
+        this.geofenceService = geofenceService;
+    }
+
+    @GetMapping
+    public List<Geofence> getGeofences() { return geofenceService.getAll(); }
+
+    // Body is {name, vertices: [[lat, lng], ...]} with at least three vertices
+    @PostMapping
+    public ResponseEntity<Geofence> createGeofence(@RequestBody Geofence geofence) {
+        double[][] v = geofence.getVertices();
+        if (geofence.getName() == null || v == null || v.length < 3) return ResponseEntity.badRequest().build();
+        for (double[] p : v) {
+            if (p == null || p.length < 2) return ResponseEntity.badRequest().build();
+        }
+        geofence.setId(null);
+        return ResponseEntity.ok(geofenceService.create(geofence));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteGeofence(@PathVariable long id) {
+        if (geofenceService.delete(id)) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+}
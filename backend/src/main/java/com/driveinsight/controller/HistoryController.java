@@ -0,0 +1,42 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.service.TelemetryLog;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/api/history")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class HistoryController {
+    private static final Duration DEFAULT_RANGE = Duration.ofHours(1);
+    private static final int MAX_POINTS = 50_000;
+
+    private final TelemetryLog telemetryLog;
+
+    public HistoryController(TelemetryLog telemetryLog) {
+        this.telemetryLog = telemetryLog;
+    }
+
+    // Where the vehicle was at an ISO instant, e.g. /vehicle/V-001/position?at=2024-05-01T14:05:00Z
+    @GetMapping("/vehicle/{vehicleId}/position")
+    public ResponseEntity<TelemetryLog.Position> position(@PathVariable String vehicleId,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant at) {
+        return telemetryLog.positionAt(vehicleId, at).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+
+    // from/to are ISO instants defaulting to the last hour
+    @GetMapping("/vehicle/{vehicleId}")
+    public ResponseEntity<TelemetryLog.Track> track(@PathVariable String vehicleId,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                    @RequestParam(defaultValue = "10000") int limit) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(DEFAULT_RANGE);
+        if (!start.isBefore(end) || limit <= 0) return ResponseEntity.badRequest().build();
+        return ResponseEntity.ok(telemetryLog.track(vehicleId, start, end, Math.min(limit, MAX_POINTS)));
+    }
+}
@@ -0,0 +1,52 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.service.RollupService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/api/rollups")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class RollupController {
+    private static final Duration DEFAULT_RANGE = Duration.ofHours(24);
+
+    private final RollupService rollupService;
+
+    public RollupController(RollupService rollupService) {
+        this.rollupService = rollupService;
+    }
+
+    // from/to are ISO instants defaulting to the last 24 hours; resolution is 1m, 1h or 1d, chosen from the range when omitted
+    @GetMapping("/vehicle/{vehicleId}")
+    public ResponseEntity<RollupService.Series> vehicle(@PathVariable String vehicleId,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                        @RequestParam(required = false) String resolution) {
+        return series(RollupService.SCOPE_VEHICLE, vehicleId, from, to, resolution);
+    }
+
+    @GetMapping("/corridor/{corridor}")
+    public ResponseEntity<RollupService.Series> corridor(@PathVariable String corridor,
+                                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                         @RequestParam(required = false) String resolution) {
+        return series(RollupService.SCOPE_CORRIDOR, corridor, from, to, resolution);
+    }
+
+    private ResponseEntity<RollupService.Series> series(String scope, String key, Instant from, Instant to, String resolution) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(DEFAULT_RANGE);
+        if (!start.isBefore(end)) return ResponseEntity.badRequest().build();
+        RollupService.Resolution r;
+        try {
+            r = resolution != null ? RollupService.Resolution.fromCode(resolution) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(rollupService.series(scope, key, start, end, r));
+    }
+}
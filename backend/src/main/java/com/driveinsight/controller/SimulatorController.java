@@ -0,0 +1,37 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.service.FleetSimulator;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/simulator")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class SimulatorController {
+    private final FleetSimulator simulator;
+
+    public SimulatorController(FleetSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    @GetMapping
+    public FleetSimulator.Stats stats() { return simulator.stats(); }
+
+    @PostMapping("/start")
+    public ResponseEntity<FleetSimulator.Stats> start(@RequestParam(defaultValue = "corridor") String mode,
+                                                      @RequestParam(defaultValue = "1000") int vehicles,
+                                                      @RequestParam(defaultValue = "1000") int rate) {
+        if (vehicles < 1 || rate < 0) return ResponseEntity.badRequest().build();
+        try {
+            return ResponseEntity.ok(simulator.start(mode, vehicles, rate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/stop")
+    public FleetSimulator.Stats stop() {
+        simulator.stop();
+        return simulator.stats();
+    }
+}
@@ -0,0 +1,41 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.service.SpatialIndex;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/vehicles/spatial")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class SpatialController {
+    private static final int MAX_K = 1000;
+
+    private final SpatialIndex spatialIndex;
+
+    public SpatialController(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    @GetMapping("/bbox")
+    public ResponseEntity<List<VehicleState>> withinBox(@RequestParam double minLat, @RequestParam double minLng,
+                                                        @RequestParam double maxLat, @RequestParam double maxLng) {
+        if (minLat > maxLat || minLng > maxLng) return ResponseEntity.badRequest().build();
+        return ResponseEntity.ok(spatialIndex.withinBox(minLat, minLng, maxLat, maxLng));
+    }
+
+    @GetMapping("/radius")
+    public ResponseEntity<List<SpatialIndex.Nearby>> withinRadius(@RequestParam double lat, @RequestParam double lng,
+                                                                  @RequestParam double radiusKm) {
+        if (radiusKm < 0) return ResponseEntity.badRequest().build();
+        return ResponseEntity.ok(spatialIndex.withinRadius(lat, lng, radiusKm));
+    }
+
+    @GetMapping("/nearest")
+    public List<SpatialIndex.Nearby> nearest(@RequestParam double lat, @RequestParam double lng,
+                                             @RequestParam(defaultValue = "5") int k) {
+        return spatialIndex.nearest(lat, lng, Math.min(k, MAX_K));
+    }
+}
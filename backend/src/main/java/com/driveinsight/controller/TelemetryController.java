@@ -0,0 +1,64 @@
+package com.driveinsight.controller;
+
+import com.driveinsight.model.TelemetrySample;
+import com.driveinsight.service.TelemetryIngestionService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/telemetry")
+@CrossOrigin(origins = {"http://localhost:5000"}, allowCredentials = "true")
+public class TelemetryController {
+    private final TelemetryIngestionService ingestionService;
+    private final ObjectMapper objectMapper;
+
+    public TelemetryController(TelemetryIngestionService ingestionService, ObjectMapper objectMapper) {
+        this.ingestionService = ingestionService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> ingestBatch(@RequestBody List<TelemetrySample> samples) {
+        if (!ingestionService.hasCapacity(samples.size())) return tooBusy();
+        int accepted = 0;
+        for (TelemetrySample sample : samples) {
+            if (ingestionService.ingest(sample)) accepted++;
+        }
+        return ResponseEntity.ok(result(accepted, samples.size() - accepted));
+    }
+
+    // One sample per line; samples are applied as they are read, never buffered as a list
+    @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Map<String, Object>> ingestStream(HttpServletRequest request) throws IOException {
+        if (!ingestionService.hasCapacity(1)) return tooBusy();
+        int accepted = 0;
+        int rejected = 0;
+        try (MappingIterator<TelemetrySample> it = objectMapper.readerFor(TelemetrySample.class)
+                .readValues(request.getInputStream())) {
+            while (it.hasNextValue()) {
+                if (ingestionService.ingest(it.nextValue())) accepted++;
+                else rejected++;
+            }
+        }
+        return ResponseEntity.ok(result(accepted, rejected));
+    }
+
+    private static Map<String, Object> result(int accepted, int rejected) {
+        return Map.of("accepted", accepted, "rejected", rejected);
+    }
+
+    private static ResponseEntity<Map<String, Object>> tooBusy() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", "1")
+                .body(Map.of("error", "telemetry write queue is full"));
+    }
+}
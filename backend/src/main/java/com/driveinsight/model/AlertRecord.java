@@ -13,12 +13,18 @@ public class AlertRecord {
 
     @Column(name = "vehicle_id")
     private String vehicleId;
-    private String type; // low_fuel, maintenance, speeding, offline
+    private String type; // low_fuel, maintenance, speeding, offline, geofence_entry, geofence_exit, corridor_deviation
     private String message;
     private String severity; // low, medium, high, critical
+    @Column(name = "geofence_id")
+    private Long geofenceId; // set for geofence_entry and geofence_exit
     @Column(name = "is_active")
     private boolean isActive;
     @Column(name = "created_at")
     private java.time.Instant createdAt;
+    @Column(name = "acknowledged_at")
+    private java.time.Instant acknowledgedAt;
+    @Column(name = "resolved_at")
+    private java.time.Instant resolvedAt;
 }
 
@@ -0,0 +1,17 @@
+package com.driveinsight.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Entity
+@Table(name = "geofences")
+@Data
+public class Geofence {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String name;
+    @Convert(converter = PolygonConverter.class)
+    private double[][] vertices; // [[lat, lng], ...], implicitly closed
+}
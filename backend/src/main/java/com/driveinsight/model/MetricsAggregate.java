@@ -0,0 +1,10 @@
+package com.driveinsight.model;
+
+/** Row of a grouped daily_metrics aggregation computed in the database. */
+public interface MetricsAggregate {
+    String getGroupKey();
+    double getTotalDistance();
+    double getAvgSpeed();
+    double getFuelEfficiency();
+    long getDays();
+}
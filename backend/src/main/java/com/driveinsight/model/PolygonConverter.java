@@ -0,0 +1,31 @@
+package com.driveinsight.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/** Stores a polygon as {@code "lat lng,lat lng,..."} text. */
+@Converter
+public class PolygonConverter implements AttributeConverter<double[][], String> {
+    @Override
+    public String convertToDatabaseColumn(double[][] vertices) {
+        if (vertices == null) return null;
+        StringBuilder sb = new StringBuilder();
+        for (double[] v : vertices) {
+            if (!sb.isEmpty()) sb.append(',');
+            sb.append(v[0]).append(' ').append(v[1]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public double[][] convertToEntityAttribute(String text) {
+        if (text == null || text.isBlank()) return new double[0][];
+        String[] points = text.split(",");
+        double[][] vertices = new double[points.length][];
+        for (int i = 0; i < points.length; i++) {
+            String[] p = points[i].trim().split("\\s+");
+            vertices[i] = new double[]{Double.parseDouble(p[0]), Double.parseDouble(p[1])};
+        }
+        return vertices;
+    }
+}
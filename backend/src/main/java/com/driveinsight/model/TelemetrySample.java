@@ -0,0 +1,16 @@
+package com.driveinsight.model;
+
+import java.time.Instant;
+
+/**
+ * One tracker report. {@code fuel} and {@code timestamp} are optional; a missing timestamp
+ * means "now" and a missing fuel reading keeps the last known level.
+ */
+public record TelemetrySample(
+        String vehicleId,
+        double latitude,
+        double longitude,
+        double speed,
+        Integer fuel,
+        Instant timestamp) {
+}
@@ -0,0 +1,50 @@
+package com.driveinsight.model;
+
+import java.time.Instant;
+
+/**
+ * Immutable in-memory view of a vehicle as held by the fleet state store.
+ * Serializes to the same JSON shape as {@link Vehicle}.
+ */
+public record VehicleState(
+        String id,
+        String driverName,
+        String corridor,
+        double speed,
+        int fuel,
+        String status,
+        String vehicleType,
+        double latitude,
+        double longitude,
+        Instant lastUpdate) {
+
+    public static VehicleState from(Vehicle v) {
+        return new VehicleState(v.getId(), v.getDriverName(), v.getCorridor(), v.getSpeed(), v.getFuel(),
+                v.getStatus(), v.getVehicleType(), v.getLatitude(), v.getLongitude(), v.getLastUpdate());
+    }
+
+    public Vehicle toEntity() {
+        Vehicle v = new Vehicle();
+        v.setId(id);
+        v.setDriverName(driverName);
+        v.setCorridor(corridor);
+        v.setSpeed(speed);
+        v.setFuel(fuel);
+        v.setStatus(status);
+        v.setVehicleType(vehicleType);
+        v.setLatitude(latitude);
+        v.setLongitude(longitude);
+        v.setLastUpdate(lastUpdate);
+        return v;
+    }
+
+    public VehicleState withPosition(double latitude, double longitude, double speed, Instant at) {
+        return new VehicleState(id, driverName, corridor, speed, fuel, status, vehicleType, latitude, longitude, at);
+    }
+
+    public VehicleState withTelemetry(TelemetrySample sample, Instant at) {
+        int newFuel = sample.fuel() != null ? sample.fuel() : fuel;
+        return new VehicleState(id, driverName, corridor, sample.speed(), newFuel, status, vehicleType,
+                sample.latitude(), sample.longitude(), at);
+    }
+}
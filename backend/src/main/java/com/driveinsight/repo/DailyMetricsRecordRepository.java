@@ -1,13 +1,37 @@
 package com.driveinsight.repo;
 
 import com.driveinsight.model.DailyMetricsRecord;
+import com.driveinsight.model.MetricsAggregate;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 
+// Date windows are half-open [from, to) so they line up with idx_daily_metrics_date / idx_daily_metrics_vehicle_date
 @Repository
 public interface DailyMetricsRecordRepository extends JpaRepository<DailyMetricsRecord, Long> {
     List<DailyMetricsRecord> findByVehicleId(String vehicleId);
-}
 
+    Slice<DailyMetricsRecord> findByDateGreaterThanEqualAndDateLessThanOrderByDateAscIdAsc(Instant from, Instant to, Pageable pageable);
+
+    Slice<DailyMetricsRecord> findByVehicleIdAndDateGreaterThanEqualAndDateLessThanOrderByDateAscIdAsc(String vehicleId, Instant from, Instant to, Pageable pageable);
+
+    @Query("select coalesce(sum(m.totalDistance), 0) from DailyMetricsRecord m where m.date >= :from and m.date < :to")
+    double sumTotalDistance(@Param("from") Instant from, @Param("to") Instant to);
+
+    @Query("select m.vehicleId as groupKey, sum(m.totalDistance) as totalDistance, avg(m.avgSpeed) as avgSpeed, " +
+            "avg(m.fuelEfficiency) as fuelEfficiency, count(m) as days " +
+            "from DailyMetricsRecord m where m.date >= :from and m.date < :to group by m.vehicleId order by m.vehicleId")
+    List<MetricsAggregate> aggregateByVehicle(@Param("from") Instant from, @Param("to") Instant to);
+
+    @Query("select v.corridor as groupKey, sum(m.totalDistance) as totalDistance, avg(m.avgSpeed) as avgSpeed, " +
+            "avg(m.fuelEfficiency) as fuelEfficiency, count(m) as days " +
+            "from DailyMetricsRecord m join Vehicle v on v.id = m.vehicleId " +
+            "where m.date >= :from and m.date < :to group by v.corridor order by v.corridor")
+    List<MetricsAggregate> aggregateByCorridor(@Param("from") Instant from, @Param("to") Instant to);
+}
@@ -0,0 +1,150 @@
+package com.driveinsight.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyset-paginated and streamed reads of the append-mostly record tables. Rows are ordered by
+ * their auto-increment id, so a page is an index range scan starting after the last id the
+ * client saw, and a stream is a single forward-only cursor. Only the requested columns are
+ * selected.
+ */
+@Repository
+public class RecordCursorRepository {
+    public enum Kind { STRING, LONG, INT, DOUBLE, BOOLEAN, INSTANT }
+
+    /** A JSON field backed by one column; names match the entity's JSON properties. */
+    public record Field(String name, String column, Kind kind) {}
+
+    public record Listing(String table, String filter, Map<String, Field> fields) {
+        private static Listing of(String table, String filter, Field... fields) {
+            Map<String, Field> byName = new LinkedHashMap<>();
+            for (Field f : fields) byName.put(f.name(), f);
+            return new Listing(table, filter, byName);
+        }
+
+        /** Resolves a projection; null or empty selects every field. */
+        public List<Field> select(List<String> names) {
+            if (names == null || names.isEmpty()) return List.copyOf(fields.values());
+            List<Field> selected = new ArrayList<>(names.size() + 1);
+            selected.add(fields.get("id")); // the cursor needs the key even when not requested
+            for (String name : names) {
+                Field f = fields.get(name.trim());
+                if (f == null) throw new IllegalArgumentException("Unknown field: " + name);
+                if (!selected.contains(f)) selected.add(f);
+            }
+            return selected;
+        }
+    }
+
+    public static final Listing ROUTES = Listing.of("routes", null,
+            new Field("id", "id", Kind.LONG),
+            new Field("vehicleId", "vehicle_id", Kind.STRING),
+            new Field("startLocation", "start_location", Kind.STRING),
+            new Field("endLocation", "end_location", Kind.STRING),
+            new Field("distance", "distance", Kind.DOUBLE),
+            new Field("duration", "duration", Kind.INT),
+            new Field("avgSpeed", "avg_speed", Kind.DOUBLE),
+            new Field("stops", "stops", Kind.INT),
+            new Field("date", "date", Kind.INSTANT));
+
+    public static final Listing DAILY_METRICS = Listing.of("daily_metrics", null,
+            new Field("id", "id", Kind.LONG),
+            new Field("vehicleId", "vehicle_id", Kind.STRING),
+            new Field("date", "date", Kind.INSTANT),
+            new Field("totalDistance", "total_distance", Kind.DOUBLE),
+            new Field("fuelEfficiency", "fuel_efficiency", Kind.DOUBLE),
+            new Field("avgSpeed", "avg_speed", Kind.DOUBLE));
+
+    @FunctionalInterface
+    public interface RowHandler {
+        /** {@code values} lines up with the selected fields and is reused between rows. */
+        void accept(Object[] values) throws IOException;
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RecordCursorRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Up to {@code limit} rows with id greater than {@code afterId}, optionally for one vehicle. */
+    public List<Object[]> page(Listing listing, List<Field> fields, String vehicleId, long afterId, int limit) {
+        List<Object[]> rows = new ArrayList<>(Math.min(limit, 1024));
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql(listing, fields, vehicleId) + " LIMIT ?");
+            int i = bind(ps, vehicleId, afterId);
+            ps.setInt(i, limit);
+            return ps;
+        }, (RowCallbackHandler) rs -> rows.add(read(rs, fields, new Object[fields.size()])));
+        return rows;
+    }
+
+    /** Streams every matching row after {@code afterId} through one forward-only cursor. */
+    public void stream(Listing listing, List<Field> fields, String vehicleId, long afterId, RowHandler handler) {
+        Object[] values = new Object[fields.size()];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql(listing, fields, vehicleId),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE); // MySQL Connector/J: stream rows instead of buffering the result
+            bind(ps, vehicleId, afterId);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            try {
+                handler.accept(read(rs, fields, values));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Column names come only from the fixed listings above, never from the request
+    private static String sql(Listing listing, List<Field> fields, String vehicleId) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(fields.get(i).column());
+        }
+        sql.append(" FROM ").append(listing.table()).append(" WHERE id > ?");
+        if (vehicleId != null) sql.append(" AND vehicle_id = ?");
+        if (listing.filter() != null) sql.append(" AND ").append(listing.filter());
+        return sql.append(" ORDER BY id").toString();
+    }
+
+    private static int bind(PreparedStatement ps, String vehicleId, long afterId) throws SQLException {
+        ps.setLong(1, afterId);
+        if (vehicleId == null) return 2;
+        ps.setString(2, vehicleId);
+        return 3;
+    }
+
+    private static Object[] read(ResultSet rs, List<Field> fields, Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            int col = i + 1;
+            values[i] = switch (fields.get(i).kind()) {
+                case STRING -> rs.getString(col);
+                case LONG -> rs.getLong(col);
+                case INT -> rs.getInt(col);
+                case DOUBLE -> rs.getDouble(col);
+                case BOOLEAN -> rs.getBoolean(col);
+                case INSTANT -> {
+                    Timestamp t = rs.getTimestamp(col);
+                    yield t != null ? t.toInstant() : null;
+                }
+            };
+        }
+        return values;
+    }
+}
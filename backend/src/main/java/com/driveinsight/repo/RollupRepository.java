@@ -0,0 +1,70 @@
+package com.driveinsight.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Time-bucketed telemetry rollups ({@code telemetry_rollups}). Rows are merged rather than
+ * replaced: each write carries the samples accumulated since the previous write of that bucket,
+ * so a bucket can be flushed many times while it is open and again after a restart.
+ */
+@Repository
+public class RollupRepository {
+    /** One bucket's accumulated samples; sums rather than averages so that partial buckets merge. */
+    public record Row(String resolution, String scope, String groupKey, Instant bucketStart, long samples,
+                      double speedMin, double speedMax, double speedSum,
+                      int fuelMin, int fuelMax, long fuelSum, double distanceKm) {}
+
+    private static final String MERGE_SQL = "INSERT INTO telemetry_rollups (resolution, scope, group_key, bucket_start, " +
+            "samples, speed_min, speed_max, speed_sum, fuel_min, fuel_max, fuel_sum, distance_km) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+            "samples = samples + VALUES(samples), speed_min = LEAST(speed_min, VALUES(speed_min)), " +
+            "speed_max = GREATEST(speed_max, VALUES(speed_max)), speed_sum = speed_sum + VALUES(speed_sum), " +
+            "fuel_min = LEAST(fuel_min, VALUES(fuel_min)), fuel_max = GREATEST(fuel_max, VALUES(fuel_max)), " +
+            "fuel_sum = fuel_sum + VALUES(fuel_sum), distance_km = distance_km + VALUES(distance_km)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RollupRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void merge(Collection<Row> rows, int batchSize) {
+        jdbcTemplate.batchUpdate(MERGE_SQL, rows, batchSize, (ps, r) -> {
+            ps.setString(1, r.resolution());
+            ps.setString(2, r.scope());
+            ps.setString(3, r.groupKey());
+            ps.setTimestamp(4, Timestamp.from(r.bucketStart()));
+            ps.setLong(5, r.samples());
+            ps.setDouble(6, r.speedMin());
+            ps.setDouble(7, r.speedMax());
+            ps.setDouble(8, r.speedSum());
+            ps.setInt(9, r.fuelMin());
+            ps.setInt(10, r.fuelMax());
+            ps.setLong(11, r.fuelSum());
+            ps.setDouble(12, r.distanceKm());
+        });
+    }
+
+    /** Buckets starting in [from, to), oldest first; a primary-key range scan. */
+    public List<Row> find(String resolution, String scope, String groupKey, Instant from, Instant to) {
+        return jdbcTemplate.query("SELECT bucket_start, samples, speed_min, speed_max, speed_sum, fuel_min, fuel_max, " +
+                        "fuel_sum, distance_km FROM telemetry_rollups WHERE resolution = ? AND scope = ? AND group_key = ? " +
+                        "AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start",
+                (rs, i) -> new Row(resolution, scope, groupKey, rs.getTimestamp(1).toInstant(), rs.getLong(2),
+                        rs.getDouble(3), rs.getDouble(4), rs.getDouble(5), rs.getInt(6), rs.getInt(7), rs.getLong(8),
+                        rs.getDouble(9)),
+                resolution, scope, groupKey, Timestamp.from(from), Timestamp.from(to));
+    }
+
+    /** Deletes up to {@code limit} buckets older than {@code before}; small chunks keep lock times short. */
+    public int deleteOlderThan(String resolution, Instant before, int limit) {
+        return jdbcTemplate.update("DELETE FROM telemetry_rollups WHERE resolution = ? AND bucket_start < ? LIMIT ?",
+                resolution, Timestamp.from(before), limit);
+    }
+}
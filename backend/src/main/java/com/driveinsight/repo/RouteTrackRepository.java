@@ -0,0 +1,96 @@
+package com.driveinsight.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+/**
+ * Encoded route track segments ({@code route_tracks}). Plain JDBC rather than JPA: segments are
+ * opaque blobs that are only ever appended or streamed in order.
+ */
+@Repository
+public class RouteTrackRepository {
+    public record Segment(int segment, int firstSequence, int pointCount, byte[] data) {}
+
+    public record RouteSegment(long routeId, Segment segment) {}
+
+    @FunctionalInterface
+    public interface SegmentHandler {
+        void accept(Segment segment) throws IOException;
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RouteTrackRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean exists(long routeId) {
+        Boolean any = jdbcTemplate.queryForObject(
+                "SELECT EXISTS(SELECT 1 FROM route_tracks WHERE route_id = ?)", Boolean.class, routeId);
+        return Boolean.TRUE.equals(any);
+    }
+
+    /** Next free segment number and sequence, as {@code [segment, sequence]}. */
+    public int[] nextPosition(long routeId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(segment) + 1, 0), COALESCE(MAX(first_sequence + point_count), 1) FROM route_tracks WHERE route_id = ?",
+                (rs, i) -> new int[]{rs.getInt(1), rs.getInt(2)}, routeId);
+    }
+
+    public void insert(long routeId, Segment s) {
+        jdbcTemplate.update("INSERT INTO route_tracks (route_id, segment, first_sequence, point_count, data) VALUES (?, ?, ?, ?, ?)",
+                routeId, s.segment(), s.firstSequence(), s.pointCount(), s.data());
+    }
+
+    public void insertAll(List<RouteSegment> segments, int batchSize) {
+        jdbcTemplate.batchUpdate("INSERT INTO route_tracks (route_id, segment, first_sequence, point_count, data) VALUES (?, ?, ?, ?, ?)",
+                segments, batchSize, (ps, rs) -> {
+                    ps.setLong(1, rs.routeId());
+                    ps.setInt(2, rs.segment().segment());
+                    ps.setInt(3, rs.segment().firstSequence());
+                    ps.setInt(4, rs.segment().pointCount());
+                    ps.setBytes(5, rs.segment().data());
+                });
+    }
+
+    /** Streams segments in order; the handler sees one segment at a time. */
+    public void forEachSegment(long routeId, SegmentHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT segment, first_sequence, point_count, data FROM route_tracks WHERE route_id = ? ORDER BY segment",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE); // MySQL Connector/J: stream rows instead of buffering the result
+            ps.setLong(1, routeId);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            try {
+                handler.accept(new Segment(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getBytes(4)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /** Streams legacy per-point rows in sequence order as (latitude, longitude, sequence). */
+    public void forEachLegacyPoint(long routeId, RowCallbackHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT latitude, longitude, sequence FROM route_points WHERE route_id = ? ORDER BY sequence",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setLong(1, routeId);
+            return ps;
+        }, handler);
+    }
+
+    public int deleteLegacyPoints(long routeId) {
+        return jdbcTemplate.update("DELETE FROM route_points WHERE route_id = ?", routeId);
+    }
+}
@@ -0,0 +1,84 @@
+package com.driveinsight.repo;
+
+import com.driveinsight.model.RouteRecord;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Batched writes of records derived from live telemetry: detected trips into {@code routes}
+ * and per-day deltas into {@code daily_metrics}. Daily rows are merged like rollups, keyed by
+ * (vehicle_id, date); the averages are recomputed in the same statement from the summed
+ * distance, driving time and fuel, so a day can be flushed any number of times.
+ */
+@Repository
+public class TripRepository {
+    /** Distance, driving time and fuel accumulated for one vehicle and UTC day since the last flush. */
+    public record DailyDelta(String vehicleId, Instant day, double distanceKm, double drivingSeconds, double fuelUsedLitres) {}
+
+    private static final String INSERT_ROUTE_SQL = "INSERT INTO routes (vehicle_id, start_location, end_location, " +
+            "distance, duration, avg_speed, stops, date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Assignments run left to right, so the averages see the already-summed columns
+    private static final String MERGE_DAILY_SQL = "INSERT INTO daily_metrics (vehicle_id, date, total_distance, " +
+            "driving_seconds, fuel_used_litres, avg_speed, fuel_efficiency) VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE total_distance = total_distance + VALUES(total_distance), " +
+            "driving_seconds = driving_seconds + VALUES(driving_seconds), " +
+            "fuel_used_litres = fuel_used_litres + VALUES(fuel_used_litres), " +
+            "avg_speed = IF(driving_seconds > 0, total_distance / (driving_seconds / 3600), avg_speed), " +
+            "fuel_efficiency = IF(fuel_used_litres > 0, total_distance / fuel_used_litres, fuel_efficiency)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TripRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Inserts the routes as one batch and sets their generated ids. */
+    public void insertRoutes(List<RouteRecord> routes) {
+        if (routes.isEmpty()) return;
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(INSERT_ROUTE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (RouteRecord r : routes) {
+                    ps.setString(1, r.getVehicleId());
+                    ps.setString(2, r.getStartLocation());
+                    ps.setString(3, r.getEndLocation());
+                    ps.setDouble(4, r.getDistance());
+                    ps.setInt(5, r.getDuration());
+                    ps.setDouble(6, r.getAvgSpeed());
+                    ps.setInt(7, r.getStops());
+                    ps.setTimestamp(8, Timestamp.from(r.getDate()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (RouteRecord r : routes) {
+                        if (!keys.next()) break;
+                        r.setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    public void mergeDaily(Collection<DailyDelta> deltas, int batchSize) {
+        jdbcTemplate.batchUpdate(MERGE_DAILY_SQL, deltas, batchSize, (ps, d) -> {
+            ps.setString(1, d.vehicleId());
+            ps.setTimestamp(2, Timestamp.from(d.day()));
+            ps.setDouble(3, d.distanceKm());
+            ps.setDouble(4, d.drivingSeconds());
+            ps.setDouble(5, d.fuelUsedLitres());
+            ps.setDouble(6, d.drivingSeconds() > 0 ? d.distanceKm() / (d.drivingSeconds() / 3600) : 0);
+            ps.setDouble(7, d.fuelUsedLitres() > 0 ? d.distanceKm() / d.fuelUsedLitres() : 0);
+        });
+    }
+}
@@ -0,0 +1,376 @@
+package com.driveinsight.service;
+
+import com.driveinsight.cluster.ClusterMembership;
+import com.driveinsight.model.AlertRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Authoritative set of active alerts, held in memory and indexed by id and by vehicle and type,
+ * so reads never touch the database. At most one alert per (vehicle, type) is active, or per
+ * (vehicle, type, geofence) for geofence alerts: raising a duplicate returns the existing alert. Ids are allocated here rather than by AUTO_INCREMENT so
+ * inserts can be batched; all alert writes therefore go through this class and its
+ * {@link AlertBatchWriter}. Every change is also queued for the WebSocket alert feed.
+ *
+ * <p>In cluster mode each node allocates ids from its own residue class (see
+ * {@link ClusterMembership#idStride()}), publishes its changes to its {@link #addListener
+ * listeners} and applies other nodes' changes through {@link #applyReplica}.
+ *
+ * <p>Stored records are never mutated; acknowledging or resolving replaces them with a copy.
+ */
+@Service
+public class ActiveAlertRegistry {
+    private static final Logger log = LoggerFactory.getLogger(ActiveAlertRegistry.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AlertBatchWriter writer;
+    private final AtomicLong nextId = new AtomicLong(1);
+    // Ordered by id, so listings page and stream without sorting
+    private final ConcurrentNavigableMap<Long, AlertRecord> byId = new ConcurrentSkipListMap<>();
+    // vehicle id -> key (type, plus the geofence if any) -> alert; inner maps are only modified inside byVehicle.compute for their vehicle
+    private final Map<String, Map<String, AlertRecord>> byVehicle = new ConcurrentHashMap<>();
+    // Latest version of each alert changed since the feed last drained
+    private final Map<Long, AlertRecord> changes = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> raised = new ConcurrentHashMap<>();
+    private final ChangeVersion changeVersion;
+    private final int idStride;
+    private final int idOffset;
+    private final List<Consumer<AlertRecord>> listeners = new CopyOnWriteArrayList<>();
+
+    public ActiveAlertRegistry(JdbcTemplate jdbcTemplate,
+                               MeterRegistry meterRegistry,
+                               ChangeVersion changeVersion,
+                               ClusterMembership cluster,
+                               @Value("${fleet.alerts.batch-size:500}") int batchSize,
+                               @Value("${fleet.alerts.flush-interval-ms:1000}") long flushIntervalMs,
+                               @Value("${fleet.alerts.queue-capacity:10000}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.changeVersion = changeVersion;
+        this.idStride = cluster.idStride();
+        this.idOffset = cluster.nodeIndex() % idStride;
+        this.writer = new AlertBatchWriter(jdbcTemplate, batchSize, flushIntervalMs, queueCapacity);
+        Gauge.builder("fleet.alerts.active", byId, Map::size).register(meterRegistry);
+        Gauge.builder("fleet.alerts.pending", writer, AlertBatchWriter::pending).register(meterRegistry);
+        Gauge.builder("fleet.alerts.dropped", writer, AlertBatchWriter::dropped).register(meterRegistry);
+        Gauge.builder("fleet.alerts.unpersisted", writer, AlertBatchWriter::unpersisted).register(meterRegistry);
+    }
+
+    // Before the fleet is loaded, so rules re-raising a condition that is already active are deduplicated.
+    // Reads only active rows, through idx_alerts_active_vehicle.
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void load() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM alerts", Long.class);
+        // The first id above every existing one that falls in this node's residue class
+        long first = (maxId != null ? maxId : 0) + 1;
+        nextId.set(first + Math.floorMod(idOffset - first, (long) idStride));
+        List<AlertRecord> duplicates = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, vehicle_id, type, message, severity, created_at, acknowledged_at, geofence_id FROM alerts " +
+                "WHERE is_active = TRUE ORDER BY vehicle_id, id", rs -> {
+            AlertRecord a = new AlertRecord();
+            a.setId(rs.getLong(1));
+            a.setVehicleId(rs.getString(2));
+            a.setType(rs.getString(3));
+            a.setMessage(rs.getString(4));
+            a.setSeverity(rs.getString(5));
+            a.setActive(true);
+            a.setCreatedAt(instant(rs.getTimestamp(6)));
+            a.setAcknowledgedAt(instant(rs.getTimestamp(7)));
+            a.setGeofenceId(rs.getObject(8, Long.class));
+            // Rows are in id order per vehicle, so a later duplicate supersedes the earlier one
+            AlertRecord older = byVehicle.computeIfAbsent(a.getVehicleId(), k -> new ConcurrentHashMap<>()).put(key(a), a);
+            if (older != null) {
+                byId.remove(older.getId());
+                duplicates.add(older);
+            }
+            byId.put(a.getId(), a);
+        });
+        Instant now = Instant.now();
+        duplicates.forEach(d -> writer.put(AlertBatchWriter.Op.RESOLVE, copy(d, d.getAcknowledgedAt(), now)));
+        changeVersion.bump(ChangeVersion.Scope.ALERTS);
+        log.info("Loaded {} active alerts ({} duplicates resolved)", byId.size(), duplicates.size());
+    }
+
+    public List<AlertRecord> getActive() {
+        return new ArrayList<>(byId.values());
+    }
+
+    /** Up to {@code limit} active alerts in id order, starting after {@code afterId} (exclusive, null for the start). */
+    public List<AlertRecord> page(Long afterId, int limit) {
+        List<AlertRecord> page = new ArrayList<>(Math.min(limit, 1024));
+        for (AlertRecord a : active(afterId)) {
+            if (page.size() >= limit) break;
+            page.add(a);
+        }
+        return page;
+    }
+
+    /** Visits active alerts in id order after {@code afterId} without copying them. */
+    public void forEachActive(Long afterId, Consumer<AlertRecord> action) {
+        active(afterId).forEach(action);
+    }
+
+    private Collection<AlertRecord> active(Long afterId) {
+        return afterId == null ? byId.values() : byId.tailMap(afterId, false).values();
+    }
+
+    public List<AlertRecord> getActive(String vehicleId) {
+        Map<String, AlertRecord> types = byVehicle.get(vehicleId);
+        if (types == null) return List.of();
+        List<AlertRecord> alerts = new ArrayList<>(types.values());
+        alerts.sort(Comparator.comparing(AlertRecord::getId));
+        return alerts;
+    }
+
+    public Optional<AlertRecord> getActive(String vehicleId, String type) {
+        Map<String, AlertRecord> types = byVehicle.get(vehicleId);
+        return Optional.ofNullable(types != null ? types.get(type) : null);
+    }
+
+    /**
+     * Raises an alert unless one of the same type is already active for the vehicle, in which case
+     * that one is returned. Called from fleet state listeners, so never blocks on the writer.
+     */
+    public AlertRecord raise(String vehicleId, String type, String severity, String message, Instant at) {
+        return raise(vehicleId, type, null, severity, message, at);
+    }
+
+    /** As {@link #raise(String, String, String, String, Instant)}, for an alert about one geofence. */
+    public AlertRecord raise(String vehicleId, String type, Long geofenceId, String severity, String message, Instant at) {
+        AlertRecord alert = new AlertRecord();
+        alert.setVehicleId(vehicleId);
+        alert.setType(type);
+        alert.setGeofenceId(geofenceId);
+        alert.setSeverity(severity);
+        alert.setMessage(message);
+        alert.setCreatedAt(at);
+        return add(alert, false);
+    }
+
+    /**
+     * Manually created alerts follow the same one-per-type rule. The insert waits for queue room
+     * instead of being dropped; see {@link AlertBatchWriter} for when it can still go unwritten.
+     */
+    public AlertRecord create(AlertRecord alert) {
+        AlertRecord a = new AlertRecord();
+        a.setVehicleId(alert.getVehicleId());
+        a.setType(alert.getType());
+        a.setGeofenceId(alert.getGeofenceId());
+        a.setSeverity(alert.getSeverity());
+        a.setMessage(alert.getMessage());
+        a.setCreatedAt(alert.getCreatedAt() != null ? alert.getCreatedAt() : Instant.now());
+        return add(a, true);
+    }
+
+    private AlertRecord add(AlertRecord alert, boolean mustPersist) {
+        AlertRecord[] result = new AlertRecord[1];
+        // Writes are queued inside the per-vehicle compute so an alert's insert always precedes its
+        // updates; one that must persist waits for queue room here, before taking the bin lock
+        boolean reserved = mustPersist && writer.reserve();
+        byVehicle.compute(alert.getVehicleId(), (vehicleId, types) -> {
+            if (types == null) types = new ConcurrentHashMap<>();
+            AlertRecord existing = types.get(key(alert));
+            if (existing != null) {
+                result[0] = existing;
+                return types;
+            }
+            alert.setId(nextId.getAndAdd(idStride));
+            alert.setActive(true);
+            types.put(key(alert), alert);
+            byId.put(alert.getId(), alert);
+            changes.put(alert.getId(), alert);
+            notifyListeners(alert);
+            write(AlertBatchWriter.Op.INSERT, alert, reserved);
+            raised.computeIfAbsent(alert.getType(), t -> meterRegistry.counter("fleet.alerts.raised", "type", t)).increment();
+            result[0] = alert;
+            return types;
+        });
+        if (reserved && result[0] != alert) writer.release();
+        if (result[0] == alert) changeVersion.bump(ChangeVersion.Scope.ALERTS);
+        return result[0];
+    }
+
+    public Optional<AlertRecord> acknowledge(long id) {
+        return replace(id, a -> a.getAcknowledgedAt() != null ? a : copy(a, Instant.now(), null),
+                AlertBatchWriter.Op.ACKNOWLEDGE, true);
+    }
+
+    public Optional<AlertRecord> resolve(long id) {
+        return replace(id, a -> copy(a, a.getAcknowledgedAt(), Instant.now()), AlertBatchWriter.Op.RESOLVE, true);
+    }
+
+    /** Resolves the active alert of {@code type} for a vehicle, if any; used when a rule's condition clears. */
+    public void resolve(String vehicleId, String type) {
+        resolve(vehicleId, type, null);
+    }
+
+    /** Resolves the active alert of {@code type} about one geofence for a vehicle, if any. */
+    public void resolve(String vehicleId, String type, Long geofenceId) {
+        Map<String, AlertRecord> types = byVehicle.get(vehicleId);
+        AlertRecord active = types != null ? types.get(key(type, geofenceId)) : null;
+        if (active != null) {
+            replace(active.getId(), a -> copy(a, a.getAcknowledgedAt(), Instant.now()), AlertBatchWriter.Op.RESOLVE, false);
+        }
+    }
+
+    private Optional<AlertRecord> replace(long id, UnaryOperator<AlertRecord> change,
+                                          AlertBatchWriter.Op op, boolean mustPersist) {
+        AlertRecord current = byId.get(id);
+        if (current == null) return Optional.empty();
+        AlertRecord[] result = new AlertRecord[1];
+        boolean[] written = new boolean[1];
+        boolean reserved = mustPersist && writer.reserve();
+        byVehicle.computeIfPresent(current.getVehicleId(), (vehicleId, types) -> {
+            AlertRecord latest = types.get(key(current));
+            if (latest == null || latest.getId() != id) return types;
+            AlertRecord next = change.apply(latest);
+            result[0] = next;
+            if (next == latest) return types;
+            if (next.isActive()) {
+                types.put(key(next), next);
+                byId.put(id, next);
+            } else {
+                types.remove(key(next));
+                byId.remove(id);
+            }
+            changes.put(id, next);
+            notifyListeners(next);
+            write(op, next, reserved);
+            written[0] = true;
+            return types.isEmpty() ? null : types;
+        });
+        if (reserved && !written[0]) writer.release();
+        if (result[0] != null && result[0] != current) changeVersion.bump(ChangeVersion.Scope.ALERTS);
+        return Optional.ofNullable(result[0]);
+    }
+
+    /** Registers an observer of changes made on this node, called inside the per-vehicle compute. */
+    public void addListener(Consumer<AlertRecord> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Applies an alert change made on another cluster node. It reaches this node's alert feed
+     * but is neither written nor passed to the listeners; the node that made it did both. An
+     * active alert replaces any other with its key for the vehicle, as the newer one wins.
+     */
+    public void applyReplica(AlertRecord alert) {
+        byVehicle.compute(alert.getVehicleId(), (vehicleId, types) -> {
+            if (types == null) types = new ConcurrentHashMap<>();
+            AlertRecord existing = types.get(key(alert));
+            if (alert.isActive()) {
+                if (existing != null && !existing.getId().equals(alert.getId())) byId.remove(existing.getId());
+                types.put(key(alert), alert);
+                byId.put(alert.getId(), alert);
+            } else {
+                if (existing != null && existing.getId().equals(alert.getId())) types.remove(key(alert));
+                byId.remove(alert.getId());
+            }
+            changes.put(alert.getId(), alert);
+            return types.isEmpty() ? null : types;
+        });
+        changeVersion.bump(ChangeVersion.Scope.ALERTS);
+    }
+
+    /**
+     * Drops active alerts of the vehicles in {@code vehicles} whose ids are not in {@code activeIds},
+     * the full list from the node that owns those vehicles, as if their resolution had been
+     * replicated. Returns how many were dropped.
+     */
+    public int retainReplicas(Predicate<String> vehicles, Set<Long> activeIds) {
+        int dropped = 0;
+        Instant now = Instant.now();
+        for (AlertRecord a : new ArrayList<>(byId.values())) {
+            if (activeIds.contains(a.getId()) || !vehicles.test(a.getVehicleId())) continue;
+            applyReplica(copy(a, a.getAcknowledgedAt(), now));
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * Drops the active alerts of vehicles whose alert rows were deleted with them. The feed sees
+     * them resolved; nothing is written. Returns how many were dropped.
+     */
+    public int forget(Predicate<String> vehicles) {
+        return retainReplicas(vehicles, Set.of());
+    }
+
+    private void notifyListeners(AlertRecord alert) {
+        for (Consumer<AlertRecord> listener : listeners) listener.accept(alert);
+    }
+
+    // Called inside byVehicle.compute, so never blocks: room for a write that must persist was reserved beforehand
+    private void write(AlertBatchWriter.Op op, AlertRecord alert, boolean reserved) {
+        if (reserved) writer.putReserved(op, alert);
+        else writer.offer(op, alert);
+    }
+
+    /** Latest version of every alert changed since the previous call; resolved alerts have active=false. */
+    public List<AlertRecord> drainChanges() {
+        if (changes.isEmpty()) return List.of();
+        List<AlertRecord> drained = new ArrayList<>();
+        for (Long id : new ArrayList<>(changes.keySet())) {
+            AlertRecord a = changes.remove(id);
+            if (a != null) drained.add(a);
+        }
+        return drained;
+    }
+
+    private static AlertRecord copy(AlertRecord a, Instant acknowledgedAt, Instant resolvedAt) {
+        AlertRecord c = new AlertRecord();
+        c.setId(a.getId());
+        c.setVehicleId(a.getVehicleId());
+        c.setType(a.getType());
+        c.setGeofenceId(a.getGeofenceId());
+        c.setMessage(a.getMessage());
+        c.setSeverity(a.getSeverity());
+        c.setCreatedAt(a.getCreatedAt());
+        c.setAcknowledgedAt(acknowledgedAt);
+        c.setResolvedAt(resolvedAt);
+        c.setActive(resolvedAt == null);
+        return c;
+    }
+
+    private static String key(AlertRecord a) {
+        return key(a.getType(), a.getGeofenceId());
+    }
+
+    private static String key(String type, Long geofenceId) {
+        return geofenceId != null ? type + "#" + geofenceId : type;
+    }
+
+    private static Instant instant(Timestamp t) {
+        return t != null ? t.toInstant() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.close();
+    }
+}
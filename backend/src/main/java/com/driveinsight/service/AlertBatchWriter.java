@@ -0,0 +1,280 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.AlertRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background writer for alert lifecycle changes: a bounded queue of inserts, acknowledgements
+ * and resolutions drained into JDBC batches per {@code batchSize} writes or {@code flushIntervalMs}.
+ * Within a batch inserts run first, so a change to an alert raised in the same batch still
+ * applies.
+ *
+ * <p>An insert can fail on the vehicle foreign key while the vehicle's own row is still waiting
+ * in the {@link VehicleBatchWriter}. Such an insert is kept and retried on later flushes. Any
+ * acknowledgement or resolution of the alert is folded into the kept record, so the row is
+ * written in its latest state. After {@link #ORPHAN_RETRY_MS} it is given up, logged and counted
+ * as unpersisted. Rule-raised alerts are offered without blocking, because they come from inside fleet
+ * state listeners; when the queue is full they are dropped and counted. Writes that must not be
+ * lost {@link #reserve() reserve} room first, blocking before the caller takes any lock, and then
+ * queue the write under the lock without blocking.
+ */
+class AlertBatchWriter {
+    private static final Logger log = LoggerFactory.getLogger(AlertBatchWriter.class);
+
+    enum Op { INSERT, ACKNOWLEDGE, RESOLVE }
+
+    record Write(Op op, AlertRecord alert) {}
+
+    static final String INSERT_SQL = "INSERT INTO alerts (id, vehicle_id, type, message, severity, is_active, " +
+            "created_at, acknowledged_at, resolved_at, geofence_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String ACKNOWLEDGE_SQL = "UPDATE alerts SET acknowledged_at = ? WHERE id = ?";
+    static final String RESOLVE_SQL = "UPDATE alerts SET is_active = FALSE, resolved_at = ? WHERE id = ?";
+    static final long ORPHAN_RETRY_MS = 60_000;
+    // MySQL error codes: the referenced vehicle row does not exist; the row was already inserted
+    private static final int NO_REFERENCED_ROW = 1452;
+    private static final int DUPLICATE_KEY = 1062;
+
+    // An insert waiting for its vehicle's row, in the latest state of the alert
+    private record Orphan(AlertRecord alert, long since) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<Write> queue;
+    // One permit per free queue slot; taken before a write is queued and returned when the worker takes it
+    private final Semaphore space;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder unpersisted = new LongAdder();
+    // By alert id; only touched by the worker, and by close() once the worker has stopped
+    private final Map<Long, Orphan> orphans = new LinkedHashMap<>();
+
+    AlertBatchWriter(JdbcTemplate jdbcTemplate, int batchSize, long flushIntervalMs, int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.space = new Semaphore(queueCapacity);
+        this.worker = new Thread(this::run, "alert-batch-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Never blocks; the write is dropped and counted when the queue is full. */
+    void offer(Op op, AlertRecord alert) {
+        if (space.tryAcquire()) {
+            queue.add(new Write(op, alert));
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /** Blocks when the queue is full; for API-driven changes that must not be lost. */
+    void put(Op op, AlertRecord alert) {
+        if (reserve()) putReserved(op, alert);
+    }
+
+    /**
+     * Blocks until there is room for one write and holds it for the caller, who must pass it to
+     * {@link #putReserved} or {@link #release}. False if interrupted while waiting.
+     */
+    boolean reserve() {
+        try {
+            space.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Queues a write into room taken by {@link #reserve()}; never blocks. */
+    void putReserved(Op op, AlertRecord alert) {
+        queue.add(new Write(op, alert));
+    }
+
+    void release() {
+        space.release();
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    long unpersisted() {
+        return unpersisted.sum();
+    }
+
+    void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Write> remaining = new ArrayList<>();
+        space.release(queue.drainTo(remaining));
+        flush(remaining);
+        if (!orphans.isEmpty()) {
+            unpersisted.add(orphans.size());
+            log.warn("Shutting down with {} alerts still waiting for their vehicle rows", orphans.size());
+            orphans.clear();
+        }
+    }
+
+    private void run() {
+        List<Write> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Write first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!orphans.isEmpty()) flush(batch);
+                    continue;
+                }
+                space.release();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Write next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    space.release();
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (!running) break;
+            }
+            flush(batch);
+            batch.clear();
+        }
+        flush(batch);
+    }
+
+    private void flush(List<Write> writes) {
+        if (writes.isEmpty() && orphans.isEmpty()) return;
+        List<AlertRecord> inserts = new ArrayList<>();
+        List<AlertRecord> acknowledged = new ArrayList<>();
+        List<AlertRecord> resolved = new ArrayList<>();
+        for (Write w : writes) {
+            if (fold(w.alert())) continue;
+            (w.op() == Op.INSERT ? inserts : w.op() == Op.ACKNOWLEDGE ? acknowledged : resolved).add(w.alert());
+        }
+        orphans.values().forEach(o -> inserts.add(o.alert()));
+        try {
+            if (!inserts.isEmpty()) {
+                insert(inserts);
+                // Changes to alerts whose insert has just been deferred would update nothing
+                acknowledged.removeIf(this::fold);
+                resolved.removeIf(this::fold);
+            }
+            if (!acknowledged.isEmpty()) {
+                jdbcTemplate.batchUpdate(ACKNOWLEDGE_SQL, acknowledged, batchSize, (ps, a) -> {
+                    ps.setTimestamp(1, timestamp(a.getAcknowledgedAt()));
+                    ps.setLong(2, a.getId());
+                });
+            }
+            if (!resolved.isEmpty()) {
+                jdbcTemplate.batchUpdate(RESOLVE_SQL, resolved, batchSize, (ps, a) -> {
+                    ps.setTimestamp(1, timestamp(a.getResolvedAt()));
+                    ps.setLong(2, a.getId());
+                });
+            }
+        } catch (Exception e) {
+            log.warn("Failed to write {} alert changes", writes.size(), e);
+        }
+        expireOrphans();
+    }
+
+    // A later version of an alert whose insert is waiting replaces the waiting record
+    private boolean fold(AlertRecord alert) {
+        Orphan orphan = orphans.get(alert.getId());
+        if (orphan == null) return false;
+        orphans.put(alert.getId(), new Orphan(alert, orphan.since()));
+        return true;
+    }
+
+    private void insert(List<AlertRecord> inserts) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts, batchSize, (ps, a) -> bindInsert(ps, a));
+            inserts.forEach(a -> orphans.remove(a.getId()));
+            return;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Alert batch insert failed, retrying row by row", e);
+        }
+        // One by one to tell which rows are missing their vehicle; earlier chunks of the batch may have gone in
+        long now = System.currentTimeMillis();
+        for (AlertRecord a : inserts) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, ps -> bindInsert(ps, a));
+                orphans.remove(a.getId());
+            } catch (DataIntegrityViolationException e) {
+                int code = e.getMostSpecificCause() instanceof SQLException sql ? sql.getErrorCode() : 0;
+                if (code == DUPLICATE_KEY) {
+                    orphans.remove(a.getId());
+                } else if (code == NO_REFERENCED_ROW) {
+                    Orphan orphan = orphans.get(a.getId());
+                    orphans.put(a.getId(), new Orphan(a, orphan != null ? orphan.since() : now));
+                } else {
+                    orphans.remove(a.getId());
+                    unpersisted.increment();
+                    log.warn("Alert {} for vehicle {} could not be written", a.getId(), a.getVehicleId(), e);
+                }
+            }
+        }
+    }
+
+    private void expireOrphans() {
+        long cutoff = System.currentTimeMillis() - ORPHAN_RETRY_MS;
+        for (Iterator<Orphan> it = orphans.values().iterator(); it.hasNext(); ) {
+            Orphan o = it.next();
+            if (o.since() > cutoff) continue;
+            it.remove();
+            unpersisted.increment();
+            log.warn("Gave up on alert {}: vehicle {} has no row after {} ms", o.alert().getId(),
+                    o.alert().getVehicleId(), ORPHAN_RETRY_MS);
+        }
+    }
+
+    private static void bindInsert(PreparedStatement ps, AlertRecord a) throws SQLException {
+        ps.setLong(1, a.getId());
+        ps.setString(2, a.getVehicleId());
+        ps.setString(3, a.getType());
+        ps.setString(4, a.getMessage());
+        ps.setString(5, a.getSeverity());
+        ps.setBoolean(6, a.isActive());
+        ps.setTimestamp(7, Timestamp.from(a.getCreatedAt() != null ? a.getCreatedAt() : Instant.now()));
+        ps.setTimestamp(8, timestamp(a.getAcknowledgedAt()));
+        ps.setTimestamp(9, timestamp(a.getResolvedAt()));
+        ps.setObject(10, a.getGeofenceId(), Types.BIGINT);
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
+    }
+}
@@ -0,0 +1,48 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.AlertRecord;
+import com.driveinsight.ws.VehicleWebSocketHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pushes alert lifecycle changes to every WebSocket session as one
+ * {@code {"type":"alert_update","alerts":[...]}} frame per tick. Each entry is the alert's latest
+ * state; clients upsert by id and drop alerts whose {@code active} is false.
+ */
+@Component
+public class AlertFeedBroadcaster {
+    private static final Logger log = LoggerFactory.getLogger(AlertFeedBroadcaster.class);
+
+    private final ActiveAlertRegistry alerts;
+    private final VehicleWebSocketHandler wsHandler;
+    private final ObjectMapper objectMapper;
+
+    public AlertFeedBroadcaster(ActiveAlertRegistry alerts, VehicleWebSocketHandler wsHandler, ObjectMapper objectMapper) {
+        this.alerts = alerts;
+        this.wsHandler = wsHandler;
+        this.objectMapper = objectMapper;
+    }
+
+    @Scheduled(fixedDelayString = "${fleet.alerts.feed-interval-ms:1000}")
+    public void flush() {
+        List<AlertRecord> changed = alerts.drainChanges();
+        if (changed.isEmpty() || !wsHandler.hasSessions()) return;
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("type", "alert_update");
+        frame.put("alerts", changed);
+        try {
+            wsHandler.broadcast(objectMapper.writeValueAsString(frame));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize {} alert changes", changed.size(), e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.driveinsight.service;
+
+import com.driveinsight.cluster.ClusterMembership;
+import com.driveinsight.model.AlertRecord;
+import com.driveinsight.model.VehicleState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates alert rules on every fleet state change: speed limits per vehicle type, low fuel,
+ * geofence entry and exit, and deviation from the vehicle's corridor. Offline vehicles are found
+ * by a periodic scan for stale {@code lastUpdate}s, since they produce no changes to react to.
+ *
+ * <p>Rules are edge-triggered with hysteresis: an alert is raised when a condition starts and
+ * not again until it has cleared, so a vehicle cruising just over the limit yields one alert,
+ * not one per sample. When the condition clears the alert is resolved. Alerts go through the
+ * {@link ActiveAlertRegistry}, which also deduplicates against alerts still active from before
+ * a restart. A vehicle's flags start from its alerts in the registry, so one raised before a
+ * restart or by the node that owned the vehicle before is still resolved when its condition
+ * clears. In cluster mode rules run on the node that owns the vehicle.
+ */
+@Component
+public class AlertRuleEngine implements FleetStateListener {
+    private static final double SPEED_HYSTERESIS_KMH = 5;
+    private static final int FUEL_HYSTERESIS_PERCENT = 5;
+    private static final double DEVIATION_CLEAR_RATIO = 0.8;
+
+    // Which conditions are currently raised for one vehicle. Only touched inside flags.compute
+    private static final class Flags {
+        boolean speeding;
+        boolean lowFuel;
+        boolean offCorridor;
+        boolean offline;
+        long[] geofences = GeofenceIndex.NONE;
+    }
+
+    private final FleetStateStore fleetState;
+    private final FleetColumns columns;
+    private final GeofenceService geofences;
+    private final ActiveAlertRegistry alerts;
+    private final ClusterMembership cluster;
+    private final Map<String, Double> speedLimits;
+    private final double defaultSpeedLimit;
+    private final int lowFuelPercent;
+    private final Duration offlineAfter;
+    private final double deviationKm;
+    private final Map<String, Flags> flags = new ConcurrentHashMap<>();
+
+    public AlertRuleEngine(FleetStateStore fleetState,
+                           FleetColumns columns,
+                           GeofenceService geofences,
+                           ActiveAlertRegistry alerts,
+                           ClusterMembership cluster,
+                           @Value("${fleet.alerts.speed-limits:truck:80,van:100,sedan:120}") String speedLimits,
+                           @Value("${fleet.alerts.default-speed-limit:100}") double defaultSpeedLimit,
+                           @Value("${fleet.alerts.low-fuel-percent:15}") int lowFuelPercent,
+                           @Value("${fleet.alerts.offline-after-ms:300000}") long offlineAfterMs,
+                           @Value("${fleet.alerts.corridor-deviation-km:25}") double deviationKm) {
+        this.fleetState = fleetState;
+        this.columns = columns;
+        this.geofences = geofences;
+        this.speedLimits = parseLimits(speedLimits);
+        this.defaultSpeedLimit = defaultSpeedLimit;
+        this.lowFuelPercent = lowFuelPercent;
+        this.offlineAfter = Duration.ofMillis(offlineAfterMs);
+        this.deviationKm = deviationKm;
+        this.alerts = alerts;
+        this.cluster = cluster;
+        fleetState.addListener(this);
+    }
+
+    private static Map<String, Double> parseLimits(String spec) {
+        Map<String, Double> limits = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] kv = entry.split(":");
+            if (kv.length == 2) limits.put(kv[0].trim().toLowerCase(Locale.ROOT), Double.parseDouble(kv[1].trim()));
+        }
+        return limits;
+    }
+
+    @Override
+    public boolean localOnly() {
+        return true;
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        if (current == null) {
+            flags.remove(previous.id());
+            return;
+        }
+        GeofenceIndex index = geofences.index();
+        flags.compute(current.id(), (id, f) -> {
+            boolean baseline = f == null;
+            if (f == null) f = seed(id);
+            evaluate(previous, current, f, index, baseline);
+            return f;
+        });
+    }
+
+    private void evaluate(VehicleState previous, VehicleState v, Flags f, GeofenceIndex index, boolean baseline) {
+        Instant at = v.lastUpdate() != null ? v.lastUpdate() : Instant.now();
+        if (f.offline && previous != null && v.lastUpdate() != null && !v.lastUpdate().equals(previous.lastUpdate())) {
+            f.offline = false;
+            alerts.resolve(v.id(), "offline");
+        }
+
+        double limit = v.vehicleType() != null
+                ? speedLimits.getOrDefault(v.vehicleType().toLowerCase(Locale.ROOT), defaultSpeedLimit) : defaultSpeedLimit;
+        if (!f.speeding && v.speed() > limit) {
+            f.speeding = true;
+            raise(v.id(), "speeding", v.speed() > limit * 1.25 ? "high" : "medium",
+                    String.format(Locale.ROOT, "%s - %.0f km/h in a %.0f km/h limit", v.id(), v.speed(), limit), at);
+        } else if (f.speeding && v.speed() <= limit - SPEED_HYSTERESIS_KMH) {
+            f.speeding = false;
+            alerts.resolve(v.id(), "speeding");
+        }
+
+        if (!f.lowFuel && v.fuel() <= lowFuelPercent) {
+            f.lowFuel = true;
+            raise(v.id(), "low_fuel", v.fuel() <= lowFuelPercent / 3 ? "critical" : "high",
+                    v.id() + " - " + v.fuel() + "% remaining", at);
+        } else if (f.lowFuel && v.fuel() > lowFuelPercent + FUEL_HYSTERESIS_PERCENT) {
+            f.lowFuel = false;
+            alerts.resolve(v.id(), "low_fuel");
+        }
+
+        boolean moved = previous == null || previous.latitude() != v.latitude() || previous.longitude() != v.longitude();
+        if (!moved) return;
+
+        CorridorGeometry.Corridor corridor = CorridorGeometry.find(v.corridor());
+        if (corridor != null) {
+            double off = corridor.distanceKm(v.latitude(), v.longitude());
+            if (!f.offCorridor && off > deviationKm) {
+                f.offCorridor = true;
+                raise(v.id(), "corridor_deviation", "medium",
+                        String.format(Locale.ROOT, "%s - %.0f km off the %s corridor", v.id(), off, corridor.name()), at);
+            } else if (f.offCorridor && off < deviationKm * DEVIATION_CLEAR_RATIO) {
+                f.offCorridor = false;
+                alerts.resolve(v.id(), "corridor_deviation");
+            }
+        }
+
+        long[] inside = index.lookup(v.latitude(), v.longitude());
+        long[] before = f.geofences;
+        f.geofences = inside;
+        if (baseline) {
+            // A vehicle first seen inside a geofence was not observed entering it, but an entry
+            // alert from before for a geofence it is no longer in is over
+            for (AlertRecord a : alerts.getActive(v.id())) {
+                if ("geofence_entry".equals(a.getType()) && a.getGeofenceId() != null
+                        && Arrays.binarySearch(inside, a.getGeofenceId()) < 0) {
+                    alerts.resolve(v.id(), "geofence_entry", a.getGeofenceId());
+                }
+            }
+            return;
+        }
+        if (inside.length == 0 && before.length == 0) return;
+        int i = 0, j = 0;
+        while (i < before.length || j < inside.length) {
+            // Entry and exit are one alert per vehicle and geofence each; the newer transition resolves the other
+            if (j == inside.length || (i < before.length && before[i] < inside[j])) {
+                alerts.resolve(v.id(), "geofence_entry", before[i]);
+                alerts.raise(v.id(), "geofence_exit", before[i], "low", v.id() + " left " + index.name(before[i]), at);
+                i++;
+            } else if (i == before.length || inside[j] < before[i]) {
+                alerts.resolve(v.id(), "geofence_exit", inside[j]);
+                alerts.raise(v.id(), "geofence_entry", inside[j], "low", v.id() + " entered " + index.name(inside[j]), at);
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
+
+    // Conditions already raised for a vehicle this engine has not seen yet
+    private Flags seed(String vehicleId) {
+        Flags f = new Flags();
+        for (AlertRecord a : alerts.getActive(vehicleId)) {
+            switch (a.getType()) {
+                case "speeding" -> f.speeding = true;
+                case "low_fuel" -> f.lowFuel = true;
+                case "corridor_deviation" -> f.offCorridor = true;
+                case "offline" -> f.offline = true;
+            }
+        }
+        return f;
+    }
+
+    @Scheduled(fixedDelayString = "${fleet.alerts.offline-check-ms:30000}")
+    public void checkOffline() {
+        Instant cutoff = Instant.now().minus(offlineAfter);
+        // The scan reads only the last-update and status columns; candidates are confirmed below
+        for (String vehicleId : columns.staleSince(cutoff.toEpochMilli(), "maintenance")) {
+            if (!cluster.owns(vehicleId)) continue;
+            flags.compute(vehicleId, (id, f) -> {
+                // Re-read: the vehicle may have reported since the scan
+                VehicleState latest = fleetState.get(id).orElse(null);
+                if (latest == null) return f;
+                // A vehicle taken over from another node may not have changed here yet
+                if (f == null) f = seed(id);
+                if (f.offline || latest.lastUpdate() == null || !latest.lastUpdate().isBefore(cutoff)) {
+                    return f;
+                }
+                f.offline = true;
+                long minutes = Duration.between(latest.lastUpdate(), Instant.now()).toMinutes();
+                raise(id, "offline", "medium", id + " - no update for " + minutes + " min", Instant.now());
+                return f;
+            });
+        }
+    }
+
+    private void raise(String vehicleId, String type, String severity, String message, Instant at) {
+        alerts.raise(vehicleId, type, severity, message, at);
+    }
+}
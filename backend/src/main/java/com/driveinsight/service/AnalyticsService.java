@@ -1,87 +1,92 @@
 package com.driveinsight.service;
 
-import com.driveinsight.model.DailyMetricsRecord;
-import com.driveinsight.model.Vehicle;
+import com.driveinsight.model.MetricsAggregate;
 import com.driveinsight.repo.DailyMetricsRecordRepository;
-import com.driveinsight.repo.VehicleRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 @Service
+@Timed(value = "fleet.analytics", histogram = true)
 public class AnalyticsService {
-    private final VehicleRepository vehicleRepository;
+    private final FleetAggregates aggregates;
+    private final FleetColumns columns;
     private final DailyMetricsRecordRepository dailyMetricsRepository;
 
-    public AnalyticsService(VehicleRepository vehicleRepository, DailyMetricsRecordRepository dailyMetricsRepository) {
-        this.vehicleRepository = vehicleRepository;
+    public AnalyticsService(FleetAggregates aggregates, FleetColumns columns, DailyMetricsRecordRepository dailyMetricsRepository) {
+        this.aggregates = aggregates;
+        this.columns = columns;
         this.dailyMetricsRepository = dailyMetricsRepository;
     }
 
     public Map<String, Object> getSummary() {
-        List<Vehicle> vehicles = vehicleRepository.findAll();
-        long activeVehicles = vehicles.stream().filter(v -> "active".equalsIgnoreCase(v.getStatus())).count();
-        double avgSpeed = vehicles.stream().mapToDouble(Vehicle::getSpeed).average().orElse(0);
-        long activeCorridors = vehicles.stream().map(Vehicle::getCorridor).distinct().count();
-
-        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        Date startOfDay = cal.getTime();
-
-        double totalDistanceToday = dailyMetricsRepository.findAll().stream()
-                .filter(m -> m.getDate() != null && Date.from(m.getDate()).after(startOfDay))
-                .mapToDouble(DailyMetricsRecord::getTotalDistance)
-                .sum();
+        Instant startOfDay = LocalDate.now(ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant();
+        double totalDistanceToday = dailyMetricsRepository.sumTotalDistance(startOfDay, startOfDay.plus(1, ChronoUnit.DAYS));
 
         Map<String, Object> summary = new HashMap<>();
-        summary.put("totalVehicles", vehicles.size());
-        summary.put("activeVehicles", (int) activeVehicles);
-        summary.put("avgSpeed", Math.round(avgSpeed * 10.0) / 10.0);
+        summary.put("totalVehicles", aggregates.totalVehicles());
+        summary.put("activeVehicles", aggregates.activeVehicles());
+        summary.put("avgSpeed", Math.round(aggregates.avgSpeed() * 10.0) / 10.0);
         summary.put("totalDistanceToday", Math.round(totalDistanceToday));
-        summary.put("activeCorridors", (int) activeCorridors);
+        summary.put("activeCorridors", aggregates.activeCorridors());
         return summary;
     }
 
     public List<Map<String, Object>> getCorridorDistribution() {
-        Map<String, Long> counts = new LinkedHashMap<>();
-        vehicleRepository.findAll().forEach(v -> counts.merge(v.getCorridor(), 1L, Long::sum));
-        List<Map<String, Object>> result = new ArrayList<>();
-        counts.forEach((corridor, count) -> {
-            Map<String, Object> m = new HashMap<>();
-            m.put("corridor", corridor);
-            m.put("count", count.intValue());
-            result.add(m);
-        });
-        return result;
+        return distribution(aggregates.corridorCounts(), "corridor");
     }
 
     public List<Map<String, Object>> getVehicleTypeDistribution() {
-        Map<String, Long> counts = new LinkedHashMap<>();
-        vehicleRepository.findAll().forEach(v -> counts.merge(v.getVehicleType(), 1L, Long::sum));
+        return distribution(aggregates.typeCounts(), "type");
+    }
+
+    public List<Map<String, Object>> getFleetStatusDistribution() {
+        return distribution(aggregates.statusCounts(), "status");
+    }
+
+    /** Live per-category breakdown from a scan of the fleet columns; {@code groupBy} is corridor, type or status. */
+    public List<FleetColumns.Group> getBreakdown(String groupBy) {
+        return columns.groupBy(switch (groupBy.toLowerCase(Locale.ROOT)) {
+            case "corridor" -> FleetColumns.Field.CORRIDOR;
+            case "type" -> FleetColumns.Field.TYPE;
+            case "status" -> FleetColumns.Field.STATUS;
+            default -> throw new IllegalArgumentException("groupBy must be corridor, type or status");
+        });
+    }
+
+    /** Distance, speed and efficiency over [from, to), grouped by "vehicle" or "corridor" in the database. */
+    public List<Map<String, Object>> getDailyMetricsAggregate(Instant from, Instant to, String groupBy) {
+        boolean byCorridor = "corridor".equalsIgnoreCase(groupBy);
+        List<MetricsAggregate> rows = byCorridor
+                ? dailyMetricsRepository.aggregateByCorridor(from, to)
+                : dailyMetricsRepository.aggregateByVehicle(from, to);
+        String keyName = byCorridor ? "corridor" : "vehicleId";
         List<Map<String, Object>> result = new ArrayList<>();
-        counts.forEach((type, count) -> {
+        rows.forEach(r -> {
             Map<String, Object> m = new HashMap<>();
-            m.put("type", type);
-            m.put("count", count.intValue());
+            m.put(keyName, r.getGroupKey());
+            m.put("totalDistance", Math.round(r.getTotalDistance() * 10.0) / 10.0);
+            m.put("avgSpeed", Math.round(r.getAvgSpeed() * 10.0) / 10.0);
+            m.put("fuelEfficiency", Math.round(r.getFuelEfficiency() * 10.0) / 10.0);
+            m.put("days", r.getDays());
             result.add(m);
         });
         return result;
     }
 
-    public List<Map<String, Object>> getFleetStatusDistribution() {
-        Map<String, Long> counts = new LinkedHashMap<>();
-        vehicleRepository.findAll().forEach(v -> counts.merge(v.getStatus(), 1L, Long::sum));
+    private static List<Map<String, Object>> distribution(Map<String, Integer> counts, String keyName) {
         List<Map<String, Object>> result = new ArrayList<>();
-        counts.forEach((status, count) -> {
+        counts.forEach((key, count) -> {
             Map<String, Object> m = new HashMap<>();
-            m.put("status", status);
-            m.put("count", count.intValue());
+            m.put(keyName, key);
+            m.put("count", count);
             result.add(m);
         });
         return result;
     }
 }
-
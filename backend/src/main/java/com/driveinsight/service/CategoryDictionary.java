@@ -0,0 +1,51 @@
+package com.driveinsight.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only mapping of the values of a categorical field (corridor, status, vehicle type) to
+ * dense small codes, so scans compare and index by code instead of by string. Codes are never
+ * reassigned. Values are case-sensitive, matching how {@link FleetAggregates} groups them.
+ */
+public final class CategoryDictionary {
+    public static final int NONE = -1;
+    /** Codes are stored as shorts; values beyond this many are mapped to {@link #NONE}. */
+    public static final int MAX_CODES = Short.MAX_VALUE;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+
+    public int code(String name) {
+        if (name == null) return NONE;
+        Integer code = codes.get(name);
+        if (code != null) return code;
+        synchronized (this) {
+            code = codes.get(name);
+            if (code != null) return code;
+            if (names.length >= MAX_CODES) return NONE;
+            // The name is published before the code, so anyone holding a code can resolve it
+            String[] grown = Arrays.copyOf(names, names.length + 1);
+            grown[names.length] = name;
+            names = grown;
+            codes.put(name, names.length - 1);
+            return names.length - 1;
+        }
+    }
+
+    public String name(int code) {
+        String[] n = names;
+        return code >= 0 && code < n.length ? n[code] : null;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /** Every value in code order. */
+    public List<String> names() {
+        return List.of(names);
+    }
+}
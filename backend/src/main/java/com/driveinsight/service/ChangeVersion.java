@@ -0,0 +1,43 @@
+package com.driveinsight.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fleet-wide change counter. Every write path bumps it once its change is visible to readers, so
+ * a response built after reading version v reflects at least every change counted in v. The
+ * counter is kept per {@link Scope}; a reader sums the scopes its response depends on, so an
+ * alert being acknowledged does not invalidate the vehicle list. Sums only ever grow, so two
+ * reads that return the same value saw the same data.
+ */
+@Component
+public class ChangeVersion {
+    public enum Scope {
+        VEHICLES,
+        ALERTS,
+        // Routes and daily metrics
+        HISTORY
+    }
+
+    private final LongAdder[] counters = new LongAdder[Scope.values().length];
+
+    public ChangeVersion() {
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+    }
+
+    public void bump(Scope scope) {
+        counters[scope.ordinal()].increment();
+    }
+
+    public long current(Scope... scopes) {
+        long sum = 0;
+        for (Scope scope : scopes) sum += counters[scope.ordinal()].sum();
+        return sum;
+    }
+
+    /** Version across every scope. */
+    public long current() {
+        return current(Scope.values());
+    }
+}
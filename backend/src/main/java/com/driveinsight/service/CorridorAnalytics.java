@@ -0,0 +1,307 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Live corridor analytics: where each vehicle is along its corridor, how traffic is flowing
+ * through each stretch of it, and when vehicles should reach either end.
+ *
+ * <p>Each corridor is cut into equal segments of about {@code fleet.corridors.segment-km}. On
+ * every position change the vehicle is matched to the nearest point of its corridor's polyline
+ * (vehicles more than {@code match-km} off it are not on the corridor), counted into each segment
+ * it crossed, and its speed added to the segment it is in. Segment counts and speeds are kept in
+ * a ring of per-minute buckets covering the last {@code window-minutes}, so an update is a few
+ * array writes and old minutes fall out of the window without anything being rescanned. Every
+ * {@code refresh-ms} the buckets are summed into per-segment throughput, average speed,
+ * congestion and travel time; ETAs to the corridor ends are read off those travel times.
+ *
+ * <p>Segments with too few samples in the window are assumed to flow at {@code free-flow-kmh}.
+ * The window runs on arrival time, not sample timestamps, so backfilled telemetry counts as
+ * current traffic. In cluster mode every node sees the whole fleet through replication and keeps
+ * its own statistics.
+ */
+@Service
+public class CorridorAnalytics implements FleetStateListener {
+    // Jumps longer than this are relocations; the segments in between were not driven
+    private static final double MAX_STEP_KM = 50;
+    // Movement along the corridor needed before the heading is updated
+    private static final double HEADING_KM = 0.05;
+    // Speed samples a segment needs in the window before its own speed replaces free flow
+    private static final int MIN_SAMPLES = 3;
+    // Travel times assume at least this speed, so a standing queue gives a long but finite ETA
+    private static final double MIN_SPEED_KMH = 5;
+
+    public record Segment(int index, double fromKm, double toKm, int vehicles, double vehiclesPerHour,
+                          Double averageSpeedKmh, double congestion, double travelMinutes) {}
+
+    public record CorridorStats(String name, String origin, String destination, double lengthKm, int vehicles,
+                                double travelMinutes, Instant computedAt, List<Segment> segments) {}
+
+    public record Endpoint(String name, double remainingKm, double minutes, Instant arrival) {}
+
+    /** {@code heading} is the end the vehicle is moving toward, null until it has moved along the corridor. */
+    public record Eta(String vehicleId, String corridor, double kmAlong, double offsetKm, int segment,
+                      String heading, Endpoint toOrigin, Endpoint toDestination) {}
+
+    // Where a vehicle was last matched. heading is +1 toward the destination, -1 toward the origin, 0 unknown;
+    // it is judged against anchorKm, where the vehicle was when it last moved HEADING_KM, so small steps add up
+    private record Position(Lane lane, double km, double offsetKm, int segment, int heading, double anchorKm) {}
+
+    // Per-segment travel speeds and cumulative travel minutes from the origin, as of the last refresh
+    private record View(double[] speedKmh, double[] minutesTo, CorridorStats stats) {}
+
+    /** Per-minute buckets of segment entries and speed samples over a sliding window. */
+    private static final class Window {
+        private final long[] minute;
+        private final int[] entries;
+        private final int[] samples;
+        private final double[] speedSum;
+
+        Window(int minutes) {
+            minute = new long[minutes];
+            Arrays.fill(minute, Long.MIN_VALUE);
+            entries = new int[minutes];
+            samples = new int[minutes];
+            speedSum = new double[minutes];
+        }
+
+        synchronized void enter(long now) {
+            entries[slot(now)]++;
+        }
+
+        synchronized void speed(long now, double kmh) {
+            int i = slot(now);
+            samples[i]++;
+            speedSum[i] += kmh;
+        }
+
+        // {entries, samples, speed sum} over the buckets of the last span minutes
+        synchronized double[] sum(long now, int span) {
+            double[] total = new double[3];
+            for (int i = 0; i < minute.length; i++) {
+                if (minute[i] > now - span && minute[i] <= now) {
+                    total[0] += entries[i];
+                    total[1] += samples[i];
+                    total[2] += speedSum[i];
+                }
+            }
+            return total;
+        }
+
+        private int slot(long now) {
+            int i = (int) Math.floorMod(now, (long) minute.length);
+            if (minute[i] != now) {
+                minute[i] = now;
+                entries[i] = 0;
+                samples[i] = 0;
+                speedSum[i] = 0;
+            }
+            return i;
+        }
+    }
+
+    private static final class Lane {
+        final CorridorGeometry.Corridor corridor;
+        final double segmentKm;
+        final Window[] windows;
+        final AtomicIntegerArray present;
+        volatile View view;
+
+        Lane(CorridorGeometry.Corridor corridor, double targetKm, int windowMinutes) {
+            this.corridor = corridor;
+            int n = Math.max(1, (int) Math.ceil(corridor.lengthKm() / targetKm));
+            this.segmentKm = corridor.lengthKm() / n;
+            this.windows = new Window[n];
+            for (int i = 0; i < n; i++) windows[i] = new Window(windowMinutes);
+            this.present = new AtomicIntegerArray(n);
+        }
+
+        int segmentOf(double km) {
+            return Math.max(0, Math.min(windows.length - 1, (int) (km / segmentKm)));
+        }
+
+        // Minutes from the origin to km under current conditions
+        double minutesTo(View v, double km) {
+            int s = segmentOf(km);
+            return v.minutesTo()[s] + (km - s * segmentKm) / v.speedKmh()[s] * 60;
+        }
+    }
+
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private final Map<String, Position> positions = new ConcurrentHashMap<>();
+    private final double matchKm;
+    private final double freeFlowKmh;
+    private final int windowMinutes;
+    private final long startMinute = currentMinute();
+
+    public CorridorAnalytics(FleetStateStore fleetState,
+                             MeterRegistry meterRegistry,
+                             @Value("${fleet.corridors.segment-km:25}") double segmentKm,
+                             @Value("${fleet.corridors.match-km:25}") double matchKm,
+                             @Value("${fleet.corridors.window-minutes:60}") int windowMinutes,
+                             @Value("${fleet.corridors.free-flow-kmh:80}") double freeFlowKmh) {
+        if (segmentKm <= 0 || windowMinutes <= 0 || freeFlowKmh <= 0) {
+            throw new IllegalArgumentException("fleet.corridors.segment-km, window-minutes and free-flow-kmh must be positive");
+        }
+        this.matchKm = matchKm;
+        this.freeFlowKmh = freeFlowKmh;
+        this.windowMinutes = windowMinutes;
+        for (CorridorGeometry.Corridor c : CorridorGeometry.all()) lanes.put(c.name(), new Lane(c, segmentKm, windowMinutes));
+        refresh();
+        fleetState.addListener(this);
+        Gauge.builder("fleet.corridors.vehicles", positions, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        if (current == null) {
+            leave(positions.remove(previous.id()));
+            return;
+        }
+        boolean moved = previous == null || previous.latitude() != current.latitude()
+                || previous.longitude() != current.longitude() || !Objects.equals(previous.corridor(), current.corridor());
+        if (!moved && previous.speed() == current.speed()) return;
+
+        Position before = positions.get(current.id());
+        CorridorGeometry.Corridor corridor = CorridorGeometry.find(current.corridor());
+        Lane lane = corridor != null ? lanes.get(corridor.name()) : null;
+        double[] at = lane != null ? lane.corridor.locate(current.latitude(), current.longitude()) : null;
+        if (at == null || at[1] > matchKm) {
+            leave(positions.remove(current.id()));
+            return;
+        }
+
+        long now = currentMinute();
+        int segment = lane.segmentOf(at[0]);
+        int heading = 0;
+        double anchor = at[0];
+        if (before != null && before.lane() == lane) {
+            double step = at[0] - before.km();
+            double travelled = at[0] - before.anchorKm();
+            if (Math.abs(step) <= MAX_STEP_KM && Math.abs(travelled) < HEADING_KM) {
+                heading = before.heading();
+                anchor = before.anchorKm();
+            } else if (Math.abs(step) <= MAX_STEP_KM) {
+                heading = (int) Math.signum(travelled);
+            }
+            if (segment != before.segment()) {
+                lane.present.decrementAndGet(before.segment());
+                lane.present.incrementAndGet(segment);
+                if (Math.abs(step) <= MAX_STEP_KM) {
+                    int dir = segment > before.segment() ? 1 : -1;
+                    for (int s = before.segment() + dir; s != segment + dir; s += dir) lane.windows[s].enter(now);
+                }
+            }
+        } else {
+            // First match on this corridor: the vehicle is counted as present, not as having entered
+            leave(before);
+            lane.present.incrementAndGet(segment);
+        }
+        // Creations are not samples
+        if (previous != null) lane.windows[segment].speed(now, current.speed());
+        positions.put(current.id(), new Position(lane, at[0], at[1], segment, heading, anchor));
+    }
+
+    private static void leave(Position p) {
+        if (p != null) p.lane().present.decrementAndGet(p.segment());
+    }
+
+    /** Rebuilds every corridor's segment statistics and travel times from the current window. */
+    @Scheduled(fixedDelayString = "${fleet.corridors.refresh-ms:5000}")
+    public void refresh() {
+        long now = currentMinute();
+        // Until a full window has passed, rates are over the minutes seen so far
+        int span = (int) Math.min(windowMinutes, now - startMinute + 1);
+        Instant computedAt = Instant.now();
+        for (Lane lane : lanes.values()) {
+            int n = lane.windows.length;
+            double[] speed = new double[n];
+            double[] minutesTo = new double[n + 1];
+            List<Segment> segments = new ArrayList<>(n);
+            int vehicles = 0;
+            for (int s = 0; s < n; s++) {
+                double[] sum = lane.windows[s].sum(now, span);
+                Double average = sum[1] > 0 ? sum[2] / sum[1] : null;
+                boolean measured = sum[1] >= MIN_SAMPLES;
+                speed[s] = measured ? Math.max(MIN_SPEED_KMH, average) : freeFlowKmh;
+                double minutes = lane.segmentKm / speed[s] * 60;
+                minutesTo[s + 1] = minutesTo[s] + minutes;
+                double congestion = measured ? Math.max(0, Math.min(1, 1 - average / freeFlowKmh)) : 0;
+                int present = Math.max(0, lane.present.get(s));
+                vehicles += present;
+                segments.add(new Segment(s, round(s * lane.segmentKm, 10), round((s + 1) * lane.segmentKm, 10), present,
+                        round(sum[0] * 60 / span, 10), average != null ? round(average, 10) : null,
+                        round(congestion, 100), round(minutes, 10)));
+            }
+            CorridorGeometry.Corridor c = lane.corridor;
+            lane.view = new View(speed, minutesTo, new CorridorStats(c.name(), c.origin(), c.destination(),
+                    round(c.lengthKm(), 10), vehicles, round(minutesTo[n], 10), computedAt, List.copyOf(segments)));
+        }
+    }
+
+    public List<CorridorStats> corridors() {
+        List<CorridorStats> all = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes.values()) all.add(lane.view.stats());
+        return all;
+    }
+
+    public Optional<CorridorStats> corridor(String name) {
+        return lane(name).map(l -> l.view.stats());
+    }
+
+    /** ETAs of every vehicle currently matched to the corridor, in order from its origin. */
+    public Optional<List<Eta>> etas(String name) {
+        return lane(name).map(lane -> {
+            View view = lane.view;
+            Instant now = Instant.now();
+            List<Eta> etas = new ArrayList<>();
+            positions.forEach((id, p) -> {
+                if (p.lane() == lane) etas.add(eta(id, p, view, now));
+            });
+            etas.sort(Comparator.comparingDouble(Eta::kmAlong).thenComparing(Eta::vehicleId));
+            return etas;
+        });
+    }
+
+    public Optional<Eta> eta(String vehicleId) {
+        Position p = positions.get(vehicleId);
+        return p == null ? Optional.empty() : Optional.of(eta(vehicleId, p, p.lane().view, Instant.now()));
+    }
+
+    private Eta eta(String vehicleId, Position p, View view, Instant now) {
+        CorridorGeometry.Corridor c = p.lane().corridor;
+        double toHere = p.lane().minutesTo(view, p.km());
+        double toEnd = view.minutesTo()[view.minutesTo().length - 1] - toHere;
+        String heading = p.heading() > 0 ? c.destination() : p.heading() < 0 ? c.origin() : null;
+        return new Eta(vehicleId, c.name(), round(p.km(), 10), round(p.offsetKm(), 10), p.segment(), heading,
+                endpoint(c.origin(), p.km(), toHere, now),
+                endpoint(c.destination(), c.lengthKm() - p.km(), toEnd, now));
+    }
+
+    private static Endpoint endpoint(String name, double km, double minutes, Instant now) {
+        return new Endpoint(name, round(km, 10), round(minutes, 10), now.plusSeconds(Math.round(minutes * 60)));
+    }
+
+    private Optional<Lane> lane(String name) {
+        CorridorGeometry.Corridor c = CorridorGeometry.find(name);
+        return Optional.ofNullable(c != null ? lanes.get(c.name()) : null);
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000;
+    }
+
+    private static double round(double value, double scale) {
+        return Math.round(value * scale) / scale;
+    }
+}
@@ -0,0 +1,104 @@
+package com.driveinsight.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Approximate road polylines for the trade corridors the fleet runs on, keyed by the corridor
+ * names used in {@code vehicles.corridor}. Each polyline starts inland and ends at the port.
+ */
+public final class CorridorGeometry {
+    public record Corridor(String name, String origin, String destination, double[] latitudes, double[] longitudes, double[] cumulativeKm) {
+        public double lengthKm() {
+            return cumulativeKm[cumulativeKm.length - 1];
+        }
+
+        /** Position {@code km} along the polyline, clamped to its ends, as {lat, lng}. */
+        public double[] pointAt(double km) {
+            if (km <= 0) return new double[]{latitudes[0], longitudes[0]};
+            int last = cumulativeKm.length - 1;
+            if (km >= cumulativeKm[last]) return new double[]{latitudes[last], longitudes[last]};
+            int i = 1;
+            while (cumulativeKm[i] < km) i++;
+            double t = (km - cumulativeKm[i - 1]) / (cumulativeKm[i] - cumulativeKm[i - 1]);
+            return new double[]{
+                    latitudes[i - 1] + t * (latitudes[i] - latitudes[i - 1]),
+                    longitudes[i - 1] + t * (longitudes[i] - longitudes[i - 1])};
+        }
+
+        /**
+         * Shortest distance from a point to the polyline. Each segment is measured in a local
+         * equirectangular projection, which is accurate to well under 1% at corridor scales.
+         */
+        public double distanceKm(double lat, double lng) {
+            return locate(lat, lng)[1];
+        }
+
+        /**
+         * Matches a point to the nearest position on the polyline, as {km along it, km off it}.
+         * Distances are measured as in {@link #distanceKm}.
+         */
+        public double[] locate(double lat, double lng) {
+            double kmPerLng = GeoMath.KM_PER_DEGREE_LAT * Math.cos(Math.toRadians(lat));
+            double best = Double.MAX_VALUE;
+            double along = 0;
+            for (int i = 1; i < latitudes.length; i++) {
+                double ax = (longitudes[i - 1] - lng) * kmPerLng, ay = (latitudes[i - 1] - lat) * GeoMath.KM_PER_DEGREE_LAT;
+                double bx = (longitudes[i] - lng) * kmPerLng, by = (latitudes[i] - lat) * GeoMath.KM_PER_DEGREE_LAT;
+                double dx = bx - ax, dy = by - ay;
+                double lenSq = dx * dx + dy * dy;
+                double t = lenSq == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lenSq));
+                double px = ax + t * dx, py = ay + t * dy;
+                double d = px * px + py * py;
+                if (d < best) {
+                    best = d;
+                    along = cumulativeKm[i - 1] + t * (cumulativeKm[i] - cumulativeKm[i - 1]);
+                }
+            }
+            return new double[]{along, Math.sqrt(best)};
+        }
+    }
+
+    private static final Map<String, Corridor> CORRIDORS = new LinkedHashMap<>();
+
+    static {
+        add("Beira", "Blantyre", "Beira", new double[][]{
+                {-15.7861, 35.0058}, {-15.60, 34.52}, {-16.16, 33.59}, {-16.83, 33.27},
+                {-18.06, 33.18}, {-19.12, 33.48}, {-19.83, 34.84}});
+        add("Nacala", "Lilongwe", "Nacala", new double[][]{
+                {-13.9626, 33.7741}, {-13.78, 34.46}, {-14.99, 34.96}, {-15.07, 35.22},
+                {-14.80, 36.54}, {-15.12, 39.27}, {-14.56, 40.69}});
+        add("Durban", "Blantyre", "Durban", new double[][]{
+                {-15.7861, 35.0058}, {-16.16, 33.59}, {-17.83, 31.05}, {-20.07, 30.83}, {-22.22, 30.00},
+                {-23.90, 29.45}, {-26.20, 28.05}, {-28.27, 29.13}, {-29.60, 30.38}, {-29.86, 31.03}});
+        add("Central (Dar es Salaam)", "Lilongwe", "Dar es Salaam", new double[][]{
+                {-13.9626, 33.7741}, {-11.4650, 34.0200}, {-9.93, 33.93}, {-8.90, 33.46},
+                {-7.77, 35.69}, {-6.82, 37.66}, {-6.79, 39.21}});
+    }
+
+    private CorridorGeometry() {}
+
+    private static void add(String name, String origin, String destination, double[][] points) {
+        double[] lats = new double[points.length];
+        double[] lngs = new double[points.length];
+        double[] cum = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            lats[i] = points[i][0];
+            lngs[i] = points[i][1];
+            if (i > 0) cum[i] = cum[i - 1] + GeoMath.haversineKm(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+        }
+        CORRIDORS.put(name.toLowerCase(Locale.ROOT), new Corridor(name, origin, destination, lats, lngs, cum));
+    }
+
+    /** Looks a corridor up by name, ignoring case; null when unknown. */
+    public static Corridor find(String name) {
+        return name == null ? null : CORRIDORS.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public static Collection<Corridor> all() {
+        return Collections.unmodifiableCollection(CORRIDORS.values());
+    }
+}
@@ -0,0 +1,90 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fleet-wide counters maintained incrementally from {@link FleetStateStore} change events.
+ * Each change costs O(1); reading a snapshot costs O(number of distinct categories) and is
+ * independent of fleet size.
+ */
+@Component
+public class FleetAggregates implements FleetStateListener {
+    // Speeds are summed as fixed-point thousandths so that add/subtract pairs never drift
+    private static final double SPEED_SCALE = 1000.0;
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder speedSum = new LongAdder();
+    private final Map<String, LongAdder> byCorridor = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> byType = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> byStatus = new ConcurrentHashMap<>();
+
+    public FleetAggregates(FleetStateStore fleetState) {
+        fleetState.addListener(this);
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        if (previous != null) apply(previous, -1);
+        if (current != null) apply(current, 1);
+    }
+
+    private void apply(VehicleState v, int sign) {
+        total.add(sign);
+        if ("active".equalsIgnoreCase(v.status())) active.add(sign);
+        speedSum.add(sign * Math.round(v.speed() * SPEED_SCALE));
+        count(byCorridor, v.corridor(), sign);
+        count(byType, v.vehicleType(), sign);
+        count(byStatus, v.status(), sign);
+    }
+
+    private static void count(Map<String, LongAdder> counts, String key, int sign) {
+        if (key == null) return;
+        counts.computeIfAbsent(key, k -> new LongAdder()).add(sign);
+    }
+
+    public int totalVehicles() {
+        return total.intValue();
+    }
+
+    public int activeVehicles() {
+        return active.intValue();
+    }
+
+    public double avgSpeed() {
+        long n = total.sum();
+        return n == 0 ? 0 : speedSum.sum() / SPEED_SCALE / n;
+    }
+
+    public int activeCorridors() {
+        return corridorCounts().size();
+    }
+
+    public Map<String, Integer> corridorCounts() {
+        return snapshot(byCorridor);
+    }
+
+    public Map<String, Integer> typeCounts() {
+        return snapshot(byType);
+    }
+
+    public Map<String, Integer> statusCounts() {
+        return snapshot(byStatus);
+    }
+
+    // Categories whose count has dropped to zero are kept as entries but left out of snapshots
+    private static Map<String, Integer> snapshot(Map<String, LongAdder> counts) {
+        Map<String, Integer> result = new TreeMap<>();
+        counts.forEach((key, count) -> {
+            int n = count.intValue();
+            if (n > 0) result.put(key, n);
+        });
+        return result;
+    }
+}
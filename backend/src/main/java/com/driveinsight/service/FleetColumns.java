@@ -0,0 +1,279 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Column-oriented copy of the live fleet for whole-fleet scans: speed, fuel and last update in
+ * primitive arrays, and corridor, status and vehicle type as codes from per-field
+ * {@link CategoryDictionary}s. Each vehicle holds a slot for as long as it exists and slots of
+ * removed vehicles are reused. Columns are split into fixed-size chunks, so the table grows by
+ * adding a chunk and never copies the data a writer may be updating.
+ *
+ * <p>Slots are written by {@link #onChange} inside the store's per-vehicle compute, so writes to
+ * one slot never overlap. Scans read without locking and may see a field one update behind; a
+ * change is fully visible to a reader that has seen its {@link ChangeVersion} bump. Group-bys
+ * accumulate into arrays indexed by code, allocate only their result, and are split across the
+ * fork-join pool once the fleet reaches {@code parallelThreshold} slots.
+ */
+@Component
+public class FleetColumns implements FleetStateListener {
+    public enum Field { CORRIDOR, STATUS, TYPE }
+
+    /** Totals for one value of the grouped field. */
+    public record Group(String key, int vehicles, int active, int moving, double avgSpeed, double avgFuel, int lowFuel) {}
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int LEAF_SLOTS = 4 * CHUNK_SIZE;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final class Chunk {
+        final String[] id = new String[CHUNK_SIZE];
+        final boolean[] live = new boolean[CHUNK_SIZE];
+        final double[] speed = new double[CHUNK_SIZE];
+        final int[] fuel = new int[CHUNK_SIZE];
+        final long[] lastUpdate = new long[CHUNK_SIZE];
+        final short[] corridor = new short[CHUNK_SIZE];
+        final short[] status = new short[CHUNK_SIZE];
+        final short[] type = new short[CHUNK_SIZE];
+
+        short[] column(Field field) {
+            return switch (field) {
+                case CORRIDOR -> corridor;
+                case STATUS -> status;
+                case TYPE -> type;
+            };
+        }
+    }
+
+    private final CategoryDictionary corridors = new CategoryDictionary();
+    private final CategoryDictionary statuses = new CategoryDictionary();
+    private final CategoryDictionary types = new CategoryDictionary();
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final double movingSpeed;
+    private final int lowFuelPercent;
+    private final int parallelThreshold;
+    private volatile Chunk[] chunks = new Chunk[0];
+    // Slots below this have been handed out at least once; guarded by this for writes
+    private volatile int highWater;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    public FleetColumns(FleetStateStore fleetState,
+                        @Value("${fleet.columns.moving-speed-kmh:5}") double movingSpeed,
+                        @Value("${fleet.alerts.low-fuel-percent:15}") int lowFuelPercent,
+                        @Value("${fleet.columns.parallel-threshold:65536}") int parallelThreshold) {
+        this.movingSpeed = movingSpeed;
+        this.lowFuelPercent = lowFuelPercent;
+        this.parallelThreshold = parallelThreshold;
+        fleetState.addListener(this);
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        if (current == null) {
+            Integer slot = slots.remove(previous.id());
+            if (slot != null) release(slot);
+            return;
+        }
+        Integer slot = slots.get(current.id());
+        if (slot == null) {
+            slot = allocate();
+            slots.put(current.id(), slot);
+        }
+        Chunk c = chunks[slot >>> CHUNK_BITS];
+        int i = slot & CHUNK_MASK;
+        c.id[i] = current.id();
+        c.speed[i] = current.speed();
+        c.fuel[i] = current.fuel();
+        c.lastUpdate[i] = current.lastUpdate() != null ? current.lastUpdate().toEpochMilli() : NO_TIME;
+        c.corridor[i] = (short) corridors.code(current.corridor());
+        c.status[i] = (short) statuses.code(current.status());
+        c.type[i] = (short) types.code(current.vehicleType());
+        c.live[i] = true;
+    }
+
+    private synchronized int allocate() {
+        if (freeCount > 0) return free[--freeCount];
+        int slot = highWater;
+        if (slot >>> CHUNK_BITS >= chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = new Chunk();
+            chunks = grown;
+        }
+        highWater = slot + 1;
+        return slot;
+    }
+
+    private synchronized void release(int slot) {
+        Chunk c = chunks[slot >>> CHUNK_BITS];
+        c.live[slot & CHUNK_MASK] = false;
+        c.id[slot & CHUNK_MASK] = null;
+        if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+        free[freeCount++] = slot;
+    }
+
+    public CategoryDictionary statuses() {
+        return statuses;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /** Vehicle counts, activity, average speed and fuel, and low-fuel counts per value of {@code field}, ordered by value. */
+    public List<Group> groupBy(Field field) {
+        CategoryDictionary keys = dictionary(field);
+        int categories = keys.size();
+        boolean[] active = new boolean[statuses.size()];
+        for (int code = 0; code < active.length; code++) active[code] = "active".equalsIgnoreCase(statuses.name(code));
+        // highWater before chunks: chunks are published first, so they always cover the slots counted
+        int end = highWater;
+        Chunk[] cs = chunks;
+        Tally t = end >= parallelThreshold
+                ? ForkJoinPool.commonPool().invoke(new GroupTask(cs, field, categories, active, movingSpeed, lowFuelPercent, 0, end))
+                : tally(cs, field, categories, active, movingSpeed, lowFuelPercent, 0, end);
+        List<Group> groups = new ArrayList<>();
+        for (int code = 0; code < categories; code++) {
+            int n = t.vehicles[code];
+            if (n == 0) continue;
+            groups.add(new Group(keys.name(code), n, t.active[code], t.moving[code],
+                    Math.round(t.speed[code] / n * 10.0) / 10.0, Math.round((double) t.fuel[code] / n * 10.0) / 10.0,
+                    t.lowFuel[code]));
+        }
+        groups.sort(Comparator.comparing(Group::key));
+        return groups;
+    }
+
+    /** Ids of vehicles whose last update is before {@code cutoffMillis}, except those with status {@code exceptStatus}. */
+    public List<String> staleSince(long cutoffMillis, String exceptStatus) {
+        List<String> ids = new ArrayList<>();
+        int end = highWater;
+        Chunk[] cs = chunks;
+        for (int slot = 0; slot < end; slot++) {
+            Chunk c = cs[slot >>> CHUNK_BITS];
+            int i = slot & CHUNK_MASK;
+            long at = c.lastUpdate[i];
+            if (!c.live[i] || at == NO_TIME || at >= cutoffMillis) continue;
+            if (exceptStatus != null && exceptStatus.equalsIgnoreCase(statuses.name(c.status[i]))) continue;
+            String id = c.id[i];
+            if (id != null) ids.add(id);
+        }
+        return ids;
+    }
+
+    private CategoryDictionary dictionary(Field field) {
+        return switch (field) {
+            case CORRIDOR -> corridors;
+            case STATUS -> statuses;
+            case TYPE -> types;
+        };
+    }
+
+    private static final class Tally {
+        final int[] vehicles;
+        final int[] active;
+        final int[] moving;
+        final int[] lowFuel;
+        final double[] speed;
+        final long[] fuel;
+
+        Tally(int categories) {
+            vehicles = new int[categories];
+            active = new int[categories];
+            moving = new int[categories];
+            lowFuel = new int[categories];
+            speed = new double[categories];
+            fuel = new long[categories];
+        }
+
+        Tally merge(Tally o) {
+            for (int k = 0; k < vehicles.length; k++) {
+                vehicles[k] += o.vehicles[k];
+                active[k] += o.active[k];
+                moving[k] += o.moving[k];
+                lowFuel[k] += o.lowFuel[k];
+                speed[k] += o.speed[k];
+                fuel[k] += o.fuel[k];
+            }
+            return this;
+        }
+    }
+
+    // Static and with its thresholds copied in, so it holds no reference to the service; never serialized
+    private static final class GroupTask extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final Field field;
+        private final int categories;
+        private final boolean[] activeStatus;
+        private final double movingSpeed;
+        private final int lowFuelPercent;
+        private final int from;
+        private final int to;
+
+        GroupTask(Chunk[] chunks, Field field, int categories, boolean[] activeStatus,
+                  double movingSpeed, int lowFuelPercent, int from, int to) {
+            this.chunks = chunks;
+            this.field = field;
+            this.categories = categories;
+            this.activeStatus = activeStatus;
+            this.movingSpeed = movingSpeed;
+            this.lowFuelPercent = lowFuelPercent;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= LEAF_SLOTS) {
+                return tally(chunks, field, categories, activeStatus, movingSpeed, lowFuelPercent, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            GroupTask right = new GroupTask(chunks, field, categories, activeStatus, movingSpeed, lowFuelPercent, mid, to);
+            right.fork();
+            Tally left = new GroupTask(chunks, field, categories, activeStatus, movingSpeed, lowFuelPercent, from, mid).compute();
+            return left.merge(right.join());
+        }
+    }
+
+    private static Tally tally(Chunk[] chunks, Field field, int categories, boolean[] activeStatus,
+                               double movingSpeed, int lowFuelPercent, int from, int to) {
+        Tally t = new Tally(categories);
+        for (int slot = from; slot < to; ) {
+            Chunk c = chunks[slot >>> CHUNK_BITS];
+            short[] keys = c.column(field);
+            int i = slot & CHUNK_MASK;
+            int end = Math.min(CHUNK_SIZE, i + (to - slot));
+            slot += end - i;
+            for (; i < end; i++) {
+                int k = keys[i];
+                // Values first seen after the scan started are left for the next one
+                if (!c.live[i] || k < 0 || k >= categories) continue;
+                int s = c.status[i];
+                double speed = c.speed[i];
+                int fuel = c.fuel[i];
+                t.vehicles[k]++;
+                if (s >= 0 && s < activeStatus.length && activeStatus[s]) t.active[k]++;
+                if (speed >= movingSpeed) t.moving[k]++;
+                if (fuel <= lowFuelPercent) t.lowFuel[k]++;
+                t.speed[k] += speed;
+                t.fuel[k] += fuel;
+            }
+        }
+        return t;
+    }
+}
@@ -0,0 +1,282 @@
+package com.driveinsight.service;
+
+import com.driveinsight.cluster.ClusterMembership;
+import com.driveinsight.model.TelemetrySample;
+import com.driveinsight.model.VehicleState;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives fake movement for demos and load tests on its own scheduler threads.
+ *
+ * <ul>
+ *   <li>{@code random-walk}: nudges the active seeded vehicles every 10 seconds.</li>
+ *   <li>{@code corridor}: creates N synthetic vehicles that drive up and down the corridor
+ *   polylines and reports them through {@link TelemetryIngestionService} at a target rate, so
+ *   ingestion, aggregation and WebSocket fanout all see realistic traffic. Their rows exist only
+ *   while the simulation runs: stopping it, or starting a node after one that never stopped,
+ *   deletes the {@code SIM-} vehicles this node owns along with their alerts, routes and
+ *   metrics.</li>
+ *   <li>{@code off}: nothing moves.</li>
+ * </ul>
+ *
+ * In cluster mode every node runs the same simulation but only moves the vehicles it owns, so
+ * {@code rate} is the rate of the whole cluster. A node taking over a corridor vehicle continues
+ * from its own copy of the route position, so the vehicle jumps once.
+ */
+@Service
+public class FleetSimulator {
+    private static final Logger log = LoggerFactory.getLogger(FleetSimulator.class);
+    private static final long TICK_MS = 50;
+    private static final Set<String> MODES = Set.of("random-walk", "corridor", "off");
+    private static final String[] TYPES = {"truck", "truck", "truck", "van", "sedan"};
+    private static final String ID_PREFIX = "SIM-";
+
+    public record Stats(String mode, int vehicles, int targetRate, double achievedRate, long totalUpdates) {}
+
+    private final FleetStateStore fleetState;
+    private final ActiveAlertRegistry alerts;
+    private final TelemetryIngestionService ingestion;
+    private final ClusterMembership cluster;
+    private final int threads;
+    private final Random random = new Random();
+    private final LongAdder updates = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+    private String mode;
+    private int vehicleCount;
+    private int targetRate;
+    private volatile double achievedRate;
+    private long lastReportCount;
+    private long lastReportNanos;
+
+    public FleetSimulator(FleetStateStore fleetState,
+                          ActiveAlertRegistry alerts,
+                          TelemetryIngestionService ingestion,
+                          ClusterMembership cluster,
+                          @Value("${fleet.simulator.mode:random-walk}") String mode,
+                          @Value("${fleet.simulator.vehicles:1000}") int vehicleCount,
+                          @Value("${fleet.simulator.rate:1000}") int targetRate,
+                          @Value("${fleet.simulator.threads:2}") int threads) {
+        this.fleetState = fleetState;
+        this.alerts = alerts;
+        this.ingestion = ingestion;
+        this.cluster = cluster;
+        this.mode = mode;
+        this.vehicleCount = vehicleCount;
+        this.targetRate = targetRate;
+        this.threads = Math.max(1, threads);
+    }
+
+    // Ordered after FleetStateStore.load, which listens for the same event
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        // Left behind by a node that went down without stopping its simulation
+        removeSimulated();
+        start(mode, vehicleCount, targetRate);
+    }
+
+    public synchronized Stats start(String newMode, int vehicles, int rate) {
+        if (!MODES.contains(newMode)) throw new IllegalArgumentException("Unknown simulator mode: " + newMode);
+        stop();
+        mode = newMode;
+        vehicleCount = vehicles;
+        targetRate = rate;
+        AtomicInteger n = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threads + 1, r -> {
+            Thread t = new Thread(r, "fleet-sim-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        switch (mode) {
+            case "random-walk" -> tasks.add(scheduler.scheduleAtFixedRate(this::randomWalk, 10, 10, TimeUnit.SECONDS));
+            case "corridor" -> startCorridor();
+            default -> { }
+        }
+        lastReportCount = updates.sum();
+        lastReportNanos = System.nanoTime();
+        tasks.add(scheduler.scheduleAtFixedRate(this::report, 10, 10, TimeUnit.SECONDS));
+        log.info("Fleet simulator started: mode={}, vehicles={}, rate={}/s", mode, vehicleCount, targetRate);
+        return stats();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        tasks.forEach(t -> t.cancel(false));
+        tasks.clear();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                // A tick still running could re-create a vehicle after it is removed
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        achievedRate = 0;
+        removeSimulated();
+    }
+
+    private void removeSimulated() {
+        List<String> ids = new ArrayList<>();
+        fleetState.forEachOrdered(ID_PREFIX, v -> {
+            if (v.id().startsWith(ID_PREFIX) && cluster.owns(v.id())) ids.add(v.id());
+        });
+        if (ids.isEmpty()) return;
+        Set<String> removing = new HashSet<>(ids);
+        try {
+            int removed = fleetState.deleteWithHistory(ids);
+            alerts.forget(removing::contains);
+            log.info("Removed {} simulated vehicles", removed);
+        } catch (RuntimeException e) {
+            log.warn("Failed to remove {} simulated vehicles; they are removed when the simulator next stops", ids.size(), e);
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(scheduler == null ? "stopped" : mode, vehicleCount, targetRate, achievedRate, updates.sum());
+    }
+
+    private void randomWalk() {
+        // Each move is a fix like any other, so the vehicle never looks silent to the offline check
+        Instant now = Instant.now();
+        fleetState.getAll().forEach(v -> {
+            if ("active".equalsIgnoreCase(v.status()) && cluster.owns(v.id())) {
+                double latChange = (random.nextDouble() - 0.5) * 0.001;
+                double lngChange = (random.nextDouble() - 0.5) * 0.001;
+                double speedChange = (random.nextDouble() - 0.5) * 5;
+                fleetState.update(v.id(), s -> s.withPosition(
+                        s.latitude() + latChange,
+                        s.longitude() + lngChange,
+                        Math.max(0, s.speed() + speedChange),
+                        now));
+                updates.increment();
+            }
+        });
+    }
+
+    private void startCorridor() {
+        List<CorridorGeometry.Corridor> corridors = new ArrayList<>(CorridorGeometry.all());
+        SimVehicle[] fleet = new SimVehicle[vehicleCount];
+        for (int i = 0; i < vehicleCount; i++) {
+            CorridorGeometry.Corridor c = corridors.get(i % corridors.size());
+            SimVehicle sv = new SimVehicle(i, c, random.nextDouble() * c.lengthKm(),
+                    40 + random.nextDouble() * 50, random.nextBoolean() ? 1 : -1);
+            // Vehicles owned by another node are created there; any still missing are created on first move
+            if (cluster.owns(sv.id)) fleetState.upsert(sv.state(Instant.now()));
+            fleet[i] = sv;
+        }
+        // Each worker owns a contiguous slice of the fleet and sends its share of the rate per tick
+        int perThread = (vehicleCount + threads - 1) / threads;
+        double perTick = targetRate * (TICK_MS / 1000.0) / threads;
+        for (int t = 0; t < threads && t * perThread < vehicleCount; t++) {
+            Worker w = new Worker(fleet, t * perThread, Math.min(vehicleCount, (t + 1) * perThread), perTick);
+            tasks.add(scheduler.scheduleAtFixedRate(w, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        long count = updates.sum();
+        achievedRate = (count - lastReportCount) / ((now - lastReportNanos) / 1e9);
+        lastReportCount = count;
+        lastReportNanos = now;
+        if (!"random-walk".equals(mode)) {
+            log.info("Fleet simulator: {} updates/s (target {}/s)", Math.round(achievedRate), targetRate);
+        }
+    }
+
+    private static final class SimVehicle {
+        final int index;
+        final String id;
+        final CorridorGeometry.Corridor corridor;
+        double km;
+        double speedKmh;
+        int direction;
+        long lastNanos = System.nanoTime();
+        int fuel = 100;
+
+        SimVehicle(int index, CorridorGeometry.Corridor corridor, double km, double speedKmh, int direction) {
+            this.index = index;
+            this.id = String.format(ID_PREFIX + "%05d", index + 1);
+            this.corridor = corridor;
+            this.km = km;
+            this.speedKmh = speedKmh;
+            this.direction = direction;
+        }
+
+        VehicleState state(Instant at) {
+            double[] p = corridor.pointAt(km);
+            return new VehicleState(id, "Sim Driver " + (index + 1), corridor.name(), speedKmh, fuel, "active",
+                    TYPES[index % TYPES.length], p[0], p[1], at);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final SimVehicle[] fleet;
+        private final int from;
+        private final int to;
+        private final double perTick;
+        private final Random rnd = new Random();
+        private int cursor;
+        private double carry;
+
+        Worker(SimVehicle[] fleet, int from, int to, double perTick) {
+            this.fleet = fleet;
+            this.from = from;
+            this.to = to;
+            this.perTick = perTick;
+            this.cursor = from;
+        }
+
+        @Override
+        public void run() {
+            carry += perTick;
+            int n = (int) carry;
+            carry -= n;
+            long now = System.nanoTime();
+            Instant at = Instant.now();
+            for (int i = 0; i < n; i++) {
+                SimVehicle v = fleet[cursor];
+                cursor = cursor + 1 == to ? from : cursor + 1;
+                if (!cluster.owns(v.id)) {
+                    // Keep the clock current so a vehicle taken over later does not leap forward
+                    v.lastNanos = now;
+                    continue;
+                }
+                double hours = (now - v.lastNanos) / 3.6e12;
+                v.lastNanos = now;
+                v.speedKmh = Math.max(0, Math.min(110, v.speedKmh + (rnd.nextDouble() - 0.5) * 4));
+                v.km += v.direction * v.speedKmh * hours;
+                if (v.km <= 0 || v.km >= v.corridor.lengthKm()) {
+                    v.direction = -v.direction;
+                    v.km = Math.max(0, Math.min(v.corridor.lengthKm(), v.km));
+                    v.fuel = 100;
+                }
+                if (rnd.nextInt(200) == 0 && v.fuel > 5) v.fuel--;
+                double[] p = v.corridor.pointAt(v.km);
+                // Rejected only while the vehicle is unknown here, e.g. removed by a stop on another node
+                if (!ingestion.ingest(new TelemetrySample(v.id, p[0], p[1], v.speedKmh, v.fuel, at))) {
+                    fleetState.upsert(v.state(at));
+                }
+                updates.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+
+/**
+ * Observer of fleet state changes. {@code previous} is null for a new vehicle and
+ * {@code current} is null for a removed one.
+ *
+ * <p>Called synchronously while the store holds the vehicle's entry lock, so changes to one
+ * vehicle are delivered in order. Implementations must be cheap, must not block and must not
+ * call back into {@link FleetStateStore}.
+ *
+ * <p>In cluster mode the store also applies changes replicated from the node that owns the
+ * vehicle. Listeners that derive writes of their own (alerts, rollups, trips) return true from
+ * {@link #localOnly()} so those writes happen once, on the owner.
+ */
+@FunctionalInterface
+public interface FleetStateListener {
+    void onChange(VehicleState previous, VehicleState current);
+
+    /** Whether to skip changes replicated from other cluster nodes. */
+    default boolean localOnly() {
+        return false;
+    }
+}
@@ -0,0 +1,300 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.Vehicle;
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.repo.VehicleRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Authoritative live fleet state. Loaded once after startup, from the {@link TelemetryLog} when
+ * it has history and otherwise from MySQL, and kept in sync by every write path; reads never touch the database. Updates are persisted asynchronously
+ * through a {@link VehicleBatchWriter}, and every change is published to the registered
+ * {@link FleetStateListener}s and, once visible, counted in the {@link ChangeVersion}.
+ *
+ * <p>In cluster mode, changes made on the node that owns a vehicle arrive through
+ * {@link #replicate} and {@link #replicateRemoval}: they are applied in memory only, since the
+ * owner persists them.
+ */
+@Service
+public class FleetStateStore {
+    private static final Logger log = LoggerFactory.getLogger(FleetStateStore.class);
+
+    // Tables whose rows reference a vehicle, children first
+    private static final List<String> VEHICLE_HISTORY = List.of(
+            "DELETE t FROM route_tracks t JOIN routes r ON r.id = t.route_id WHERE r.vehicle_id IN (%s)",
+            "DELETE p FROM route_points p JOIN routes r ON r.id = p.route_id WHERE r.vehicle_id IN (%s)",
+            "DELETE FROM routes WHERE vehicle_id IN (%s)",
+            "DELETE FROM alerts WHERE vehicle_id IN (%s)",
+            "DELETE FROM daily_metrics WHERE vehicle_id IN (%s)",
+            "DELETE FROM vehicles WHERE id IN (%s)");
+    private static final int DELETE_CHUNK = 500;
+
+    private final VehicleRepository vehicleRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<String, VehicleState> vehicles = new ConcurrentHashMap<>();
+    // Ids in order, for keyset pagination without sorting the whole fleet per page
+    private final ConcurrentSkipListSet<String> orderedIds = new ConcurrentSkipListSet<>();
+    private final VehicleBatchWriter writer;
+    private final List<FleetStateListener> listeners = new CopyOnWriteArrayList<>();
+    private final ChangeVersion changeVersion;
+    private volatile boolean loaded;
+
+    public FleetStateStore(VehicleRepository vehicleRepository,
+                           JdbcTemplate jdbcTemplate,
+                           ChangeVersion changeVersion,
+                           @Value("${fleet.writer.batch-size:500}") int batchSize,
+                           @Value("${fleet.writer.flush-interval-ms:1000}") long flushIntervalMs,
+                           @Value("${fleet.writer.queue-capacity:50000}") int queueCapacity) {
+        this.vehicleRepository = vehicleRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.changeVersion = changeVersion;
+        this.writer = new VehicleBatchWriter(jdbcTemplate, vehicles::get, batchSize, flushIntervalMs, queueCapacity);
+    }
+
+    // Runs after the CommandLineRunners, so DataInitializer has already migrated the schema,
+    // and ahead of other ready listeners that expect the fleet to be loaded. Geofences load
+    // first, then the telemetry log restores the fleet if it can; MySQL is the fallback.
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 2)
+    public void load() {
+        if (loaded) return;
+        loaded = true;
+        long start = System.nanoTime();
+        vehicleRepository.findAll().forEach(v -> put(VehicleState.from(v)));
+        log.info("Loaded {} vehicles into fleet state in {} ms", vehicles.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Loads vehicles recovered elsewhere instead of reading them from MySQL. With {@code persist}
+     * their rows are rewritten through the batch writer, so the table catches up with anything it
+     * missed; without it they are held like {@link #replicate replicas}, for a cluster node that
+     * does not yet know which of them it owns.
+     */
+    public void restore(Collection<VehicleState> states, boolean persist) {
+        loaded = true;
+        states.forEach(persist ? this::upsert : this::replicate);
+    }
+
+    public void addListener(FleetStateListener listener) {
+        listeners.add(listener);
+    }
+
+    public List<VehicleState> getAll() {
+        return new ArrayList<>(vehicles.values());
+    }
+
+    public Optional<VehicleState> get(String id) {
+        return Optional.ofNullable(vehicles.get(id));
+    }
+
+    public int size() {
+        return vehicles.size();
+    }
+
+    /** Up to {@code limit} vehicles ordered by id, starting after {@code afterId} (exclusive, null for the start). */
+    public List<VehicleState> page(String afterId, int limit) {
+        List<VehicleState> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String id : afterId == null ? orderedIds : orderedIds.tailSet(afterId, false)) {
+            if (page.size() >= limit) break;
+            VehicleState v = vehicles.get(id);
+            if (v != null) page.add(v);
+        }
+        return page;
+    }
+
+    /** Visits vehicles in id order after {@code afterId} without copying the fleet. */
+    public void forEachOrdered(String afterId, Consumer<VehicleState> action) {
+        for (String id : afterId == null ? orderedIds : orderedIds.tailSet(afterId, false)) {
+            VehicleState v = vehicles.get(id);
+            if (v != null) action.accept(v);
+        }
+    }
+
+    /** Inserts synchronously so constraint violations still surface to the caller. */
+    public VehicleState create(Vehicle vehicle) {
+        VehicleState state = VehicleState.from(vehicleRepository.save(vehicle));
+        put(state);
+        return state;
+    }
+
+    /**
+     * Adds or replaces a vehicle in memory and lets the batch writer insert or update its row.
+     * Used for bulk-created vehicles where one synchronous insert each would be too slow.
+     */
+    public void upsert(VehicleState state) {
+        put(state);
+        writer.markDirty(state.id());
+    }
+
+    /**
+     * Applies {@code change} atomically in memory and schedules the row write. Returning the
+     * current instance unchanged is treated as a no-op.
+     */
+    public Optional<VehicleState> update(String id, UnaryOperator<VehicleState> change) {
+        boolean[] changed = new boolean[1];
+        VehicleState updated = vehicles.computeIfPresent(id, (k, current) -> {
+            VehicleState next = change.apply(current);
+            changed[0] = next != current;
+            if (changed[0]) fire(current, next);
+            return next;
+        });
+        if (changed[0]) {
+            changeVersion.bump(ChangeVersion.Scope.VEHICLES);
+            writer.markDirty(id);
+        }
+        return Optional.ofNullable(updated);
+    }
+
+    public boolean delete(String id) {
+        if (!vehicles.containsKey(id)) {
+            return false;
+        }
+        writer.exclusive(() -> {
+            vehicleRepository.deleteById(id);
+            vehicles.computeIfPresent(id, (k, current) -> {
+                fire(current, null);
+                orderedIds.remove(k);
+                return null;
+            });
+            changeVersion.bump(ChangeVersion.Scope.VEHICLES);
+        });
+        return true;
+    }
+
+    /**
+     * Removes vehicles together with their routes, alerts and daily metrics, for synthetic vehicles
+     * that should leave no trace. Rows are deleted in chunks, each in its own statements; returns
+     * the number of vehicles removed from memory.
+     */
+    public int deleteWithHistory(Collection<String> ids) {
+        List<String> all = List.copyOf(ids);
+        int[] removed = new int[1];
+        writer.exclusive(() -> {
+            for (int from = 0; from < all.size(); from += DELETE_CHUNK) {
+                List<String> chunk = all.subList(from, Math.min(all.size(), from + DELETE_CHUNK));
+                String in = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                for (String sql : VEHICLE_HISTORY) jdbcTemplate.update(String.format(sql, in), chunk.toArray());
+            }
+            for (String id : all) {
+                vehicles.computeIfPresent(id, (k, current) -> {
+                    fire(current, null);
+                    orderedIds.remove(k);
+                    removed[0]++;
+                    return null;
+                });
+            }
+            if (removed[0] > 0) changeVersion.bump(ChangeVersion.Scope.VEHICLES);
+        });
+        return removed[0];
+    }
+
+    /**
+     * Applies a change made on another cluster node. Nothing is written, and a state older than
+     * the one held is ignored, so a late message from a vehicle's previous owner cannot move it back.
+     */
+    public void replicate(VehicleState state) {
+        boolean[] changed = new boolean[1];
+        vehicles.compute(state.id(), (k, previous) -> {
+            if (previous != null && previous.lastUpdate() != null && state.lastUpdate() != null
+                    && state.lastUpdate().isBefore(previous.lastUpdate())) {
+                return previous;
+            }
+            changed[0] = true;
+            fire(previous, state, true);
+            if (previous == null) orderedIds.add(k);
+            return state;
+        });
+        if (changed[0]) changeVersion.bump(ChangeVersion.Scope.VEHICLES);
+    }
+
+    /** Removes a vehicle deleted on another cluster node; its row is already gone. */
+    public void replicateRemoval(String id) {
+        boolean[] removed = new boolean[1];
+        vehicles.computeIfPresent(id, (k, current) -> {
+            removed[0] = true;
+            fire(current, null, true);
+            orderedIds.remove(k);
+            return null;
+        });
+        if (removed[0]) changeVersion.bump(ChangeVersion.Scope.VEHICLES);
+    }
+
+    private void put(VehicleState state) {
+        vehicles.compute(state.id(), (k, previous) -> {
+            fire(previous, state);
+            if (previous == null) orderedIds.add(k);
+            return state;
+        });
+        // After the compute, so a reader that sees the new version also sees the new state
+        changeVersion.bump(ChangeVersion.Scope.VEHICLES);
+    }
+
+    private void fire(VehicleState previous, VehicleState current) {
+        fire(previous, current, false);
+    }
+
+    private void fire(VehicleState previous, VehicleState current, boolean replicated) {
+        for (FleetStateListener listener : listeners) {
+            if (replicated && listener.localOnly()) continue;
+            try {
+                listener.onChange(previous, current);
+            } catch (RuntimeException e) {
+                log.warn("Fleet state listener {} failed", listener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    /** Free slots in the write queue; callers accepting bulk input can shed load when it runs low. */
+    public int writeCapacity() {
+        return writer.remainingCapacity();
+    }
+
+    public int pendingWrites() {
+        return writer.pending();
+    }
+
+    public long flushCount() {
+        return writer.flushCount();
+    }
+
+    public long flushNanos() {
+        return writer.flushNanos();
+    }
+
+    public long flushedRows() {
+        return writer.rowsWritten();
+    }
+
+    public long coalescedWrites() {
+        return writer.coalesced();
+    }
+
+    public long flushFailures() {
+        return writer.failures();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.close();
+    }
+}
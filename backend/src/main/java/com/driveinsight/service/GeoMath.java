@@ -0,0 +1,28 @@
+package com.driveinsight.service;
+
+/** Small spherical-earth helpers shared by the location features. */
+public final class GeoMath {
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+    public static final double KM_PER_DEGREE_LAT = 111.32;
+
+    private GeoMath() {}
+
+    public static double haversineKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /** Finite latitude in [-90, 90] and longitude in [-180, 180]. */
+    public static boolean isValidPosition(double lat, double lng) {
+        return lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180;
+    }
+
+    /** Degrees of longitude spanning {@code km} at latitude {@code lat}, capped near the poles. */
+    public static double kmToLngDegrees(double km, double lat) {
+        double cos = Math.max(0.01, Math.cos(Math.toRadians(lat)));
+        return km / (KM_PER_DEGREE_LAT * cos);
+    }
+}
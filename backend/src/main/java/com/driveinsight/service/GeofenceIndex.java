@@ -0,0 +1,148 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.Geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable point-in-polygon index over the geofences. Every grid cell a polygon's bounding box
+ * touches is classified once at build time: cells crossed by no edge are wholly inside or wholly
+ * outside the polygon (outside cells are simply not stored), so only points in cells an edge
+ * passes through need a ray-casting test. A lookup is one hash probe plus, usually, nothing else.
+ */
+final class GeofenceIndex {
+    static final long[] NONE = new long[0];
+
+    record Polygon(long id, String name, double[] lats, double[] lngs) {}
+
+    // Entries are polygon index << 1, with the low bit set when the whole cell is inside
+    private final Map<Long, int[]> cells;
+    private final List<Polygon> polygons;
+    private final double cellDegrees;
+
+    private GeofenceIndex(Map<Long, int[]> cells, List<Polygon> polygons, double cellDegrees) {
+        this.cells = cells;
+        this.polygons = polygons;
+        this.cellDegrees = cellDegrees;
+    }
+
+    static GeofenceIndex empty(double cellDegrees) {
+        return new GeofenceIndex(Map.of(), List.of(), cellDegrees);
+    }
+
+    static GeofenceIndex build(List<Geofence> geofences, double cellDegrees) {
+        List<Polygon> polygons = new ArrayList<>();
+        geofences.stream()
+                .filter(g -> g.getId() != null && g.getVertices() != null && g.getVertices().length >= 3)
+                .sorted(Comparator.comparing(Geofence::getId))
+                .forEach(g -> {
+                    double[][] v = g.getVertices();
+                    double[] lats = new double[v.length];
+                    double[] lngs = new double[v.length];
+                    for (int i = 0; i < v.length; i++) {
+                        lats[i] = v[i][0];
+                        lngs[i] = v[i][1];
+                    }
+                    polygons.add(new Polygon(g.getId(), g.getName(), lats, lngs));
+                });
+
+        Map<Long, List<Integer>> building = new HashMap<>();
+        for (int p = 0; p < polygons.size(); p++) {
+            classify(polygons.get(p), p, cellDegrees, building);
+        }
+        Map<Long, int[]> cells = new HashMap<>(building.size() * 2);
+        building.forEach((cell, entries) -> cells.put(cell, entries.stream().mapToInt(Integer::intValue).toArray()));
+        return new GeofenceIndex(cells, List.copyOf(polygons), cellDegrees);
+    }
+
+    private static void classify(Polygon poly, int index, double cellDegrees, Map<Long, List<Integer>> out) {
+        double[] lats = poly.lats();
+        double[] lngs = poly.lngs();
+        int n = lats.length;
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLng = Math.min(minLng, lngs[i]);
+            maxLng = Math.max(maxLng, lngs[i]);
+        }
+        long minRow = (long) Math.floor(minLat / cellDegrees), maxRow = (long) Math.floor(maxLat / cellDegrees);
+        long minCol = (long) Math.floor(minLng / cellDegrees), maxCol = (long) Math.floor(maxLng / cellDegrees);
+
+        // Mark the cells each edge's bounding box touches; those need the exact test
+        Set<Long> boundary = new HashSet<>();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            long r0 = (long) Math.floor(Math.min(lats[i], lats[j]) / cellDegrees);
+            long r1 = (long) Math.floor(Math.max(lats[i], lats[j]) / cellDegrees);
+            long c0 = (long) Math.floor(Math.min(lngs[i], lngs[j]) / cellDegrees);
+            long c1 = (long) Math.floor(Math.max(lngs[i], lngs[j]) / cellDegrees);
+            for (long r = r0; r <= r1; r++) {
+                for (long c = c0; c <= c1; c++) boundary.add(key(r, c));
+            }
+        }
+        for (long r = minRow; r <= maxRow; r++) {
+            for (long c = minCol; c <= maxCol; c++) {
+                long cell = key(r, c);
+                int entry;
+                if (boundary.contains(cell)) {
+                    entry = index << 1;
+                } else if (contains(poly, (r + 0.5) * cellDegrees, (c + 0.5) * cellDegrees)) {
+                    entry = (index << 1) | 1;
+                } else {
+                    continue;
+                }
+                out.computeIfAbsent(cell, k -> new ArrayList<>(2)).add(entry);
+            }
+        }
+    }
+
+    /** Ids of the geofences containing the point, ascending; {@link #NONE} when there are none. */
+    long[] lookup(double lat, double lng) {
+        int[] entries = cells.get(key((long) Math.floor(lat / cellDegrees), (long) Math.floor(lng / cellDegrees)));
+        if (entries == null) return NONE;
+        long[] hits = new long[entries.length];
+        int count = 0;
+        for (int entry : entries) {
+            Polygon poly = polygons.get(entry >>> 1);
+            if ((entry & 1) != 0 || contains(poly, lat, lng)) hits[count++] = poly.id();
+        }
+        if (count == 0) return NONE;
+        return count == hits.length ? hits : Arrays.copyOf(hits, count);
+    }
+
+    String name(long id) {
+        for (Polygon p : polygons) {
+            if (p.id() == id) return p.name();
+        }
+        return String.valueOf(id);
+    }
+
+    int size() {
+        return polygons.size();
+    }
+
+    // Even-odd ray casting in lat/lng space
+    private static boolean contains(Polygon poly, double lat, double lng) {
+        double[] lats = poly.lats();
+        double[] lngs = poly.lngs();
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lng < (lngs[j] - lngs[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lngs[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static long key(long row, long col) {
+        return (row << 32) | (col & 0xffffffffL);
+    }
+}
@@ -0,0 +1,68 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.Geofence;
+import com.driveinsight.repo.GeofenceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Geofence CRUD backed by MySQL, with an in-memory {@link GeofenceIndex} that is rebuilt and
+ * swapped in whole on every change. Geofences change rarely; lookups happen on every position
+ * update and never block.
+ */
+@Service
+public class GeofenceService {
+    private static final Logger log = LoggerFactory.getLogger(GeofenceService.class);
+
+    private final GeofenceRepository repository;
+    private final double cellDegrees;
+    private volatile GeofenceIndex index;
+
+    public GeofenceService(GeofenceRepository repository,
+                           @Value("${fleet.alerts.geofence-cell-degrees:0.05}") double cellDegrees) {
+        this.repository = repository;
+        this.cellDegrees = cellDegrees;
+        this.index = GeofenceIndex.empty(cellDegrees);
+    }
+
+    // Before the fleet is loaded, so vehicles already inside a geofence at startup are not reported as entering it
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void load() {
+        rebuild();
+        log.info("Indexed {} geofences", index.size());
+    }
+
+    public List<Geofence> getAll() {
+        return repository.findAll();
+    }
+
+    public Geofence create(Geofence geofence) {
+        Geofence saved = repository.save(geofence);
+        rebuild();
+        return saved;
+    }
+
+    public boolean delete(long id) {
+        if (!repository.existsById(id)) return false;
+        repository.deleteById(id);
+        rebuild();
+        return true;
+    }
+
+    GeofenceIndex index() {
+        return index;
+    }
+
+    private synchronized void rebuild() {
+        index = GeofenceIndex.build(repository.findAll(), cellDegrees);
+    }
+}
@@ -0,0 +1,211 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.AlertRecord;
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.repo.RecordCursorRepository;
+import com.driveinsight.repo.RecordCursorRepository.Field;
+import com.driveinsight.repo.RecordCursorRepository.Listing;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Cursor-paginated, projected and streamed list reads. Vehicles and active alerts are read from
+ * memory, like their unpaged listings; the other records from MySQL. Pages carry a {@code next}
+ * cursor (the last key returned, or null at the end). Streams are written row by row as NDJSON or as one
+ * chunked JSON array, so neither the server nor a streaming client holds the whole list.
+ */
+@Service
+public class ListingService {
+    public enum Format { NDJSON, JSON }
+
+    /** A response body whose projection has already been validated. */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final Map<String, Function<VehicleState, Object>> VEHICLE_FIELDS = new LinkedHashMap<>();
+
+    static {
+        VEHICLE_FIELDS.put("id", VehicleState::id);
+        VEHICLE_FIELDS.put("driverName", VehicleState::driverName);
+        VEHICLE_FIELDS.put("corridor", VehicleState::corridor);
+        VEHICLE_FIELDS.put("speed", VehicleState::speed);
+        VEHICLE_FIELDS.put("fuel", VehicleState::fuel);
+        VEHICLE_FIELDS.put("status", VehicleState::status);
+        VEHICLE_FIELDS.put("vehicleType", VehicleState::vehicleType);
+        VEHICLE_FIELDS.put("latitude", VehicleState::latitude);
+        VEHICLE_FIELDS.put("longitude", VehicleState::longitude);
+        VEHICLE_FIELDS.put("lastUpdate", VehicleState::lastUpdate);
+    }
+
+    private static final Map<String, Function<AlertRecord, Object>> ALERT_FIELDS = new LinkedHashMap<>();
+
+    static {
+        ALERT_FIELDS.put("id", AlertRecord::getId);
+        ALERT_FIELDS.put("vehicleId", AlertRecord::getVehicleId);
+        ALERT_FIELDS.put("type", AlertRecord::getType);
+        ALERT_FIELDS.put("geofenceId", AlertRecord::getGeofenceId);
+        ALERT_FIELDS.put("message", AlertRecord::getMessage);
+        ALERT_FIELDS.put("severity", AlertRecord::getSeverity);
+        ALERT_FIELDS.put("active", AlertRecord::isActive);
+        ALERT_FIELDS.put("createdAt", AlertRecord::getCreatedAt);
+        ALERT_FIELDS.put("acknowledgedAt", AlertRecord::getAcknowledgedAt);
+        ALERT_FIELDS.put("resolvedAt", AlertRecord::getResolvedAt);
+    }
+
+    private final FleetStateStore fleetState;
+    private final ActiveAlertRegistry alerts;
+    private final RecordCursorRepository records;
+    private final ObjectMapper objectMapper;
+
+    public ListingService(FleetStateStore fleetState, ActiveAlertRegistry alerts, RecordCursorRepository records,
+                          ObjectMapper objectMapper) {
+        this.fleetState = fleetState;
+        this.alerts = alerts;
+        this.records = records;
+        this.objectMapper = objectMapper;
+    }
+
+    /** Splits a comma-separated projection; null or blank means every field. */
+    public static List<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) return null;
+        return Arrays.stream(fields.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    public Map<String, Object> vehiclePage(String after, int limit, List<String> fields) {
+        List<String> names = names(fields, VEHICLE_FIELDS);
+        List<VehicleState> page = fleetState.page(after, limit);
+        String next = page.size() < limit ? null : page.get(page.size() - 1).id();
+        return pageOf(project(page, names, VEHICLE_FIELDS), next);
+    }
+
+    /** Throws IllegalArgumentException for unknown fields now, before any response bytes are written. */
+    public BodyWriter vehicleStream(String after, List<String> fields, Format format) {
+        List<String> names = names(fields, VEHICLE_FIELDS);
+        return out -> writeObjects(action -> fleetState.forEachOrdered(after, action), names, VEHICLE_FIELDS, format, out);
+    }
+
+    /** Active alerts from the registry, so a page shows acknowledgements and resolutions not yet written. */
+    public Map<String, Object> alertPage(Long after, int limit, List<String> fields) {
+        List<String> names = names(fields, ALERT_FIELDS);
+        List<AlertRecord> page = alerts.page(after, limit);
+        Long next = page.size() < limit ? null : page.get(page.size() - 1).getId();
+        return pageOf(project(page, names, ALERT_FIELDS), next);
+    }
+
+    public BodyWriter alertStream(Long after, List<String> fields, Format format) {
+        List<String> names = names(fields, ALERT_FIELDS);
+        return out -> writeObjects(action -> alerts.forEachActive(after, action), names, ALERT_FIELDS, format, out);
+    }
+
+    private static <T> List<Map<String, Object>> project(List<T> items, List<String> names,
+                                                        Map<String, Function<T, Object>> fields) {
+        List<Map<String, Object>> content = new ArrayList<>(items.size());
+        for (T item : items) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            for (String name : names) m.put(name, fields.get(name).apply(item));
+            content.add(m);
+        }
+        return content;
+    }
+
+    private <T> void writeObjects(Consumer<Consumer<T>> source, List<String> names, Map<String, Function<T, Object>> fields,
+                                  Format format, OutputStream out) throws IOException {
+        try (JsonGenerator gen = generator(format, out)) {
+            if (format == Format.JSON) gen.writeStartArray();
+            try {
+                source.accept(item -> {
+                    try {
+                        gen.writeStartObject();
+                        for (String name : names) {
+                            gen.writeFieldName(name);
+                            gen.writeObject(fields.get(name).apply(item));
+                        }
+                        gen.writeEndObject();
+                        if (format == Format.NDJSON) gen.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (format == Format.JSON) gen.writeEndArray();
+        }
+    }
+
+    public Map<String, Object> recordPage(Listing listing, String vehicleId, Long after, int limit, List<String> fields) {
+        List<Field> selected = listing.select(fields);
+        List<Object[]> rows = records.page(listing, selected, vehicleId, after != null ? after : 0L, limit);
+        List<Map<String, Object>> content = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            for (int i = 0; i < row.length; i++) m.put(selected.get(i).name(), row[i]);
+            content.add(m);
+        }
+        // The id is always the first selected column
+        Object next = rows.size() < limit ? null : rows.get(rows.size() - 1)[0];
+        return pageOf(content, next);
+    }
+
+    /** Like {@link #vehicleStream}: the projection is resolved eagerly, the cursor opened on write. */
+    public BodyWriter recordStream(Listing listing, String vehicleId, Long after, List<String> fields, Format format) {
+        List<Field> selected = listing.select(fields);
+        return out -> writeRecords(listing, vehicleId, after, selected, format, out);
+    }
+
+    private void writeRecords(Listing listing, String vehicleId, Long after, List<Field> selected,
+                              Format format, OutputStream out) throws IOException {
+        try (JsonGenerator gen = generator(format, out)) {
+            if (format == Format.JSON) gen.writeStartArray();
+            try {
+                records.stream(listing, selected, vehicleId, after != null ? after : 0L, values -> {
+                    gen.writeStartObject();
+                    for (int i = 0; i < values.length; i++) {
+                        gen.writeFieldName(selected.get(i).name());
+                        gen.writeObject(values[i]);
+                    }
+                    gen.writeEndObject();
+                    if (format == Format.NDJSON) gen.writeRaw('\n');
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (format == Format.JSON) gen.writeEndArray();
+        }
+    }
+
+    private static List<String> names(List<String> fields, Map<String, ?> known) {
+        if (fields == null || fields.isEmpty()) return List.copyOf(known.keySet());
+        List<String> names = new ArrayList<>(fields.size() + 1);
+        names.add("id");
+        for (String name : fields) {
+            if (!known.containsKey(name)) throw new IllegalArgumentException("Unknown field: " + name);
+            if (!names.contains(name)) names.add(name);
+        }
+        return names;
+    }
+
+    private JsonGenerator generator(Format format, OutputStream out) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(out);
+        // NDJSON rows are terminated explicitly rather than space-separated as root values
+        if (format == Format.NDJSON) gen.setRootValueSeparator(null);
+        return gen;
+    }
+
+    private static Map<String, Object> pageOf(List<Map<String, Object>> content, Object next) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("content", content);
+        m.put("next", next);
+        return m;
+    }
+}
@@ -0,0 +1,130 @@
+package com.driveinsight.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized responses of polled endpoints, cached per endpoint and {@link ChangeVersion}. The
+ * ETag is the version the body was built at, so a client sending it back in If-None-Match gets a
+ * 304 as long as nothing it depends on changed, without the body being looked up or built. A body
+ * is serialized once per version, and gzipped once when it is large enough to be worth it.
+ *
+ * <p>ETags carry a per-process prefix because versions restart from zero on every boot. The gzipped
+ * body is a different representation, so it gets its own strong ETag with a {@code -gz} suffix;
+ * either tag of the current version answers If-None-Match with a 304 for the variant it names.
+ */
+@Service
+public class ResponseCache {
+    private record Entry(long version, byte[] body, byte[] gzipped) {}
+
+    private static final String GZIP_SUFFIX = "-gz";
+
+    private final ChangeVersion changeVersion;
+    private final ObjectMapper objectMapper;
+    private final int gzipMinBytes;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter notModified;
+
+    public ResponseCache(ChangeVersion changeVersion, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                         @Value("${fleet.http.cache.gzip-min-bytes:1024}") int gzipMinBytes) {
+        this.changeVersion = changeVersion;
+        this.objectMapper = objectMapper;
+        this.gzipMinBytes = gzipMinBytes;
+        this.hits = meterRegistry.counter("fleet.http.cache", "result", "hit");
+        this.misses = meterRegistry.counter("fleet.http.cache", "result", "miss");
+        this.notModified = meterRegistry.counter("fleet.http.cache", "result", "not_modified");
+    }
+
+    /**
+     * Responds with the body {@code key} had at the current version of {@code scopes}, building
+     * it with {@code body} only when the cached one is older.
+     */
+    public ResponseEntity<?> respond(String key, WebRequest request, Supplier<?> body, ChangeVersion.Scope... scopes) {
+        long version = changeVersion.current(scopes);
+        String matched = matchingEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), version);
+        if (matched != null) {
+            notModified.increment();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(matched).cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version() >= version) {
+            hits.increment();
+        } else {
+            // One build per key and version; concurrent pollers of the same key wait for it
+            entry = entries.compute(key, (k, current) -> {
+                if (current != null && current.version() >= version) return current;
+                misses.increment();
+                return build(version, body.get());
+            });
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = entry.gzipped() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag(entry.version(), gzip))
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(gzip ? entry.gzipped() : entry.body());
+    }
+
+    private Entry build(long version, Object value) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize cached response", e);
+        }
+        return new Entry(version, json, json.length >= gzipMinBytes ? gzip(json) : null);
+    }
+
+    private String etag(long version, boolean gzip) {
+        return "\"" + epoch + "-" + version + (gzip ? GZIP_SUFFIX : "") + "\"";
+    }
+
+    // The tag in If-None-Match naming either variant at this version, or null; weak comparison as for GET
+    private String matchingEtag(String ifNoneMatch, long version) {
+        if (ifNoneMatch == null) return null;
+        String identity = etag(version, false);
+        String gzipped = etag(version, true);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*")) return identity;
+            if (tag.equals(identity) || tag.equals(gzipped)) return tag;
+        }
+        return null;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,213 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.repo.RollupRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Continuously aggregates position, speed and fuel changes into 1-minute, 1-hour and 1-day
+ * buckets per vehicle and per corridor. Each change updates six in-memory accumulators; a
+ * periodic flush hands them to {@link RollupRepository#merge} as deltas, so long-range charts
+ * read a few hundred pre-aggregated rows instead of raw samples. Old fine-grained buckets are
+ * pruned by retention.
+ */
+@Service
+public class RollupService implements FleetStateListener {
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+    // Jumps longer than this between consecutive fixes are treated as relocation, not driving
+    private static final double MAX_STEP_KM = 50;
+    private static final int PRUNE_CHUNK = 10_000;
+
+    public enum Resolution {
+        MINUTE("1m", Duration.ofMinutes(1)), HOUR("1h", Duration.ofHours(1)), DAY("1d", Duration.ofDays(1));
+
+        private final String code;
+        private final Duration width;
+
+        Resolution(String code, Duration width) {
+            this.code = code;
+            this.width = width;
+        }
+
+        public String code() {
+            return code;
+        }
+
+        public Duration width() {
+            return width;
+        }
+
+        public static Resolution fromCode(String code) {
+            for (Resolution r : values()) {
+                if (r.code.equalsIgnoreCase(code)) return r;
+            }
+            throw new IllegalArgumentException("resolution must be 1m, 1h or 1d");
+        }
+    }
+
+    public static final String SCOPE_VEHICLE = "vehicle";
+    public static final String SCOPE_CORRIDOR = "corridor";
+
+    public record Point(Instant bucket, long samples, double speedMin, double speedMax, double speedAvg,
+                        int fuelMin, int fuelMax, double fuelAvg, double distanceKm) {}
+
+    public record Series(String scope, String key, String resolution, Instant from, Instant to, List<Point> points) {}
+
+    private record Key(Resolution resolution, String scope, String groupKey, long bucketStart) {}
+
+    // Only mutated inside buckets.compute, and handed off to the flush by buckets.remove
+    private static final class Accumulator {
+        long samples;
+        double speedMin = Double.MAX_VALUE;
+        double speedMax = -Double.MAX_VALUE;
+        double speedSum;
+        int fuelMin = Integer.MAX_VALUE;
+        int fuelMax = Integer.MIN_VALUE;
+        long fuelSum;
+        double distanceKm;
+    }
+
+    private final RollupRepository repository;
+    private final int maxPoints;
+    private final int batchSize;
+    private final Map<Resolution, Duration> retention = new EnumMap<>(Resolution.class);
+    private final Map<Key, Accumulator> buckets = new ConcurrentHashMap<>();
+
+    public RollupService(FleetStateStore fleetState,
+                         RollupRepository repository,
+                         @Value("${fleet.rollups.max-points:500}") int maxPoints,
+                         @Value("${fleet.rollups.batch-size:1000}") int batchSize,
+                         @Value("${fleet.rollups.retention.minute-days:7}") int minuteDays,
+                         @Value("${fleet.rollups.retention.hour-days:180}") int hourDays,
+                         @Value("${fleet.rollups.retention.day-days:0}") int dayDays) {
+        this.repository = repository;
+        this.maxPoints = maxPoints;
+        this.batchSize = batchSize;
+        // Zero keeps a resolution forever
+        if (minuteDays > 0) retention.put(Resolution.MINUTE, Duration.ofDays(minuteDays));
+        if (hourDays > 0) retention.put(Resolution.HOUR, Duration.ofDays(hourDays));
+        if (dayDays > 0) retention.put(Resolution.DAY, Duration.ofDays(dayDays));
+        fleetState.addListener(this);
+    }
+
+    // Rollups are merged into shared rows, so each vehicle's samples are counted once, by its owner
+    @Override
+    public boolean localOnly() {
+        return true;
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        // Creations and deletions are not samples
+        if (previous == null || current == null) return;
+        boolean moved = previous.latitude() != current.latitude() || previous.longitude() != current.longitude();
+        if (!moved && previous.speed() == current.speed() && previous.fuel() == current.fuel()) return;
+
+        Instant at = current.lastUpdate() != null ? current.lastUpdate() : Instant.now();
+        double step = moved ? GeoMath.haversineKm(previous.latitude(), previous.longitude(), current.latitude(), current.longitude()) : 0;
+        if (step > MAX_STEP_KM) step = 0;
+        long epochSecond = at.getEpochSecond();
+        for (Resolution r : Resolution.values()) {
+            long width = r.width.getSeconds();
+            long bucket = Math.floorDiv(epochSecond, width) * width;
+            add(new Key(r, SCOPE_VEHICLE, current.id(), bucket), current, step);
+            if (current.corridor() != null) add(new Key(r, SCOPE_CORRIDOR, current.corridor(), bucket), current, step);
+        }
+    }
+
+    private void add(Key key, VehicleState v, double step) {
+        buckets.compute(key, (k, acc) -> {
+            if (acc == null) acc = new Accumulator();
+            acc.samples++;
+            acc.speedMin = Math.min(acc.speedMin, v.speed());
+            acc.speedMax = Math.max(acc.speedMax, v.speed());
+            acc.speedSum += v.speed();
+            acc.fuelMin = Math.min(acc.fuelMin, v.fuel());
+            acc.fuelMax = Math.max(acc.fuelMax, v.fuel());
+            acc.fuelSum += v.fuel();
+            acc.distanceKm += step;
+            return acc;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${fleet.rollups.flush-interval-ms:10000}")
+    public void flush() {
+        if (buckets.isEmpty()) return;
+        List<RollupRepository.Row> rows = new ArrayList<>(buckets.size());
+        for (Key key : new ArrayList<>(buckets.keySet())) {
+            Accumulator acc = buckets.remove(key);
+            if (acc == null) continue;
+            rows.add(new RollupRepository.Row(key.resolution().code(), key.scope(), key.groupKey(),
+                    Instant.ofEpochSecond(key.bucketStart()), acc.samples, acc.speedMin, acc.speedMax, acc.speedSum,
+                    acc.fuelMin, acc.fuelMax, acc.fuelSum, acc.distanceKm));
+        }
+        try {
+            repository.merge(rows, batchSize);
+        } catch (Exception e) {
+            // Deltas are lost rather than retried; a retry could double-count buckets already merged
+            log.warn("Failed to merge {} rollup buckets", rows.size(), e);
+        }
+    }
+
+    /**
+     * Buckets for one vehicle or corridor over [from, to). Without an explicit resolution the
+     * finest one that stays within {@code fleet.rollups.max-points} and is still retained for
+     * the whole range is used, so long ranges never read minute buckets.
+     */
+    public Series series(String scope, String key, Instant from, Instant to, Resolution resolution) {
+        Resolution r = resolution != null ? resolution : choose(from, to, Instant.now());
+        List<Point> points = new ArrayList<>();
+        for (RollupRepository.Row row : repository.find(r.code(), scope, key, from, to)) {
+            long n = Math.max(1, row.samples());
+            points.add(new Point(row.bucketStart(), row.samples(), row.speedMin(), row.speedMax(),
+                    Math.round(row.speedSum() / n * 10.0) / 10.0, row.fuelMin(), row.fuelMax(),
+                    Math.round((double) row.fuelSum() / n * 10.0) / 10.0,
+                    Math.round(row.distanceKm() * 100.0) / 100.0));
+        }
+        return new Series(scope, key, r.code(), from, to, points);
+    }
+
+    Resolution choose(Instant from, Instant to, Instant now) {
+        Duration range = Duration.between(from, to);
+        for (Resolution r : Resolution.values()) {
+            Duration kept = retention.get(r);
+            if (kept != null && from.isBefore(now.minus(kept))) continue;
+            if (range.dividedBy(r.width()) <= maxPoints) return r;
+        }
+        return Resolution.DAY;
+    }
+
+    @Scheduled(fixedDelayString = "${fleet.rollups.prune-interval-ms:3600000}")
+    public void prune() {
+        Instant now = Instant.now();
+        retention.forEach((r, kept) -> {
+            Instant cutoff = now.minus(kept);
+            int total = 0;
+            try {
+                int deleted;
+                do {
+                    deleted = repository.deleteOlderThan(r.code(), cutoff, PRUNE_CHUNK);
+                    total += deleted;
+                } while (deleted == PRUNE_CHUNK);
+            } catch (Exception e) {
+                log.warn("Failed to prune {} rollups", r.code(), e);
+            }
+            if (total > 0) log.info("Pruned {} {} rollup buckets older than {}", total, r.code(), cutoff);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
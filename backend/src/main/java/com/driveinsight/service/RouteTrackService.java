@@ -0,0 +1,270 @@
+package com.driveinsight.service;
+
+import com.driveinsight.repo.RouteTrackRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Route geometry stored as {@link TrackCodec}-encoded segments of up to {@link #SEGMENT_POINTS}
+ * points. Routes that still only have legacy {@code route_points} rows are served from those,
+ * streamed straight from the result set.
+ *
+ * <p>Simplified versions of each route at a fixed ladder of tolerances are built together on
+ * first request and kept in a small LRU cache, so zoomed-out views are served from memory.
+ * Levels are built outside the cache's lock. An append evicts its route once the transaction
+ * commits; a build that overlapped an eviction is served but not cached, since it may have read
+ * the track from before the append.
+ */
+@Service
+public class RouteTrackService {
+    public static final int SEGMENT_POINTS = 1024;
+    // Douglas-Peucker tolerances in metres, finest first
+    static final double[] LOD_TOLERANCES = {5, 20, 80, 320, 1280};
+    private static final double EQUATOR_METRES_PER_PIXEL_Z0 = 156543.03392;
+
+    private record Track(double[] latitudes, double[] longitudes, int[] sequences, int count) {}
+
+    private record Level(double tolerance, Track track) {}
+
+    private final RouteTrackRepository trackRepository;
+    private final ObjectMapper objectMapper;
+    private final Map<Long, List<Level>> lodCache;
+    // Bumped on every eviction, under the cache's lock
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RouteTrackService(RouteTrackRepository trackRepository, ObjectMapper objectMapper,
+                             @Value("${fleet.routes.lod-cache-size:256}") int lodCacheSize) {
+        this.trackRepository = trackRepository;
+        this.objectMapper = objectMapper;
+        this.lodCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<Level>> eldest) {
+                return size() > lodCacheSize;
+            }
+        });
+    }
+
+    /** Map tolerance for a web-mercator zoom level: about one screen pixel on the ground. */
+    public static double toleranceForZoom(int zoom) {
+        return EQUATOR_METRES_PER_PIXEL_Z0 / Math.pow(2, Math.max(0, Math.min(22, zoom)));
+    }
+
+    /**
+     * Appends points after any already stored for the route; returns the number appended. The
+     * first append to a route that only has legacy {@code route_points} rows moves those rows into
+     * the segments ahead of the new points. Segments number their points consecutively, so the
+     * moved points keep their order but are renumbered from 1; gaps in their old sequence values are
+     * not kept.
+     */
+    @Transactional
+    public int append(long routeId, double[] latitudes, double[] longitudes) {
+        store(routeId, latitudes, longitudes);
+        return latitudes.length;
+    }
+
+    /** Moves a route's legacy per-point rows into encoded segments. */
+    @Transactional
+    public int compact(long routeId) {
+        return store(routeId, new double[0], new double[0]);
+    }
+
+    // Returns the number of legacy points moved into segments
+    private int store(long routeId, double[] latitudes, double[] longitudes) {
+        int[] next = trackRepository.nextPosition(routeId);
+        int segment = next[0];
+        int sequence = next[1];
+        int moved = 0;
+        if (segment == 0) {
+            Track legacy = readLegacy(routeId);
+            moved = legacy.count();
+            if (moved > 0) {
+                latitudes = concat(legacy.latitudes(), moved, latitudes);
+                longitudes = concat(legacy.longitudes(), moved, longitudes);
+                trackRepository.deleteLegacyPoints(routeId);
+            }
+        }
+        if (latitudes.length == 0) return 0;
+        evictAfterCommit(routeId);
+        for (int from = 0; from < latitudes.length; from += SEGMENT_POINTS) {
+            int to = Math.min(latitudes.length, from + SEGMENT_POINTS);
+            byte[] data = TrackCodec.encode(latitudes, longitudes, from, to);
+            trackRepository.insert(routeId, new RouteTrackRepository.Segment(segment++, sequence, to - from, data));
+            sequence += to - from;
+        }
+        return moved;
+    }
+
+    private static double[] concat(double[] head, int count, double[] tail) {
+        double[] all = Arrays.copyOf(head, count + tail.length);
+        System.arraycopy(tail, 0, all, count, tail.length);
+        return all;
+    }
+
+    /**
+     * Writes the route simplified for {@code toleranceMetres}, using the coarsest cached level
+     * that does not exceed it. Tolerances below the finest level get the full track.
+     */
+    public void writeSimplifiedJson(long routeId, double toleranceMetres, OutputStream out) throws IOException {
+        if (toleranceMetres < LOD_TOLERANCES[0]) {
+            writePointsJson(routeId, out);
+            return;
+        }
+        List<Level> levels = levels(routeId);
+        Track chosen = levels.get(0).track();
+        for (Level level : levels) {
+            if (level.tolerance() <= toleranceMetres) chosen = level.track();
+        }
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartArray();
+            try {
+                for (int i = 0; i < chosen.count(); i++) {
+                    writePoint(gen, routeId, chosen.latitudes()[i], chosen.longitudes()[i], chosen.sequences()[i]);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private void evictAfterCommit(long routeId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(routeId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(routeId);
+            }
+        });
+    }
+
+    private void evict(long routeId) {
+        synchronized (lodCache) {
+            evictions.incrementAndGet();
+            lodCache.remove(routeId);
+        }
+    }
+
+    private List<Level> levels(long routeId) {
+        List<Level> levels = lodCache.get(routeId);
+        if (levels != null) return levels;
+        long seen = evictions.get();
+        levels = buildLevels(routeId);
+        synchronized (lodCache) {
+            if (evictions.get() != seen) return levels;
+            List<Level> cached = lodCache.putIfAbsent(routeId, levels);
+            return cached != null ? cached : levels;
+        }
+    }
+
+    private List<Level> buildLevels(long routeId) {
+        Track full = trackRepository.exists(routeId) ? readSegments(routeId) : readLegacy(routeId);
+        List<Level> levels = new ArrayList<>(LOD_TOLERANCES.length);
+        for (double tolerance : LOD_TOLERANCES) {
+            int[] keep = TrackSimplifier.simplify(full.latitudes(), full.longitudes(), full.count(), tolerance);
+            double[] lats = new double[keep.length];
+            double[] lngs = new double[keep.length];
+            int[] seqs = new int[keep.length];
+            for (int i = 0; i < keep.length; i++) {
+                lats[i] = full.latitudes()[keep[i]];
+                lngs[i] = full.longitudes()[keep[i]];
+                seqs[i] = full.sequences()[keep[i]];
+            }
+            levels.add(new Level(tolerance, new Track(lats, lngs, seqs, keep.length)));
+        }
+        return levels;
+    }
+
+    private Track readSegments(long routeId) {
+        TrackBuffer buf = new TrackBuffer();
+        trackRepository.forEachSegment(routeId, segment -> {
+            int[] seq = {segment.firstSequence()};
+            TrackCodec.decode(segment.data(), (lat, lng) -> buf.add(lat, lng, seq[0]++));
+        });
+        return buf.toTrack();
+    }
+
+    private Track readLegacy(long routeId) {
+        TrackBuffer buf = new TrackBuffer();
+        trackRepository.forEachLegacyPoint(routeId, rs -> buf.add(rs.getDouble(1), rs.getDouble(2), rs.getInt(3)));
+        return buf.toTrack();
+    }
+
+    private static final class TrackBuffer {
+        double[] lats = new double[256];
+        double[] lngs = new double[256];
+        int[] seqs = new int[256];
+        int n;
+
+        void add(double lat, double lng, int seq) {
+            if (n == lats.length) {
+                lats = Arrays.copyOf(lats, n * 2);
+                lngs = Arrays.copyOf(lngs, n * 2);
+                seqs = Arrays.copyOf(seqs, n * 2);
+            }
+            lats[n] = lat;
+            lngs[n] = lng;
+            seqs[n] = seq;
+            n++;
+        }
+
+        Track toTrack() {
+            return new Track(lats, lngs, seqs, n);
+        }
+    }
+
+    /**
+     * Writes the route's points as a JSON array of {@code {routeId, latitude, longitude, sequence}}
+     * objects directly to {@code out}; no per-point objects are materialized.
+     */
+    public void writePointsJson(long routeId, OutputStream out) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartArray();
+            try {
+                if (trackRepository.exists(routeId)) {
+                    trackRepository.forEachSegment(routeId, segment -> {
+                        int[] seq = {segment.firstSequence()};
+                        TrackCodec.decode(segment.data(), (lat, lng) -> writePoint(gen, routeId, lat, lng, seq[0]++));
+                    });
+                } else {
+                    trackRepository.forEachLegacyPoint(routeId, rs ->
+                            writePoint(gen, routeId, rs.getDouble(1), rs.getDouble(2), rs.getInt(3)));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private static void writePoint(JsonGenerator gen, long routeId, double lat, double lng, int sequence) {
+        try {
+            gen.writeStartObject();
+            gen.writeNumberField("routeId", routeId);
+            gen.writeNumberField("latitude", lat);
+            gen.writeNumberField("longitude", lng);
+            gen.writeNumberField("sequence", sequence);
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.Consumer;
+
+/**
+ * Uniform lat/lng grid over vehicle positions, kept current from {@link FleetStateStore} change
+ * events. Moving a vehicle touches at most two cells; queries only visit the cells overlapping
+ * the requested area.
+ */
+@Component
+public class SpatialIndex implements FleetStateListener {
+    public record Nearby(VehicleState vehicle, double distanceKm) {}
+
+    private final double cellDegrees;
+    private final Map<Long, Set<String>> cells = new ConcurrentHashMap<>();
+    private final Map<String, VehicleState> positions = new ConcurrentHashMap<>();
+    // Grow-only extent of every cell ever occupied; lets nearest() skip empty rings outside the fleet
+    private final LongAccumulator minRow = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxRow = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LongAccumulator minCol = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxCol = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    public SpatialIndex(FleetStateStore fleetState, @Value("${fleet.spatial.cell-degrees:0.1}") double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        fleetState.addListener(this);
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        if (previous != null) {
+            long oldCell = cellOf(previous.latitude(), previous.longitude());
+            if (current == null || cellOf(current.latitude(), current.longitude()) != oldCell) {
+                cells.computeIfPresent(oldCell, (k, ids) -> {
+                    ids.remove(previous.id());
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        }
+        if (current != null) {
+            long row = (long) Math.floor(current.latitude() / cellDegrees);
+            long col = (long) Math.floor(current.longitude() / cellDegrees);
+            minRow.accumulate(row);
+            maxRow.accumulate(row);
+            minCol.accumulate(col);
+            maxCol.accumulate(col);
+            // Inside the compute, so a concurrent removal cannot drop the set between lookup and add
+            cells.compute(key(row, col), (k, ids) -> {
+                if (ids == null) ids = ConcurrentHashMap.newKeySet();
+                ids.add(current.id());
+                return ids;
+            });
+            positions.put(current.id(), current);
+        } else if (previous != null) {
+            positions.remove(previous.id());
+        }
+    }
+
+    public List<VehicleState> withinBox(double minLat, double minLng, double maxLat, double maxLng) {
+        List<VehicleState> result = new ArrayList<>();
+        forEachCandidate(minLat, minLng, maxLat, maxLng, v -> {
+            if (v.latitude() >= minLat && v.latitude() <= maxLat && v.longitude() >= minLng && v.longitude() <= maxLng) {
+                result.add(v);
+            }
+        });
+        return result;
+    }
+
+    /** Vehicles within {@code radiusKm} of the point, nearest first. */
+    public List<Nearby> withinRadius(double lat, double lng, double radiusKm) {
+        double dLat = radiusKm / GeoMath.KM_PER_DEGREE_LAT;
+        double dLng = GeoMath.kmToLngDegrees(radiusKm, Math.min(89, Math.abs(lat) + dLat));
+        List<Nearby> result = new ArrayList<>();
+        forEachCandidate(lat - dLat, lng - dLng, lat + dLat, lng + dLng, v -> {
+            double d = GeoMath.haversineKm(lat, lng, v.latitude(), v.longitude());
+            if (d <= radiusKm) result.add(new Nearby(v, d));
+        });
+        result.sort(Comparator.comparingDouble(Nearby::distanceKm));
+        return result;
+    }
+
+    /**
+     * The {@code k} vehicles nearest to the point, nearest first. Searches outward ring by ring
+     * and stops once no unvisited cell can hold anything closer than the current k-th result.
+     * Rings are clipped to the fleet's extent, so a point far outside it visits at most the
+     * extent's cells rather than falling back to a scan of every vehicle.
+     */
+    public List<Nearby> nearest(double lat, double lng, int k) {
+        if (k <= 0) return List.of();
+        PriorityQueue<Nearby> best = new PriorityQueue<>(Comparator.comparingDouble(Nearby::distanceKm).reversed());
+        long row0 = (long) Math.floor(lat / cellDegrees);
+        long col0 = (long) Math.floor(lng / cellDegrees);
+        long rMin = minRow.get(), rMax = maxRow.get(), cMin = minCol.get(), cMax = maxCol.get();
+        if (rMin > rMax) return List.of();
+        int occupied = cells.size();
+        // Rings closer than the fleet's extent are empty, so start at the first one that reaches it
+        long start = Math.max(0, Math.max(Math.max(rMin - row0, row0 - rMax), Math.max(cMin - col0, col0 - cMax)));
+        for (long r = start; ; r++) {
+            long ringCells = span(row0, r, rMin, rMax) * span(col0, r, cMin, cMax)
+                    - (r == 0 ? 0 : span(row0, r - 1, rMin, rMax) * span(col0, r - 1, cMin, cMax));
+            if (ringCells > occupied) {
+                // The ring's cells inside the extent outnumber the occupied cells: finish with a plain scan
+                best.clear();
+                positions.values().forEach(v -> offer(best, k, new Nearby(v, GeoMath.haversineKm(lat, lng, v.latitude(), v.longitude()))));
+                break;
+            }
+            long fromRow = Math.max(row0 - r, rMin), toRow = Math.min(row0 + r, rMax);
+            long fromCol = Math.max(col0 - r, cMin), toCol = Math.min(col0 + r, cMax);
+            for (long row = fromRow; row <= toRow; row++) {
+                boolean edgeRow = Math.abs(row - row0) == r;
+                for (long col = fromCol; col <= toCol; col++) {
+                    if (!edgeRow && Math.abs(col - col0) != r) {
+                        // Interior of the ring: jump straight to its right-hand edge
+                        if (col < col0 + r) col = col0 + r - 1;
+                        continue;
+                    }
+                    Set<String> ids = cells.get(key(row, col));
+                    if (ids == null) continue;
+                    for (String id : ids) {
+                        VehicleState v = positions.get(id);
+                        if (v != null) offer(best, k, new Nearby(v, GeoMath.haversineKm(lat, lng, v.latitude(), v.longitude())));
+                    }
+                }
+            }
+            boolean coversExtent = row0 - r <= rMin && row0 + r >= rMax && col0 - r <= cMin && col0 + r >= cMax;
+            if (coversExtent) break;
+            if (best.size() == k) {
+                // Anything outside this ring is at least r cells away along one axis
+                double ringDegrees = r * cellDegrees;
+                double minKm = ringDegrees * GeoMath.KM_PER_DEGREE_LAT
+                        * Math.cos(Math.toRadians(Math.min(89, Math.abs(lat) + ringDegrees)));
+                if (minKm >= best.peek().distanceKm()) break;
+            }
+        }
+        List<Nearby> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(Nearby::distanceKm));
+        return result;
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    // Cells of [center - r, center + r] that fall within [lo, hi]
+    private static long span(long center, long r, long lo, long hi) {
+        return Math.max(0, Math.min(center + r, hi) - Math.max(center - r, lo) + 1);
+    }
+
+    private static void offer(PriorityQueue<Nearby> best, int k, Nearby candidate) {
+        if (best.size() < k) {
+            best.add(candidate);
+        } else if (candidate.distanceKm() < best.peek().distanceKm()) {
+            best.poll();
+            best.add(candidate);
+        }
+    }
+
+    private void forEachCandidate(double minLat, double minLng, double maxLat, double maxLng,
+                                  Consumer<VehicleState> action) {
+        long minRow = (long) Math.floor(minLat / cellDegrees);
+        long maxRow = (long) Math.floor(maxLat / cellDegrees);
+        long minCol = (long) Math.floor(minLng / cellDegrees);
+        long maxCol = (long) Math.floor(maxLng / cellDegrees);
+        long span = (maxRow - minRow + 1) * (maxCol - minCol + 1);
+        if (span > cells.size()) {
+            // Huge box relative to the fleet's footprint: walking occupied cells is cheaper
+            cells.forEach((cell, ids) -> {
+                long row = cell >> 32;
+                long col = (int) (long) cell;
+                if (row >= minRow && row <= maxRow && col >= minCol && col <= maxCol) visit(ids, action);
+            });
+            return;
+        }
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long col = minCol; col <= maxCol; col++) {
+                Set<String> ids = cells.get(key(row, col));
+                if (ids != null) visit(ids, action);
+            }
+        }
+    }
+
+    private void visit(Set<String> ids, Consumer<VehicleState> action) {
+        for (String id : ids) {
+            VehicleState v = positions.get(id);
+            if (v != null) action.accept(v);
+        }
+    }
+
+    private long cellOf(double lat, double lng) {
+        return key((long) Math.floor(lat / cellDegrees), (long) Math.floor(lng / cellDegrees));
+    }
+
+    private static long key(long row, long col) {
+        return (row << 32) | (col & 0xffffffffL);
+    }
+}
@@ -0,0 +1,77 @@
+package com.driveinsight.service;
+
+import com.driveinsight.cluster.ClusterMembership;
+import com.driveinsight.cluster.ClusterReplicator;
+import com.driveinsight.model.TelemetrySample;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+
+/**
+ * Applies tracker samples to the fleet state. Persistence is left to the store's batch
+ * writer, so a burst of samples costs one row write per vehicle per flush.
+ *
+ * <p>In cluster mode a sample is applied by the node that owns its vehicle; samples arriving
+ * anywhere else are forwarded there through the {@link ClusterReplicator}. A node that has not
+ * settled its membership, because it is starting or cut off from the bus, cannot tell who the
+ * owner is and rejects samples rather than become a second writer.
+ */
+@Service
+public class TelemetryIngestionService {
+    private final FleetStateStore fleetState;
+    private final ClusterMembership cluster;
+    private final ClusterReplicator replicator;
+    private final Counter accepted;
+    private final Counter forwarded;
+    private final Counter rejected;
+    private final Counter stale;
+
+    public TelemetryIngestionService(FleetStateStore fleetState, ClusterMembership cluster,
+                                     ClusterReplicator replicator, MeterRegistry meterRegistry) {
+        this.fleetState = fleetState;
+        this.cluster = cluster;
+        this.replicator = replicator;
+        this.accepted = Counter.builder("fleet.telemetry.samples").tag("result", "accepted").register(meterRegistry);
+        this.forwarded = Counter.builder("fleet.telemetry.samples").tag("result", "forwarded").register(meterRegistry);
+        this.rejected = Counter.builder("fleet.telemetry.samples").tag("result", "rejected").register(meterRegistry);
+        this.stale = Counter.builder("fleet.telemetry.samples").tag("result", "stale").register(meterRegistry);
+        replicator.onForwarded(this::apply);
+    }
+
+    /**
+     * Returns false for unknown vehicles and malformed samples, and for samples that could not be
+     * forwarded. A sample older than the vehicle's last fix is ignored but still returns true.
+     */
+    public boolean ingest(TelemetrySample sample) {
+        if (sample == null || sample.vehicleId() == null) {
+            rejected.increment();
+            return false;
+        }
+        if (!cluster.owns(sample.vehicleId())) {
+            // Replicas know every vehicle, so unknown ones are still rejected here
+            boolean sent = cluster.isSettled() && fleetState.get(sample.vehicleId()).isPresent() && replicator.forward(sample);
+            (sent ? forwarded : rejected).increment();
+            return sent;
+        }
+        return apply(sample);
+    }
+
+    private boolean apply(TelemetrySample sample) {
+        Instant at = sample.timestamp() != null ? sample.timestamp() : Instant.now();
+        boolean[] ignored = new boolean[1];
+        boolean known = fleetState.update(sample.vehicleId(), current -> {
+            // Trackers may deliver out of order; never let an older fix overwrite a newer one
+            ignored[0] = current.lastUpdate() != null && at.isBefore(current.lastUpdate());
+            return ignored[0] ? current : current.withTelemetry(sample, at);
+        }).isPresent();
+        (!known ? rejected : ignored[0] ? stale : accepted).increment();
+        return known;
+    }
+
+    /** Whether the write queue can take roughly {@code expected} more updates without blocking. */
+    public boolean hasCapacity(int expected) {
+        return fleetState.writeCapacity() >= Math.max(1, expected);
+    }
+}
@@ -0,0 +1,390 @@
+package com.driveinsight.service;
+
+import com.driveinsight.cluster.ClusterMembership;
+import com.driveinsight.model.VehicleState;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Append-only history of every fleet state change, kept in segment files on local disk (see
+ * {@link TelemetryLogFormat}). Position updates cost 24 bytes each, so the log keeps the track
+ * that {@code vehicles} overwrites.
+ *
+ * <p>Snapshots of the whole fleet are folded from the log itself, never read from the live map:
+ * the previous snapshot plus the events up to the current end of the log. That makes snapshot
+ * plus tail exactly what was logged, and startup restores the fleet from the newest snapshot and
+ * the segments after it instead of querying MySQL. Time-travel queries scan the segments whose
+ * time range covers the requested instant, newest first, through read-only memory maps.
+ */
+@Service
+public class TelemetryLog implements FleetStateListener {
+    private static final Logger log = LoggerFactory.getLogger(TelemetryLog.class);
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int SNAPSHOT_MAGIC = 0x4654534e; // "FTSN"
+    private static final short SNAPSHOT_VERSION = 1;
+
+    public record Position(String vehicleId, Instant at, double latitude, double longitude, double speed, int fuel) {}
+
+    public record Track(String vehicleId, Instant from, Instant to, List<Position> points, boolean truncated) {}
+
+    // Fleet state as of a log offset
+    private record Snapshot(long offset, Map<String, VehicleState> states) {}
+
+    private final FleetStateStore fleetState;
+    private final ClusterMembership membership;
+    private final TelemetryLogWriter writer;
+    private final Path dir;
+    private final Duration retention;
+    private final int snapshotsRetained;
+    private final int maxScanSegments;
+    // Latest fold point; snapshot() continues from here
+    private volatile Snapshot base;
+    private volatile boolean recovered;
+    // Set while restoring, so the restored vehicles are not logged again
+    private volatile Thread restoringThread;
+
+    public TelemetryLog(FleetStateStore fleetState,
+                        ClusterMembership membership,
+                        MeterRegistry meterRegistry,
+                        @Value("${fleet.log.enabled:true}") boolean enabled,
+                        @Value("${fleet.log.dir:data/telemetry-log}") String dir,
+                        @Value("${fleet.log.segment-bytes:67108864}") long segmentBytes,
+                        @Value("${fleet.log.buffer-bytes:1048576}") int bufferBytes,
+                        @Value("${fleet.log.buffers:8}") int buffers,
+                        @Value("${fleet.log.flush-interval-ms:200}") long flushIntervalMs,
+                        @Value("${fleet.log.fsync:false}") boolean fsync,
+                        @Value("${fleet.log.retention-hours:24}") long retentionHours,
+                        @Value("${fleet.log.snapshots-retained:2}") int snapshotsRetained,
+                        @Value("${fleet.log.max-scan-segments:16}") int maxScanSegments) throws IOException {
+        this.fleetState = fleetState;
+        this.membership = membership;
+        this.dir = Path.of(dir);
+        this.retention = Duration.ofHours(retentionHours);
+        this.snapshotsRetained = Math.max(1, snapshotsRetained);
+        this.maxScanSegments = maxScanSegments;
+        if (!enabled) {
+            this.writer = null;
+            return;
+        }
+        this.writer = new TelemetryLogWriter(this.dir, segmentBytes, bufferBytes, buffers, flushIntervalMs, fsync);
+        Gauge.builder("fleet.log.bytes", writer, TelemetryLogWriter::writtenOffset)
+                .description("End offset of the telemetry log on disk").register(meterRegistry);
+        Gauge.builder("fleet.log.backlog", writer, TelemetryLogWriter::backlog)
+                .description("Telemetry log bytes buffered but not yet written").register(meterRegistry);
+        Gauge.builder("fleet.log.segments", writer, w -> w.segments().size()).register(meterRegistry);
+        FunctionCounter.builder("fleet.log.stalls", writer, TelemetryLogWriter::stalls)
+                .description("Appends that waited for the disk because every log buffer was full").register(meterRegistry);
+        fleetState.addListener(this);
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        if (Thread.currentThread() == restoringThread) return;
+        writer.append(previous, current);
+    }
+
+    // Between the geofence and alert loaders, which the restored vehicles are evaluated against,
+    // and FleetStateStore.load, which falls back to MySQL when nothing was restored here.
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public void recover() {
+        if (writer == null) return;
+        long start = System.nanoTime();
+        try {
+            List<TelemetryLogWriter.Segment> segments = writer.segments();
+            Snapshot snapshot = readLatestSnapshot();
+            if (snapshot == null && !segments.isEmpty() && segments.get(0).base != 0) {
+                // Older segments were deleted without a snapshot; snapshot() will seed from the live fleet
+                log.warn("Telemetry log in {} has no snapshot and does not start at offset 0; not restoring from it", dir);
+                return;
+            }
+            Map<String, VehicleState> states = snapshot != null ? new HashMap<>(snapshot.states()) : new HashMap<>();
+            long end = writer.writtenOffset();
+            long events = replay(states, snapshot != null ? snapshot.offset() : 0, end);
+            base = new Snapshot(end, states);
+            if (states.isEmpty()) return;
+            restoringThread = Thread.currentThread();
+            try {
+                // A cluster node has not settled yet and owns none of them: they stay in memory until
+                // the owners' resync replaces them, rather than overwriting rows and replicas with stale states
+                fleetState.restore(states.values(), !membership.isEnabled());
+            } finally {
+                restoringThread = null;
+            }
+            log.info("Restored {} vehicles from the telemetry log ({} + {} events) in {} ms", states.size(),
+                    snapshot != null ? "snapshot at offset " + snapshot.offset() : "no snapshot", events,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.error("Failed to restore fleet state from the telemetry log in {}", dir, e);
+        } finally {
+            recovered = true;
+        }
+    }
+
+    // Applies the events in [from, to) on top of states. Segment-local codes are defined from
+    // the start of a segment, so a segment is always read from its beginning.
+    private long replay(Map<String, VehicleState> states, long from, long to) {
+        long applied = 0;
+        for (TelemetryLogWriter.Segment s : writer.segments()) {
+            if (s.end() <= from || s.base >= to) continue;
+            TelemetryLogFormat.Cursor cursor = new TelemetryLogFormat.Cursor(s.map());
+            while (cursor.next()) {
+                long offset = s.base + cursor.position;
+                if (offset < from) continue;
+                if (offset >= to) break;
+                String id = cursor.vehicleId();
+                VehicleState next = cursor.apply(states.get(id));
+                if (next != null) states.put(id, next);
+                else states.remove(id);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /** Folds the events since the last snapshot into a new snapshot file. */
+    @Scheduled(fixedDelayString = "${fleet.log.snapshot-interval-ms:300000}",
+            initialDelayString = "${fleet.log.snapshot-interval-ms:300000}")
+    public void snapshot() {
+        if (writer == null || !recovered) return;
+        long start = System.nanoTime();
+        long end = writer.flush();
+        Snapshot previous = base;
+        Snapshot next;
+        if (previous == null) {
+            Map<String, VehicleState> live = new HashMap<>();
+            fleetState.getAll().forEach(v -> live.put(v.id(), v));
+            next = new Snapshot(end, live);
+        } else {
+            if (previous.offset() >= end) return;
+            Map<String, VehicleState> states = new HashMap<>(previous.states());
+            replay(states, previous.offset(), end);
+            next = new Snapshot(end, states);
+        }
+        try {
+            writeSnapshot(next);
+            base = next;
+            deleteOldSnapshots();
+            log.info("Wrote telemetry log snapshot of {} vehicles at offset {} in {} ms", next.states().size(), end,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            log.warn("Failed to write telemetry log snapshot at offset {}", end, e);
+        }
+    }
+
+    /** Deletes segments past retention, keeping every segment a retained snapshot still needs. */
+    @Scheduled(fixedDelayString = "${fleet.log.prune-interval-ms:600000}")
+    public void prune() {
+        if (writer == null) return;
+        try {
+            List<Path> snapshots = snapshotFiles();
+            if (snapshots.isEmpty()) return;
+            long oldestSnapshot = offsetOf(snapshots.get(0));
+            long cutoff = Instant.now().minus(retention).toEpochMilli();
+            int deleted = 0;
+            for (TelemetryLogWriter.Segment s : writer.segments()) {
+                if (s.maxTime < cutoff && s.end() <= oldestSnapshot && writer.delete(s)) deleted++;
+            }
+            if (deleted > 0) log.info("Deleted {} telemetry log segments older than {}", deleted, retention);
+        } catch (IOException e) {
+            log.warn("Failed to prune the telemetry log in {}", dir, e);
+        }
+    }
+
+    /** Where the vehicle was at {@code at}: its last logged event at or before that instant. */
+    public Optional<Position> positionAt(String vehicleId, Instant at) {
+        if (writer == null) return Optional.empty();
+        long t = at.toEpochMilli();
+        // Only the newest events can still be in memory; older instants are answered from disk as it is
+        if (t >= writer.unwrittenSince()) writer.flush();
+        List<TelemetryLogWriter.Segment> segments = writer.segments();
+        int scanned = 0;
+        for (int i = segments.size() - 1; i >= 0 && scanned < maxScanSegments; i--) {
+            TelemetryLogWriter.Segment s = segments.get(i);
+            if (s.size <= TelemetryLogFormat.HEADER_BYTES || s.minTime > t) continue;
+            scanned++;
+            TelemetryLogFormat.Cursor cursor = new TelemetryLogFormat.Cursor(s.map()).watch(vehicleId);
+            Position best = null;
+            boolean found = false;
+            long bestTime = Long.MIN_VALUE;
+            while (cursor.next()) {
+                // Later events with equal times win, since the log is in the order changes happened
+                if (!cursor.isWatched() || cursor.time > t || cursor.time < bestTime) continue;
+                found = true;
+                bestTime = cursor.time;
+                best = cursor.type == TelemetryLogFormat.DELETE ? null : position(vehicleId, cursor);
+            }
+            if (found) return Optional.ofNullable(best);
+        }
+        return Optional.empty();
+    }
+
+    /** Every logged position of the vehicle in [from, to), oldest first, up to {@code limit}. */
+    public Track track(String vehicleId, Instant from, Instant to, int limit) {
+        if (writer == null) return new Track(vehicleId, from, to, List.of(), false);
+        long f = from.toEpochMilli();
+        long t = to.toEpochMilli();
+        if (t > writer.unwrittenSince()) writer.flush();
+        List<Position> points = new ArrayList<>();
+        boolean truncated = false;
+        for (TelemetryLogWriter.Segment s : writer.segments()) {
+            if (!s.covers(f, t - 1)) continue;
+            TelemetryLogFormat.Cursor cursor = new TelemetryLogFormat.Cursor(s.map()).watch(vehicleId);
+            while (cursor.next()) {
+                if (!cursor.isWatched() || cursor.time < f || cursor.time >= t
+                        || cursor.type == TelemetryLogFormat.DELETE) continue;
+                if (points.size() == limit) {
+                    truncated = true;
+                    break;
+                }
+                points.add(position(vehicleId, cursor));
+            }
+            if (truncated) break;
+        }
+        points.sort(Comparator.comparing(Position::at));
+        return new Track(vehicleId, from, to, points, truncated);
+    }
+
+    private static Position position(String vehicleId, TelemetryLogFormat.Cursor c) {
+        return new Position(vehicleId, Instant.ofEpochMilli(c.time), c.latitude, c.longitude, c.speed, c.fuel);
+    }
+
+    // Content followed by a CRC32 of it, written to a temporary file and renamed into place
+    private void writeSnapshot(Snapshot snapshot) throws IOException {
+        Path target = dir.resolve(String.format("%020d%s", snapshot.offset(), SNAPSHOT_SUFFIX));
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeShort(SNAPSHOT_VERSION);
+            out.writeLong(snapshot.offset());
+            out.writeInt(snapshot.states().size());
+            for (VehicleState v : snapshot.states().values()) {
+                out.writeUTF(v.id());
+                writeNullable(out, v.driverName());
+                writeNullable(out, v.corridor());
+                out.writeDouble(v.speed());
+                out.writeInt(v.fuel());
+                writeNullable(out, v.status());
+                writeNullable(out, v.vehicleType());
+                out.writeDouble(v.latitude());
+                out.writeDouble(v.longitude());
+                out.writeLong(v.lastUpdate() != null ? v.lastUpdate().toEpochMilli() : Long.MIN_VALUE);
+            }
+            out.flush();
+            new DataOutputStream(file).writeLong(crc.getValue());
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Snapshot readLatestSnapshot() throws IOException {
+        List<Path> files = snapshotFiles();
+        for (int i = files.size() - 1; i >= 0; i--) {
+            try {
+                return readSnapshot(files.get(i));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Skipping unreadable telemetry log snapshot {}", files.get(i), e);
+            }
+        }
+        return null;
+    }
+
+    private static Snapshot readSnapshot(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 8) throw new IOException("Truncated telemetry log snapshot");
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+            crc.update(mapped.slice(0, (int) (size - 8)));
+            if (crc.getValue() != mapped.getLong((int) (size - 8))) throw new IOException("Checksum mismatch");
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readShort() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a telemetry log snapshot");
+            }
+            long offset = in.readLong();
+            int count = in.readInt();
+            Map<String, VehicleState> states = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String driverName = readNullable(in);
+                String corridor = readNullable(in);
+                double speed = in.readDouble();
+                int fuel = in.readInt();
+                String status = readNullable(in);
+                String vehicleType = readNullable(in);
+                double latitude = in.readDouble();
+                double longitude = in.readDouble();
+                long lastUpdate = in.readLong();
+                states.put(id, new VehicleState(id, driverName, corridor, speed, fuel, status, vehicleType, latitude,
+                        longitude, lastUpdate != Long.MIN_VALUE ? Instant.ofEpochMilli(lastUpdate) : null));
+            }
+            return new Snapshot(offset, states);
+        }
+    }
+
+    private List<Path> snapshotFiles() throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(p -> p.getFileName().toString().endsWith(SNAPSHOT_SUFFIX)).sorted().toList();
+        }
+    }
+
+    private void deleteOldSnapshots() throws IOException {
+        List<Path> files = snapshotFiles();
+        for (int i = 0; i < files.size() - snapshotsRetained; i++) Files.deleteIfExists(files.get(i));
+    }
+
+    private static long offsetOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) writer.close();
+    }
+}
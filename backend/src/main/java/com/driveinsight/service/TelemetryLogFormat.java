@@ -0,0 +1,245 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of telemetry log segments. A segment starts with a fixed header holding the
+ * range of event times it covers (filled in when the segment is sealed), followed by records:
+ *
+ * <pre>
+ * DEFINE    type:1 code:4 idLength:2 id:n                        assigns a vehicle id a code in this segment
+ * POSITION  type:1 code:4 time:8 lat:4 lng:4 speed:2 fuel:1      24 bytes; lat/lng in 1e-6 degrees, speed in 0.1 km/h
+ * STATE     type:1 code:4 time:8 lat:8 lng:8 speed:8 fuel:4 lastUpdate:8 4 x (length:2 utf8:n)
+ * DELETE    type:1 code:4 time:8
+ * </pre>
+ *
+ * Codes are dense and local to a segment, so every segment can be read on its own. Events hold
+ * absolute values, so replaying one twice is harmless. Strings are limited to 65534 bytes;
+ * a length of 0xFFFF encodes null.
+ */
+final class TelemetryLogFormat {
+    static final int MAGIC = 0x46544c47; // "FTLG"
+    static final short VERSION = 1;
+    // magic, version, min time, max time
+    static final int HEADER_BYTES = 4 + 2 + 8 + 8;
+    static final int TIMES_OFFSET = 6;
+    static final long UNSEALED = Long.MIN_VALUE;
+
+    static final byte DEFINE = 1;
+    static final byte POSITION = 2;
+    static final byte STATE = 3;
+    static final byte DELETE = 4;
+
+    static final int POSITION_BYTES = 24;
+    static final int DELETE_BYTES = 13;
+    private static final int STATE_FIXED_BYTES = 1 + 4 + 8 + 8 + 8 + 8 + 4 + 8;
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final long NO_INSTANT = Long.MIN_VALUE;
+
+    private TelemetryLogFormat() {
+    }
+
+    static void writeHeader(ByteBuffer buf) {
+        buf.putInt(MAGIC).putShort(VERSION).putLong(UNSEALED).putLong(UNSEALED);
+    }
+
+    static int defineSize(byte[] id) {
+        return 1 + 4 + 2 + id.length;
+    }
+
+    static void writeDefine(ByteBuffer buf, int code, byte[] id) {
+        buf.put(DEFINE).putInt(code).putShort((short) id.length).put(id);
+    }
+
+    static void writePosition(ByteBuffer buf, int code, long time, VehicleState v) {
+        buf.put(POSITION).putInt(code).putLong(time)
+                .putInt((int) Math.round(v.latitude() * 1e6))
+                .putInt((int) Math.round(v.longitude() * 1e6))
+                .putShort((short) Math.max(0, Math.min(Short.MAX_VALUE, Math.round(v.speed() * 10))))
+                .put((byte) Math.max(0, Math.min(255, v.fuel())));
+    }
+
+    static int stateSize(byte[][] strings) {
+        int size = STATE_FIXED_BYTES;
+        for (byte[] s : strings) size += 2 + (s != null ? s.length : 0);
+        return size;
+    }
+
+    static byte[][] stateStrings(VehicleState v) {
+        return new byte[][]{utf8(v.driverName()), utf8(v.corridor()), utf8(v.status()), utf8(v.vehicleType())};
+    }
+
+    static void writeState(ByteBuffer buf, int code, long time, VehicleState v, byte[][] strings) {
+        buf.put(STATE).putInt(code).putLong(time)
+                .putDouble(v.latitude()).putDouble(v.longitude()).putDouble(v.speed()).putInt(v.fuel())
+                .putLong(v.lastUpdate() != null ? v.lastUpdate().toEpochMilli() : NO_INSTANT);
+        for (byte[] s : strings) {
+            if (s == null) {
+                buf.putShort((short) NULL_LENGTH);
+            } else {
+                buf.putShort((short) s.length).put(s);
+            }
+        }
+    }
+
+    static void writeDelete(ByteBuffer buf, int code, long time) {
+        buf.put(DELETE).putInt(code).putLong(time);
+    }
+
+    static byte[] utf8(String s) {
+        if (s == null) return null;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_LENGTH) throw new IllegalArgumentException("String too long for the telemetry log");
+        return bytes;
+    }
+
+    /**
+     * Sequential reader over one segment. {@link #next()} stops at the end of the buffer or at
+     * the first record that is truncated or unrecognised, which is where a crash tore the tail.
+     */
+    static final class Cursor {
+        private final ByteBuffer buf;
+        private final List<String> ids = new ArrayList<>();
+        private final boolean valid;
+        private int validEnd;
+        private String watched;
+        private int watchedCode = -1;
+
+        byte type;
+        int code;
+        int position;
+        long time;
+        double latitude;
+        double longitude;
+        double speed;
+        int fuel;
+        long lastUpdate;
+        String driverName;
+        String corridor;
+        String status;
+        String vehicleType;
+
+        Cursor(ByteBuffer buf) {
+            this.buf = buf;
+            this.valid = buf.remaining() >= HEADER_BYTES && buf.getInt(0) == MAGIC && buf.getShort(4) == VERSION;
+            if (valid) buf.position(HEADER_BYTES);
+            this.validEnd = valid ? HEADER_BYTES : 0;
+        }
+
+        boolean isValid() {
+            return valid;
+        }
+
+        /** End of the last complete record read so far. */
+        int validEnd() {
+            return validEnd;
+        }
+
+        long minTime() {
+            return buf.getLong(TIMES_OFFSET);
+        }
+
+        long maxTime() {
+            return buf.getLong(TIMES_OFFSET + 8);
+        }
+
+        /** Tracks the code {@code vehicleId} gets in this segment, so scans compare ints, not strings. */
+        Cursor watch(String vehicleId) {
+            this.watched = vehicleId;
+            return this;
+        }
+
+        /** True when the current event is for the watched vehicle. */
+        boolean isWatched() {
+            return watchedCode >= 0 && code == watchedCode;
+        }
+
+        String vehicleId() {
+            return code >= 0 && code < ids.size() ? ids.get(code) : null;
+        }
+
+        /** Advances to the next POSITION, STATE or DELETE event, registering definitions on the way. */
+        boolean next() {
+            if (!valid) return false;
+            try {
+                while (buf.hasRemaining()) {
+                    int start = buf.position();
+                    type = buf.get();
+                    switch (type) {
+                        case DEFINE -> {
+                            int c = buf.getInt();
+                            String id = readString();
+                            if (c != ids.size() || id == null) return false;
+                            if (id.equals(watched)) watchedCode = c;
+                            ids.add(id);
+                            validEnd = buf.position();
+                            continue;
+                        }
+                        case POSITION -> {
+                            code = buf.getInt();
+                            time = buf.getLong();
+                            latitude = buf.getInt() / 1e6;
+                            longitude = buf.getInt() / 1e6;
+                            speed = buf.getShort() / 10.0;
+                            fuel = buf.get() & 0xff;
+                        }
+                        case STATE -> {
+                            code = buf.getInt();
+                            time = buf.getLong();
+                            latitude = buf.getDouble();
+                            longitude = buf.getDouble();
+                            speed = buf.getDouble();
+                            fuel = buf.getInt();
+                            lastUpdate = buf.getLong();
+                            driverName = readString();
+                            corridor = readString();
+                            status = readString();
+                            vehicleType = readString();
+                        }
+                        case DELETE -> {
+                            code = buf.getInt();
+                            time = buf.getLong();
+                        }
+                        default -> {
+                            return false;
+                        }
+                    }
+                    if (code < 0 || code >= ids.size()) return false;
+                    position = start;
+                    validEnd = buf.position();
+                    return true;
+                }
+            } catch (BufferUnderflowException e) {
+                return false;
+            }
+            return false;
+        }
+
+        /** The vehicle as it is after this event, given its state before it; null when deleted. */
+        VehicleState apply(VehicleState previous) {
+            return switch (type) {
+                case POSITION -> previous == null ? null : new VehicleState(previous.id(), previous.driverName(),
+                        previous.corridor(), speed, fuel, previous.status(), previous.vehicleType(),
+                        latitude, longitude, Instant.ofEpochMilli(time));
+                case STATE -> new VehicleState(vehicleId(), driverName, corridor, speed, fuel, status, vehicleType,
+                        latitude, longitude, lastUpdate != NO_INSTANT ? Instant.ofEpochMilli(lastUpdate) : null);
+                default -> null;
+            };
+        }
+
+        private String readString() {
+            int length = buf.getShort() & 0xffff;
+            if (length == NULL_LENGTH) return null;
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
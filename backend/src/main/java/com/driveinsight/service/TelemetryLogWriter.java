@@ -0,0 +1,470 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Appends telemetry events to segment files named after the log offset they start at. Fleet
+ * state listeners only encode into an in-memory buffer; full buffers, and the current one every
+ * {@code flushIntervalMs}, are handed to a background thread that appends them to the segment
+ * with NIO, so no file I/O happens on the update path. A segment is sealed once it reaches
+ * {@code segmentBytes}, recording the range of event times it covers in its header.
+ *
+ * <p>There are at most {@code maxBuffers} buffers, reused between the appenders and the worker.
+ * When all of them are waiting for the disk, appenders wait for the worker to free one, so a slow
+ * disk throttles updates instead of growing the heap; {@link #stalls()} counts those waits.
+ *
+ * <p>Offsets are logical positions in the whole log: a segment's base offset plus the position
+ * within its file.
+ */
+class TelemetryLogWriter {
+    private static final Logger log = LoggerFactory.getLogger(TelemetryLogWriter.class);
+    static final String SEGMENT_SUFFIX = ".seg";
+    // Large enough for a STATE record with maximal strings
+    private static final int MIN_BUFFER_BYTES = 1 << 19;
+
+    static final class Segment {
+        final long base;
+        final Path path;
+        // Bytes on disk; readers map only this much
+        volatile long size;
+        volatile long minTime = Long.MAX_VALUE;
+        volatile long maxTime = Long.MIN_VALUE;
+
+        Segment(long base, Path path) {
+            this.base = base;
+            this.path = path;
+        }
+
+        long end() {
+            return base + size;
+        }
+
+        boolean covers(long from, long to) {
+            return size > TelemetryLogFormat.HEADER_BYTES && minTime <= to && maxTime >= from;
+        }
+
+        /** Maps the written part of the segment read-only; the mapping stays valid after the channel closes. */
+        MappedByteBuffer map() {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, ch.size()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // minTime is the earliest event time in data
+    private record Chunk(Segment segment, ByteBuffer data, long endOffset, boolean seal, long minTime) {}
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int bufferBytes;
+    private final long flushIntervalMs;
+    private final boolean fsync;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // Appender state, guarded by appendLock
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private Segment current;
+    private ByteBuffer active;
+    private long activeMinTime = Long.MAX_VALUE;
+    private int allocatedBuffers;
+    private volatile long nextOffset;
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    private final int maxBuffers;
+    private final BlockingQueue<Chunk> chunks;
+    private final BlockingQueue<ByteBuffer> spare;
+    // Chunks handed off and not yet written, oldest first; removed by the worker after writing
+    private final Queue<Chunk> unwritten = new ConcurrentLinkedQueue<>();
+    private final AtomicLong stalls = new AtomicLong();
+    private final Object written = new Object();
+    private volatile long writtenOffset;
+    private volatile boolean failed;
+    // Owned by the worker thread
+    private FileChannel channel;
+    private Segment channelSegment;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    TelemetryLogWriter(Path dir, long segmentBytes, int bufferBytes, int maxBuffers, long flushIntervalMs,
+                       boolean fsync) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.bufferBytes = Math.max(MIN_BUFFER_BYTES, bufferBytes);
+        // One being filled and at least one being written
+        this.maxBuffers = Math.max(2, maxBuffers);
+        this.chunks = new ArrayBlockingQueue<>(this.maxBuffers);
+        this.spare = new ArrayBlockingQueue<>(this.maxBuffers);
+        this.flushIntervalMs = flushIntervalMs;
+        this.fsync = fsync;
+        open();
+        this.writtenOffset = nextOffset;
+        this.active = ByteBuffer.allocate(this.bufferBytes);
+        this.allocatedBuffers = 1;
+        this.worker = new Thread(this::run, "telemetry-log-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Seals whatever the previous run left behind, trimming a tail torn by a crash. Appending
+    // always starts a new segment, so segment-local codes never need to be recovered.
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            Segment s = new Segment(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), path);
+            s.size = Files.size(path);
+            TelemetryLogFormat.Cursor cursor = new TelemetryLogFormat.Cursor(s.map());
+            if (!cursor.isValid()) {
+                log.warn("Ignoring unreadable telemetry log segment {}", path);
+                continue;
+            }
+            if (cursor.minTime() != TelemetryLogFormat.UNSEALED) {
+                s.minTime = cursor.minTime();
+                s.maxTime = cursor.maxTime();
+            } else {
+                while (cursor.next()) {
+                    s.minTime = Math.min(s.minTime, cursor.time);
+                    s.maxTime = Math.max(s.maxTime, cursor.time);
+                }
+                if (cursor.validEnd() <= TelemetryLogFormat.HEADER_BYTES) {
+                    Files.delete(path);
+                    continue;
+                }
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    if (cursor.validEnd() < s.size) {
+                        log.warn("Truncating torn tail of {} at {} of {} bytes", path, cursor.validEnd(), s.size);
+                        ch.truncate(cursor.validEnd());
+                    }
+                    writeTimes(ch, s);
+                    ch.force(true);
+                }
+                s.size = cursor.validEnd();
+            }
+            segments.put(s.base, s);
+            nextOffset = s.end();
+        }
+    }
+
+    /** Encodes one fleet state change. Called from listeners, so never touches the disk. */
+    void append(VehicleState previous, VehicleState current) {
+        if (failed) return;
+        long time = current == null || current.lastUpdate() == null
+                ? System.currentTimeMillis() : current.lastUpdate().toEpochMilli();
+        appendLock.lock();
+        try {
+            if (current == null) {
+                int code = reserve(previous.id(), TelemetryLogFormat.DELETE_BYTES);
+                TelemetryLogFormat.writeDelete(active, code, time);
+            } else if (previous != null && sameDescription(previous, current)) {
+                if (!positionChanged(previous, current)) return;
+                int code = reserve(current.id(), TelemetryLogFormat.POSITION_BYTES);
+                TelemetryLogFormat.writePosition(active, code, time, current);
+            } else {
+                byte[][] strings = TelemetryLogFormat.stateStrings(current);
+                int code = reserve(current.id(), TelemetryLogFormat.stateSize(strings));
+                TelemetryLogFormat.writeState(active, code, time, current, strings);
+            }
+            this.current.minTime = Math.min(this.current.minTime, time);
+            this.current.maxTime = Math.max(this.current.maxTime, time);
+            activeMinTime = Math.min(activeMinTime, time);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Makes room for a record (and the vehicle's definition if this segment has not seen it),
+    // rolling the segment or handing off the buffer as needed. Returns the vehicle's code.
+    private int reserve(String id, int recordBytes) {
+        Integer code = this.current != null ? codes.get(id) : null;
+        byte[] idBytes = code == null ? TelemetryLogFormat.utf8(id) : null;
+        int needed = recordBytes + (idBytes != null ? TelemetryLogFormat.defineSize(idBytes) : 0);
+        if (this.current == null || (nextOffset - this.current.base + needed > segmentBytes
+                && nextOffset - this.current.base > TelemetryLogFormat.HEADER_BYTES)) {
+            roll();
+            if (code != null) {
+                code = null;
+                idBytes = TelemetryLogFormat.utf8(id);
+                needed += TelemetryLogFormat.defineSize(idBytes);
+            }
+        }
+        if (active.remaining() < needed) handOff(false);
+        if (code == null) {
+            code = codes.size();
+            codes.put(id, code);
+            TelemetryLogFormat.writeDefine(active, code, idBytes);
+        }
+        nextOffset += needed;
+        return code;
+    }
+
+    private void roll() {
+        if (this.current != null) handOff(true);
+        this.current = new Segment(nextOffset, dir.resolve(String.format("%020d%s", nextOffset, SEGMENT_SUFFIX)));
+        segments.put(this.current.base, this.current);
+        codes.clear();
+        TelemetryLogFormat.writeHeader(active);
+        nextOffset += TelemetryLogFormat.HEADER_BYTES;
+    }
+
+    private void handOff(boolean seal) {
+        active.flip();
+        Chunk chunk = new Chunk(this.current, active, nextOffset, seal, activeMinTime);
+        unwritten.add(chunk);
+        // Never full: every queued chunk holds one of the maxBuffers buffers, and active holds another
+        chunks.add(chunk);
+        activeMinTime = Long.MAX_VALUE;
+        ByteBuffer next = spare.poll();
+        if (next == null && allocatedBuffers < maxBuffers) {
+            next = ByteBuffer.allocate(bufferBytes);
+            allocatedBuffers++;
+        }
+        if (next == null) {
+            stalls.incrementAndGet();
+            next = awaitSpare();
+        }
+        active = next;
+    }
+
+    // Waits for the worker to free a buffer; falls back to a new one if the worker has stopped
+    private ByteBuffer awaitSpare() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    ByteBuffer next = spare.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                    if (next != null) return next;
+                    if (!worker.isAlive()) return ByteBuffer.allocate(bufferBytes);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    // Whether handOff would return without waiting for the worker
+    private boolean canHandOff() {
+        return !spare.isEmpty() || allocatedBuffers < maxBuffers;
+    }
+
+    /** Hands the current buffer to the worker and waits until everything appended so far is on disk. */
+    long flush() {
+        long target;
+        appendLock.lock();
+        try {
+            target = nextOffset;
+            if (this.current != null && active.position() > 0) handOff(false);
+        } finally {
+            appendLock.unlock();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        synchronized (written) {
+            while (writtenOffset < target && !failed) {
+                long waitMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (waitMs <= 0) break;
+                try {
+                    written.wait(waitMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return writtenOffset;
+    }
+
+    /** Segments in offset order, including the one being appended to. */
+    List<Segment> segments() {
+        return new ArrayList<>(segments.values());
+    }
+
+    long writtenOffset() {
+        return writtenOffset;
+    }
+
+    long backlog() {
+        return nextOffset - writtenOffset;
+    }
+
+    /** Times an appender had to wait for the worker to free a buffer. */
+    long stalls() {
+        return stalls.get();
+    }
+
+    /**
+     * The earliest event time among events not yet on disk, or {@code Long.MAX_VALUE} if there
+     * are none; readers only need {@link #flush()} when they look at or after this time.
+     */
+    long unwrittenSince() {
+        long min;
+        appendLock.lock();
+        try {
+            min = activeMinTime;
+        } finally {
+            appendLock.unlock();
+        }
+        for (Chunk chunk : unwritten) min = Math.min(min, chunk.minTime());
+        return min;
+    }
+
+    boolean failed() {
+        return failed;
+    }
+
+    /** Deletes a sealed segment; the one being appended to is never deleted. */
+    boolean delete(Segment segment) throws IOException {
+        appendLock.lock();
+        try {
+            if (segment == this.current || segment.end() > writtenOffset) return false;
+            segments.remove(segment.base);
+        } finally {
+            appendLock.unlock();
+        }
+        Files.deleteIfExists(segment.path);
+        return true;
+    }
+
+    void close() {
+        swap();
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void swap() {
+        appendLock.lock();
+        try {
+            if (this.current != null && active.position() > 0) handOff(false);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // The worker's periodic swap. It must not wait for a buffer only it can free, and an appender
+    // holding the lock is about to hand off anyway, so it gives up rather than wait.
+    private void trySwap() {
+        if (!appendLock.tryLock()) return;
+        try {
+            if (this.current != null && active.position() > 0 && canHandOff()) handOff(false);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Not interrupted on close: an interrupt during a channel write would close the channel
+    private void run() {
+        long lastSwap = System.nanoTime();
+        while (true) {
+            Chunk chunk = null;
+            try {
+                chunk = chunks.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+                // only stops on close
+            }
+            if (chunk != null) write(chunk);
+            if (!running && chunks.isEmpty()) break;
+            if (System.nanoTime() - lastSwap >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMs)) {
+                trySwap();
+                lastSwap = System.nanoTime();
+            }
+        }
+        closeChannel();
+    }
+
+    private void write(Chunk chunk) {
+        ByteBuffer data = chunk.data();
+        try {
+            if (!failed) {
+                if (channelSegment != chunk.segment()) {
+                    closeChannel();
+                    channel = FileChannel.open(chunk.segment().path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                    channelSegment = chunk.segment();
+                }
+                int bytes = data.remaining();
+                while (data.hasRemaining()) channel.write(data);
+                chunk.segment().size += bytes;
+                if (fsync) channel.force(false);
+                if (chunk.seal()) {
+                    writeTimes(channel, chunk.segment());
+                    channel.force(true);
+                    closeChannel();
+                }
+            }
+        } catch (IOException e) {
+            failed = true;
+            log.error("Telemetry log write to {} failed; appending stops until restart", chunk.segment().path, e);
+        } finally {
+            synchronized (written) {
+                writtenOffset = chunk.endOffset();
+                written.notifyAll();
+            }
+            unwritten.remove(chunk);
+            if (data.capacity() == bufferBytes) {
+                data.clear();
+                spare.offer(data);
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close telemetry log segment {}", channelSegment.path, e);
+        }
+        channel = null;
+        channelSegment = null;
+    }
+
+    private static void writeTimes(FileChannel ch, Segment s) throws IOException {
+        ByteBuffer times = ByteBuffer.allocate(16).putLong(s.minTime).putLong(s.maxTime).flip();
+        while (times.hasRemaining()) ch.write(times, TelemetryLogFormat.TIMES_OFFSET + times.position());
+    }
+
+    private static boolean sameDescription(VehicleState a, VehicleState b) {
+        return Objects.equals(a.driverName(), b.driverName()) && Objects.equals(a.corridor(), b.corridor())
+                && Objects.equals(a.status(), b.status()) && Objects.equals(a.vehicleType(), b.vehicleType());
+    }
+
+    private static boolean positionChanged(VehicleState a, VehicleState b) {
+        return a.latitude() != b.latitude() || a.longitude() != b.longitude() || a.speed() != b.speed()
+                || a.fuel() != b.fuel() || !Objects.equals(a.lastUpdate(), b.lastUpdate());
+    }
+}
@@ -0,0 +1,81 @@
+package com.driveinsight.service;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compact encoding for a run of GPS fixes. Coordinates are stored as fixed-point micro-degrees
+ * (about 0.1 m); the first fix is absolute and each following fix is the difference to its
+ * predecessor, all as zigzag varints. Consecutive fixes a few metres apart take 2-4 bytes per
+ * point instead of a full JPA row.
+ */
+public final class TrackCodec {
+    public static final double SCALE = 1_000_000.0;
+
+    @FunctionalInterface
+    public interface PointVisitor {
+        void accept(double latitude, double longitude);
+    }
+
+    private TrackCodec() {}
+
+    public static byte[] encode(double[] latitudes, double[] longitudes, int from, int to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((to - from) * 4);
+        int prevLat = 0;
+        int prevLng = 0;
+        for (int i = from; i < to; i++) {
+            int lat = (int) Math.round(latitudes[i] * SCALE);
+            int lng = (int) Math.round(longitudes[i] * SCALE);
+            writeVarint(out, zigzag(lat - prevLat));
+            writeVarint(out, zigzag(lng - prevLng));
+            prevLat = lat;
+            prevLng = lng;
+        }
+        return out.toByteArray();
+    }
+
+    /** Decodes without allocating per point; returns the number of points visited. */
+    public static int decode(byte[] data, PointVisitor visitor) {
+        int pos = 0;
+        int lat = 0;
+        int lng = 0;
+        int count = 0;
+        while (pos < data.length) {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                v |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            lat += unzigzag((int) v);
+            v = 0;
+            shift = 0;
+            do {
+                b = data[pos++];
+                v |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            lng += unzigzag((int) v);
+            visitor.accept(lat / SCALE, lng / SCALE);
+            count++;
+        }
+        return count;
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,71 @@
+package com.driveinsight.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Douglas-Peucker polyline simplification over lat/lng points, using a local equirectangular
+ * projection so the tolerance is in metres. Iterative, so very long tracks cannot overflow
+ * the stack.
+ */
+public final class TrackSimplifier {
+    private static final double METRES_PER_DEGREE = GeoMath.KM_PER_DEGREE_LAT * 1000;
+
+    private TrackSimplifier() {}
+
+    /** Indices of the points to keep, in order; always includes the first and last point. */
+    public static int[] simplify(double[] latitudes, double[] longitudes, int count, double toleranceMetres) {
+        if (count <= 2) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) all[i] = i;
+            return all;
+        }
+        double cosLat = Math.cos(Math.toRadians(latitudes[0]));
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = longitudes[i] * cosLat * METRES_PER_DEGREE;
+            y[i] = latitudes[i] * METRES_PER_DEGREE;
+        }
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        double tolSq = toleranceMetres * toleranceMetres;
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, count - 1});
+        while (!stack.isEmpty()) {
+            int[] range = stack.pop();
+            int start = range[0];
+            int end = range[1];
+            double maxSq = -1;
+            int index = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d = segmentDistanceSq(x[i], y[i], x[start], y[start], x[end], y[end]);
+                if (d > maxSq) {
+                    maxSq = d;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxSq > tolSq) {
+                keep[index] = true;
+                stack.push(new int[]{start, index});
+                stack.push(new int[]{index, end});
+            }
+        }
+        int kept = 0;
+        for (boolean k : keep) if (k) kept++;
+        int[] result = new int[kept];
+        for (int i = 0, j = 0; i < count; i++) if (keep[i]) result[j++] = i;
+        return result;
+    }
+
+    private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lenSq = dx * dx + dy * dy;
+        double t = lenSq == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lenSq));
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+}
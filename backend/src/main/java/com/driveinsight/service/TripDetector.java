@@ -0,0 +1,369 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.RouteRecord;
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.repo.RouteTrackRepository;
+import com.driveinsight.repo.TripRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Derives trips and daily metrics from each vehicle's stream of fleet state changes, so routes
+ * and daily_metrics fill in as vehicles drive instead of being recomputed from raw history.
+ *
+ * <p>A trip starts when a parked vehicle reaches {@code fleet.trips.moving-speed-kmh} and ends
+ * once it has stood still for {@code fleet.trips.end-dwell-ms}, or has sent nothing for that
+ * long. Standing still for at least {@code fleet.trips.stop-dwell-ms} in between counts as a
+ * stop. Distance is summed haversine steps; the track keeps points at least
+ * {@code fleet.trips.point-spacing-m} apart, thinned to stay within {@code fleet.trips.max-points}.
+ * Completed trips and per-day distance, driving time and fuel are buffered in memory and written
+ * as batches by a periodic flush.
+ */
+@Service
+public class TripDetector implements FleetStateListener {
+    private static final Logger log = LoggerFactory.getLogger(TripDetector.class);
+    // Same relocation cut-off as the rollups: longer jumps are teleports, not driving
+    private static final double MAX_STEP_KM = 50;
+    // Gaps between fixes longer than this are not counted as driving time
+    private static final long MAX_SAMPLE_GAP_MS = 300_000;
+
+    private static final class Trip {
+        final long start;
+        final double startLat;
+        final double startLng;
+        double distanceKm;
+        int stops;
+        double[] lats = new double[64];
+        double[] lngs = new double[64];
+        int count;
+        double spacingKm;
+
+        Trip(long start, double lat, double lng, double spacingKm) {
+            this.start = start;
+            this.startLat = lat;
+            this.startLng = lng;
+            this.spacingKm = spacingKm;
+            lats[0] = lat;
+            lngs[0] = lng;
+            count = 1;
+        }
+
+        void add(double lat, double lng, int maxPoints) {
+            if (GeoMath.haversineKm(lats[count - 1], lngs[count - 1], lat, lng) < spacingKm) return;
+            if (count == maxPoints) {
+                // Keep every other point and double the spacing; the newest point is appended below
+                int kept = 0;
+                for (int i = 0; i < count; i += 2) {
+                    lats[kept] = lats[i];
+                    lngs[kept] = lngs[i];
+                    kept++;
+                }
+                count = kept;
+                spacingKm *= 2;
+            } else if (count == lats.length) {
+                lats = Arrays.copyOf(lats, Math.min(maxPoints, count * 2));
+                lngs = Arrays.copyOf(lngs, lats.length);
+            }
+            lats[count] = lat;
+            lngs[count] = lng;
+            count++;
+        }
+    }
+
+    // Only touched inside trackers.compute for its vehicle
+    private static final class Tracker {
+        double lat;
+        double lng;
+        long time;
+        int fuel;
+        Trip trip;
+        long stationarySince = -1;
+        double stationaryLat;
+        double stationaryLng;
+
+        Tracker(VehicleState v, long time) {
+            this.lat = v.latitude();
+            this.lng = v.longitude();
+            this.fuel = v.fuel();
+            this.time = time;
+        }
+    }
+
+    private record CompletedTrip(RouteRecord route, double[] lats, double[] lngs) {}
+
+    private record DayKey(String vehicleId, long epochDay) {}
+
+    // Only mutated inside days.compute, and handed off to the flush by days.remove
+    private static final class DayAccumulator {
+        double distanceKm;
+        double drivingSeconds;
+        double fuelUsedLitres;
+    }
+
+    private final TripRepository tripRepository;
+    private final RouteTrackRepository trackRepository;
+    private final GeofenceService geofences;
+    private final ChangeVersion changeVersion;
+    private final TransactionTemplate transactionTemplate;
+    private final double movingSpeed;
+    private final long stopDwellMs;
+    private final long endDwellMs;
+    private final double minDistanceKm;
+    private final double spacingKm;
+    private final int maxPoints;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final Map<String, Double> tankLitres;
+    private final double defaultTankLitres;
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+    private final Map<DayKey, DayAccumulator> days = new ConcurrentHashMap<>();
+    private final Queue<CompletedTrip> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger completedCount = new AtomicInteger();
+    private final Counter recorded;
+    private final Counter dropped;
+
+    public TripDetector(FleetStateStore fleetState,
+                        TripRepository tripRepository,
+                        RouteTrackRepository trackRepository,
+                        GeofenceService geofences,
+                        MeterRegistry meterRegistry,
+                        ChangeVersion changeVersion,
+                        TransactionTemplate transactionTemplate,
+                        @Value("${fleet.trips.moving-speed-kmh:5}") double movingSpeed,
+                        @Value("${fleet.trips.stop-dwell-ms:120000}") long stopDwellMs,
+                        @Value("${fleet.trips.end-dwell-ms:900000}") long endDwellMs,
+                        @Value("${fleet.trips.min-distance-km:0.5}") double minDistanceKm,
+                        @Value("${fleet.trips.point-spacing-m:25}") double spacingMetres,
+                        @Value("${fleet.trips.max-points:5000}") int maxPoints,
+                        @Value("${fleet.trips.queue-capacity:10000}") int queueCapacity,
+                        @Value("${fleet.trips.batch-size:500}") int batchSize,
+                        @Value("${fleet.trips.tank-litres:truck:400,van:80,sedan:55}") String tankLitres,
+                        @Value("${fleet.trips.default-tank-litres:60}") double defaultTankLitres) {
+        this.tripRepository = tripRepository;
+        this.trackRepository = trackRepository;
+        this.geofences = geofences;
+        this.changeVersion = changeVersion;
+        this.transactionTemplate = transactionTemplate;
+        this.movingSpeed = movingSpeed;
+        this.stopDwellMs = stopDwellMs;
+        this.endDwellMs = endDwellMs;
+        this.minDistanceKm = minDistanceKm;
+        this.spacingKm = spacingMetres / 1000;
+        this.maxPoints = Math.max(16, maxPoints);
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.tankLitres = parseTanks(tankLitres);
+        this.defaultTankLitres = defaultTankLitres;
+        this.recorded = meterRegistry.counter("fleet.trips.recorded");
+        this.dropped = meterRegistry.counter("fleet.trips.dropped");
+        Gauge.builder("fleet.trips.active", trackers, t -> t.values().stream().filter(k -> k.trip != null).count())
+                .register(meterRegistry);
+        fleetState.addListener(this);
+    }
+
+    private static Map<String, Double> parseTanks(String spec) {
+        Map<String, Double> tanks = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] kv = entry.split(":");
+            if (kv.length == 2) tanks.put(kv[0].trim().toLowerCase(Locale.ROOT), Double.parseDouble(kv[1].trim()));
+        }
+        return tanks;
+    }
+
+    // Trips are detected by the vehicle's owner; a new owner starts from the next movement it sees
+    @Override
+    public boolean localOnly() {
+        return true;
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        if (current == null) {
+            // A trip in progress is discarded with its vehicle; the route row could not reference it anyway
+            trackers.remove(previous.id());
+            return;
+        }
+        long time = current.lastUpdate() != null ? current.lastUpdate().toEpochMilli() : System.currentTimeMillis();
+        trackers.compute(current.id(), (id, t) -> {
+            if (t == null || previous == null) return new Tracker(current, time);
+            step(t, current, time);
+            return t;
+        });
+    }
+
+    private void step(Tracker t, VehicleState v, long time) {
+        // Out-of-order fixes would make distance and durations run backwards
+        if (time < t.time) return;
+        boolean moved = v.latitude() != t.lat || v.longitude() != t.lng;
+        double stepKm = moved ? GeoMath.haversineKm(t.lat, t.lng, v.latitude(), v.longitude()) : 0;
+        if (stepKm > MAX_STEP_KM) stepKm = 0;
+        boolean moving = v.speed() >= movingSpeed;
+        long dt = time - t.time;
+
+        double drivingSeconds = moving && dt <= MAX_SAMPLE_GAP_MS ? dt / 1000.0 : 0;
+        double fuelUsed = v.fuel() < t.fuel ? (t.fuel - v.fuel()) * tankLitres(v) / 100 : 0;
+        if (stepKm > 0 || drivingSeconds > 0 || fuelUsed > 0) {
+            double km = stepKm;
+            days.compute(new DayKey(v.id(), Math.floorDiv(time, 86_400_000L)), (k, acc) -> {
+                if (acc == null) acc = new DayAccumulator();
+                acc.distanceKm += km;
+                acc.drivingSeconds += drivingSeconds;
+                acc.fuelUsedLitres += fuelUsed;
+                return acc;
+            });
+        }
+
+        Trip trip = t.trip;
+        if (trip == null) {
+            if (moving) {
+                trip = new Trip(t.time, t.lat, t.lng, spacingKm);
+                trip.distanceKm = stepKm;
+                trip.add(v.latitude(), v.longitude(), maxPoints);
+                t.trip = trip;
+                t.stationarySince = -1;
+            }
+        } else {
+            trip.distanceKm += stepKm;
+            trip.add(v.latitude(), v.longitude(), maxPoints);
+            if (moving) {
+                if (t.stationarySince >= 0 && time - t.stationarySince >= stopDwellMs) trip.stops++;
+                t.stationarySince = -1;
+            } else if (t.stationarySince < 0) {
+                t.stationarySince = time;
+                t.stationaryLat = v.latitude();
+                t.stationaryLng = v.longitude();
+            } else if (time - t.stationarySince >= endDwellMs) {
+                complete(v.id(), trip, t.stationarySince, t.stationaryLat, t.stationaryLng);
+                t.trip = null;
+                t.stationarySince = -1;
+            }
+        }
+        t.lat = v.latitude();
+        t.lng = v.longitude();
+        t.fuel = v.fuel();
+        t.time = time;
+    }
+
+    private double tankLitres(VehicleState v) {
+        return v.vehicleType() != null
+                ? tankLitres.getOrDefault(v.vehicleType().toLowerCase(Locale.ROOT), defaultTankLitres) : defaultTankLitres;
+    }
+
+    // Never blocks: called from inside the listener. Over capacity the trip is dropped and counted.
+    private void complete(String vehicleId, Trip trip, long end, double endLat, double endLng) {
+        if (trip.distanceKm < minDistanceKm) return;
+        if (completedCount.incrementAndGet() > queueCapacity) {
+            completedCount.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        long minutes = Math.max(1, Math.round((end - trip.start) / 60_000.0));
+        RouteRecord route = new RouteRecord();
+        route.setVehicleId(vehicleId);
+        route.setStartLocation(locationName(trip.startLat, trip.startLng));
+        route.setEndLocation(locationName(endLat, endLng));
+        route.setDistance(Math.round(trip.distanceKm * 100.0) / 100.0);
+        route.setDuration((int) minutes);
+        route.setAvgSpeed(Math.round(trip.distanceKm / (minutes / 60.0) * 10.0) / 10.0);
+        route.setStops(trip.stops);
+        route.setDate(Instant.ofEpochMilli(trip.start));
+        completed.add(new CompletedTrip(route, Arrays.copyOf(trip.lats, trip.count), Arrays.copyOf(trip.lngs, trip.count)));
+    }
+
+    private String locationName(double lat, double lng) {
+        GeofenceIndex index = geofences.index();
+        long[] inside = index.lookup(lat, lng);
+        return inside.length > 0 ? index.name(inside[0]) : String.format(Locale.ROOT, "%.4f, %.4f", lat, lng);
+    }
+
+    /** Ends trips of vehicles that went silent, then writes completed trips and daily deltas. */
+    @Scheduled(fixedDelayString = "${fleet.trips.flush-interval-ms:30000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (String id : trackers.keySet()) {
+            trackers.computeIfPresent(id, (k, t) -> {
+                if (t.trip != null && now - t.time >= endDwellMs) {
+                    complete(k, t.trip, t.stationarySince >= 0 ? t.stationarySince : t.time,
+                            t.stationarySince >= 0 ? t.stationaryLat : t.lat, t.stationarySince >= 0 ? t.stationaryLng : t.lng);
+                    t.trip = null;
+                    t.stationarySince = -1;
+                }
+                return t;
+            });
+        }
+        writeTrips();
+        writeDays();
+    }
+
+    private void writeTrips() {
+        List<CompletedTrip> trips = new ArrayList<>();
+        for (CompletedTrip c; (c = completed.poll()) != null; ) {
+            completedCount.decrementAndGet();
+            trips.add(c);
+        }
+        if (trips.isEmpty()) return;
+        try {
+            // Routes and their tracks commit together, so a failure cannot leave a route without its track
+            transactionTemplate.executeWithoutResult(status -> {
+                tripRepository.insertRoutes(trips.stream().map(CompletedTrip::route).toList());
+                List<RouteTrackRepository.RouteSegment> segments = new ArrayList<>();
+                for (CompletedTrip c : trips) {
+                    Long routeId = c.route().getId();
+                    if (routeId == null) continue;
+                    int segment = 0;
+                    for (int from = 0; from < c.lats().length; from += RouteTrackService.SEGMENT_POINTS) {
+                        int to = Math.min(c.lats().length, from + RouteTrackService.SEGMENT_POINTS);
+                        byte[] data = TrackCodec.encode(c.lats(), c.lngs(), from, to);
+                        segments.add(new RouteTrackRepository.RouteSegment(routeId,
+                                new RouteTrackRepository.Segment(segment++, from + 1, to - from, data)));
+                    }
+                }
+                trackRepository.insertAll(segments, batchSize);
+            });
+            recorded.increment(trips.size());
+            changeVersion.bump(ChangeVersion.Scope.HISTORY);
+        } catch (Exception e) {
+            log.warn("Failed to write {} detected trips", trips.size(), e);
+        }
+    }
+
+    private void writeDays() {
+        if (days.isEmpty()) return;
+        List<TripRepository.DailyDelta> deltas = new ArrayList<>(days.size());
+        for (DayKey key : new ArrayList<>(days.keySet())) {
+            DayAccumulator acc = days.remove(key);
+            if (acc == null) continue;
+            deltas.add(new TripRepository.DailyDelta(key.vehicleId(), Instant.EPOCH.plus(key.epochDay(), ChronoUnit.DAYS),
+                    acc.distanceKm, acc.drivingSeconds, acc.fuelUsedLitres));
+        }
+        try {
+            tripRepository.mergeDaily(deltas, batchSize);
+        } catch (Exception e) {
+            // Deltas are lost rather than retried; a retry could double-count rows already merged
+            log.warn("Failed to merge {} daily metric deltas", deltas.size(), e);
+        }
+        changeVersion.bump(ChangeVersion.Scope.HISTORY);
+    }
+
+    // Trips still in progress are not written; they restart on the next movement after startup
+    @PreDestroy
+    public void shutdown() {
+        writeTrips();
+        writeDays();
+    }
+}
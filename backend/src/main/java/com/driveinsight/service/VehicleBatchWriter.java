@@ -0,0 +1,248 @@
+package com.driveinsight.service;
+
+import com.driveinsight.model.VehicleState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Write-behind buffer for vehicle rows. Updates only mark a vehicle dirty in a coalescing set,
+ * so a vehicle updated ten times between flushes still occupies one slot and costs one row
+ * write. Every {@code flushIntervalMs}, or as soon as {@code batchSize} vehicles are pending,
+ * the set is drained and written from the state current at that moment as multi-row
+ * {@code INSERT ... ON DUPLICATE KEY UPDATE} statements of up to {@code batchSize} rows each. At most {@code queueCapacity} distinct vehicles can be pending;
+ * beyond that producers block until a flush frees room. A vehicle keeps its slot until its row
+ * is written: when a chunk fails, it and the rest of the flush go back into the set, and
+ * flushes back off, doubling the wait up to {@link #MAX_BACKOFF_MS}, until one succeeds; a full
+ * batch does not cut a backoff short. A row is only overwritten by a state at least as new as
+ * the one it holds.
+ */
+class VehicleBatchWriter {
+    private static final Logger log = LoggerFactory.getLogger(VehicleBatchWriter.class);
+    static final long MAX_BACKOFF_MS = 30_000;
+
+    private static final String INSERT_PREFIX = "INSERT INTO vehicles (id, driver_name, corridor, speed, fuel, status, " +
+            "vehicle_type, latitude, longitude, last_update) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // A row already holding a newer last_update keeps it, so a stale state (a restored replica, or a
+    // previous owner's late flush) cannot move the vehicle back; last_update is assigned last because
+    // the assignments are evaluated in order and the others compare against the old value.
+    private static final String STALE = "COALESCE(VALUES(last_update) < last_update, FALSE)";
+    private static final String UPDATE_SUFFIX = " ON DUPLICATE KEY UPDATE " + String.join(", ",
+            List.of("driver_name", "corridor", "speed", "fuel", "status", "vehicle_type", "latitude", "longitude",
+                    "last_update").stream()
+                    .map(c -> c + " = IF(" + STALE + ", " + c + ", VALUES(" + c + "))")
+                    .toList());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Function<String, VehicleState> currentState;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int capacity;
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // One permit per free slot; taken when an id enters the set and returned once a flush has written it
+    private final Semaphore slots;
+    private final String fullBatchSql;
+    // Held while flushing so a delete can never interleave with an upsert of the same row
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile boolean backingOff;
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    VehicleBatchWriter(JdbcTemplate jdbcTemplate, Function<String, VehicleState> currentState,
+                       int batchSize, long flushIntervalMs, int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.currentState = currentState;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.capacity = queueCapacity;
+        this.slots = new Semaphore(queueCapacity);
+        this.fullBatchSql = upsertSql(this.batchSize);
+        this.worker = new Thread(this::run, "vehicle-batch-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    static String upsertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * (ROW_PLACEHOLDERS.length() + 2)
+                + UPDATE_SUFFIX.length()).append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(ROW_PLACEHOLDERS);
+        }
+        return sql.append(UPDATE_SUFFIX).toString();
+    }
+
+    /**
+     * Marks a vehicle for the next flush. Already-pending vehicles are absorbed for free; a new one
+     * blocks while {@code queueCapacity} vehicles are pending, pushing back on the producer.
+     */
+    void markDirty(String id) {
+        if (dirty.contains(id)) {
+            coalesced.increment();
+            return;
+        }
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!dirty.add(id)) {
+            // Raced with another producer marking the same vehicle
+            slots.release();
+            coalesced.increment();
+        } else if (!backingOff && dirty.size() >= batchSize) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    int remainingCapacity() {
+        return slots.availablePermits();
+    }
+
+    int pending() {
+        return capacity - slots.availablePermits();
+    }
+
+    long flushCount() {
+        return flushes.sum();
+    }
+
+    long flushNanos() {
+        return flushNanos.sum();
+    }
+
+    long rowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    long failures() {
+        return failures.sum();
+    }
+
+    /** Runs {@code action} with flushing paused, e.g. to delete a row without it being re-inserted. */
+    void exclusive(Runnable action) {
+        flushLock.lock();
+        try {
+            action.run();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void run() {
+        long backoffMs = 0;
+        while (running) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs + backoffMs);
+            backingOff = backoffMs > 0;
+            // Unparked by markDirty once a full batch is pending; close() interrupts, which also unparks
+            while (running && (backingOff || dirty.size() < batchSize)) {
+                long waitNanos = deadline - System.nanoTime();
+                if (waitNanos <= 0) break;
+                LockSupport.parkNanos(this, waitNanos);
+            }
+            if (!running) break;
+            backoffMs = flush() ? 0 : Math.min(MAX_BACKOFF_MS, Math.max(flushIntervalMs, backoffMs * 2));
+        }
+    }
+
+    /** False when a chunk failed and its vehicles were put back for a later flush. */
+    private boolean flush() {
+        if (dirty.isEmpty()) return true;
+        long start = System.nanoTime();
+        flushLock.lock();
+        try {
+            // Removing each id before reading its state means an update landing mid-flush re-marks it
+            // for the next interval instead of being lost. Deleted vehicles resolve to null and are skipped.
+            List<VehicleState> rows = new ArrayList<>(dirty.size());
+            for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+                String id = it.next();
+                it.remove();
+                VehicleState v = currentState.apply(id);
+                if (v != null) rows.add(v);
+                else slots.release();
+            }
+            // Row locks are then taken in key order, like other writers of these rows, rather than hash order
+            rows.sort(Comparator.comparing(VehicleState::id));
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                List<VehicleState> chunk = rows.subList(from, Math.min(rows.size(), from + batchSize));
+                try {
+                    write(chunk);
+                    slots.release(chunk.size());
+                } catch (Exception e) {
+                    failures.increment();
+                    log.warn("Failed to flush {} vehicle rows; {} will be retried", chunk.size(), rows.size() - from, e);
+                    requeue(rows.subList(from, rows.size()));
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+            flushes.increment();
+            flushNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    // Each row still holds the slot it was marked with; a vehicle re-marked since has one of its own, so this one is returned
+    private void requeue(List<VehicleState> rows) {
+        for (VehicleState v : rows) {
+            if (!dirty.add(v.id())) slots.release();
+        }
+    }
+
+    private void write(List<VehicleState> chunk) {
+        String sql = chunk.size() == batchSize ? fullBatchSql : upsertSql(chunk.size());
+        jdbcTemplate.update(sql, ps -> {
+            int p = 1;
+            for (VehicleState v : chunk) {
+                ps.setString(p++, v.id());
+                ps.setString(p++, v.driverName());
+                ps.setString(p++, v.corridor());
+                ps.setDouble(p++, v.speed());
+                ps.setInt(p++, v.fuel());
+                ps.setString(p++, v.status());
+                ps.setString(p++, v.vehicleType());
+                ps.setDouble(p++, v.latitude());
+                ps.setDouble(p++, v.longitude());
+                ps.setTimestamp(p++, v.lastUpdate() != null ? Timestamp.from(v.lastUpdate()) : null);
+            }
+        });
+        rowsWritten.add(chunk.size());
+    }
+}
@@ -1,42 +1,378 @@
 package com.driveinsight.service;
 
-import com.driveinsight.model.Vehicle;
-import com.driveinsight.repo.VehicleRepository;
+import com.driveinsight.model.VehicleState;
+import com.driveinsight.ws.BinaryFeedFormat;
+import com.driveinsight.ws.FramePool;
+import com.driveinsight.ws.SubscriptionRegistry;
 import com.driveinsight.ws.VehicleWebSocketHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Coalesces fleet state changes and pushes them to WebSocket clients as one frame per tick.
+ * The frame carries only the fields that changed since the previous frame and is serialized
+ * once for all sessions. Sessions with subscription filters get a frame assembled from the
+ * already-serialized per-vehicle deltas that match their filters. Deltas only add up from a
+ * full picture, so a text session gets a {@code "snapshot":true} frame with the full record of
+ * every vehicle it follows when it connects, when its filters change and after its buffer dropped
+ * frames, and the full record of a vehicle that moves into its filters.
+ *
+ * <p>Sessions on the binary feed get the full position, speed, fuel and status of each changed
+ * vehicle in a {@link BinaryFeedFormat} frame, encoded once per tick into a pooled buffer. Vehicles
+ * are numbered the first time they are seen; the numbers, status codes and the fields that rarely
+ * change go out in {@code vehicle_dictionary} text frames, in full when a session switches to
+ * binary and then only for the entries that changed.
+ */
 @Component
 @EnableScheduling
-public class VehicleUpdateBroadcaster {
-    private final VehicleRepository vehicleRepository;
+public class VehicleUpdateBroadcaster implements FleetStateListener {
+    private static final Logger log = LoggerFactory.getLogger(VehicleUpdateBroadcaster.class);
+    // Marks a vehicle removed since the last tick
+    private static final VehicleState REMOVED = new VehicleState(null, null, null, 0, 0, null, null, 0, 0, null);
+    private static final int[] NO_REMOVALS = new int[0];
+
     private final VehicleWebSocketHandler wsHandler;
-    private final Random random = new Random();
+    private final SubscriptionRegistry subscriptions;
+    private final ObjectMapper objectMapper;
+    private final FramePool framePool;
+    // Latest state per vehicle since the last tick; later changes overwrite earlier ones
+    private final Map<String, VehicleState> pending = new ConcurrentHashMap<>();
+    // What clients were last sent, used to compute deltas; only touched by the tick thread
+    private final Map<String, VehicleState> sent = new HashMap<>();
+    // Binary feed dictionary; indexes are never reused, so a client's table only grows. Tick thread only
+    private final Map<String, Integer> indexes = new HashMap<>();
+    // Status codes are shared with the fleet columns; this is how many of them clients have been sent
+    private final CategoryDictionary statuses;
+    private int sentStatuses;
 
-    public VehicleUpdateBroadcaster(VehicleRepository vehicleRepository, VehicleWebSocketHandler wsHandler) {
-        this.vehicleRepository = vehicleRepository;
+    public VehicleUpdateBroadcaster(FleetStateStore fleetState, VehicleWebSocketHandler wsHandler,
+                                    SubscriptionRegistry subscriptions, ObjectMapper objectMapper, FramePool framePool,
+                                    FleetColumns columns) {
         this.wsHandler = wsHandler;
+        this.subscriptions = subscriptions;
+        this.objectMapper = objectMapper;
+        this.framePool = framePool;
+        this.statuses = columns.statuses();
+        fleetState.addListener(this);
+    }
+
+    @Override
+    public void onChange(VehicleState previous, VehicleState current) {
+        pending.put(previous != null ? previous.id() : current.id(), current != null ? current : REMOVED);
+    }
+
+    @Scheduled(fixedDelayString = "${fleet.broadcast.interval-ms:1000}")
+    @Timed(value = "fleet.broadcast.tick", histogram = true)
+    public void flush() {
+        List<String> joining = wsHandler.takeBinaryRequests();
+        List<String> resyncing = new ArrayList<>();
+        for (String sessionId : wsHandler.takeResyncRequests()) {
+            // Binary sessions recover by joining again, which resends the dictionary and a full frame;
+            // one about to join needs nothing else
+            if (joining.contains(sessionId)) continue;
+            if (wsHandler.isBinary(sessionId)) joining.add(sessionId);
+            else resyncing.add(sessionId);
+        }
+        if (pending.isEmpty() && joining.isEmpty() && resyncing.isEmpty()) return;
+        // These get a snapshot taken after this tick, so this tick's frames would only compete with it for
+        // buffer room; a snapshot larger than the buffer limit is dropped if it has to queue behind one
+        Set<String> snapshotting = new HashSet<>(resyncing);
+        for (String sessionId : joining) {
+            if (wsHandler.isBinary(sessionId)) snapshotting.add(sessionId);
+        }
+        // With nobody listening only the baseline is advanced; no deltas are built or serialized
+        boolean text = wsHandler.hasTextSessions();
+        boolean binary = wsHandler.hasBinarySessions();
+        boolean routed = (text || binary) && wsHandler.hasFilteredSessions();
+        List<String> fragments = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<VehicleState> changed = new ArrayList<>();
+        List<Map<String, Object>> entries = new ArrayList<>();
+        Map<String, StringJoiner> perSession = new HashMap<>();
+        Map<String, List<VehicleState>> perBinarySession = new HashMap<>();
+        Set<String> matches = new HashSet<>();
+        Set<String> followed = new HashSet<>();
+        for (String id : new ArrayList<>(pending.keySet())) {
+            VehicleState current = pending.remove(id);
+            if (current == null) continue;
+            if (current == REMOVED) {
+                if (sent.remove(id) != null) removed.add(id);
+                continue;
+            }
+            VehicleState last = sent.put(id, current);
+            int index = indexes.computeIfAbsent(id, k -> indexes.size());
+            if ((!text && !binary) || current.equals(last)) continue;
+            String fragment = null;
+            if (text) {
+                fragment = fragment(last, current);
+                if (fragment == null) continue;
+                fragments.add(fragment);
+            }
+            if (binary) {
+                changed.add(current);
+                statuses.code(current.status());
+                if (last == null || !Objects.equals(last.driverName(), current.driverName())
+                        || !Objects.equals(last.corridor(), current.corridor())
+                        || !Objects.equals(last.vehicleType(), current.vehicleType())) {
+                    entries.add(entry(index, current));
+                }
+            }
+            if (routed) {
+                // Match on the previous state too so subscribers see a vehicle leave their filter
+                matches.clear();
+                subscriptions.collectMatches(last, matches);
+                followed.clear();
+                followed.addAll(matches);
+                subscriptions.collectMatches(current, matches);
+                String full = null;
+                for (String sessionId : matches) {
+                    if (wsHandler.isBinary(sessionId)) {
+                        if (binary) perBinarySession.computeIfAbsent(sessionId, k -> new ArrayList<>()).add(current);
+                    } else if (fragment != null) {
+                        // A vehicle entering the session's filter is new to it, so the delta is not enough
+                        String f = fragment;
+                        if (!followed.contains(sessionId)) {
+                            if (full == null) full = fragment(null, current);
+                            if (full != null) f = full;
+                        }
+                        perSession.computeIfAbsent(sessionId, k -> new StringJoiner(",")).add(f);
+                    }
+                }
+            }
+        }
+        perSession.keySet().removeAll(snapshotting);
+        perBinarySession.keySet().removeAll(snapshotting);
+        if (text && (!fragments.isEmpty() || !removed.isEmpty())) {
+            sendJson(fragments, removed, perSession, routed, snapshotting);
+        }
+        if (binary && (!changed.isEmpty() || !removed.isEmpty())) {
+            boolean newStatuses = statuses.size() > sentStatuses;
+            String dictionary = entries.isEmpty() && !newStatuses ? null : dictionary(entries, newStatuses);
+            sendBinary(changed, removed.stream().mapToInt(indexes::get).toArray(), dictionary, perBinarySession, routed,
+                    snapshotting);
+        }
+        if (!joining.isEmpty()) join(joining);
+        if (!resyncing.isEmpty()) resync(resyncing);
+    }
+
+    private void sendJson(List<String> fragments, List<String> removed, Map<String, StringJoiner> perSession,
+                          boolean routed, Set<String> skip) {
+        String removedJson = removed.isEmpty() ? null : toJson(removed);
+        wsHandler.broadcastUnfiltered(frame(String.join(",", fragments), removedJson), skip);
+        if (!routed) return;
+        perSession.forEach((sessionId, joined) -> wsHandler.sendTo(List.of(sessionId), frame(joined.toString(), removedJson)));
+        if (removedJson != null) {
+            // Filtered sessions with no matching updates still need to hear about removals
+            List<String> others = new ArrayList<>();
+            wsHandler.filteredSessionIds(false).forEach(sid -> {
+                if (!perSession.containsKey(sid) && !skip.contains(sid)) others.add(sid);
+            });
+            wsHandler.sendTo(others, frame("", removedJson));
+        }
     }
 
-    @Scheduled(fixedRate = 10000)
-    public void simulateAndBroadcast() {
-        vehicleRepository.findAll().forEach(v -> {
-            if ("active".equalsIgnoreCase(v.getStatus())) {
-                double latChange = (random.nextDouble() - 0.5) * 0.001;
-                double lngChange = (random.nextDouble() - 0.5) * 0.001;
-                double speedChange = (random.nextDouble() - 0.5) * 5;
-                v.setLatitude(v.getLatitude() + latChange);
-                v.setLongitude(v.getLongitude() + lngChange);
-                v.setSpeed(Math.max(0, v.getSpeed() + speedChange));
-                vehicleRepository.save(v);
-                wsHandler.broadcast("{\"type\":\"vehicle_update\",\"vehicleId\":\"" + v.getId() + "\"}");
+    private void sendBinary(List<VehicleState> changed, int[] removed, String dictionary,
+                            Map<String, List<VehicleState>> perSession, boolean routed, Set<String> skip) {
+        FramePool.Frame all = encode(changed, removed);
+        try {
+            wsHandler.broadcastUnfiltered(dictionary, all, skip);
+        } finally {
+            all.release();
+        }
+        if (!routed) return;
+        perSession.forEach((sessionId, states) -> {
+            FramePool.Frame frame = encode(states, removed);
+            try {
+                wsHandler.sendTo(List.of(sessionId), dictionary, frame);
+            } finally {
+                frame.release();
             }
         });
+        if (removed.length == 0 && dictionary == null) return;
+        // Filtered sessions with no matching updates still need removals and dictionary changes
+        List<String> others = new ArrayList<>();
+        wsHandler.filteredSessionIds(true).forEach(sid -> {
+            if (!perSession.containsKey(sid) && !skip.contains(sid)) others.add(sid);
+        });
+        FramePool.Frame frame = removed.length > 0 ? encode(List.of(), removed) : null;
+        try {
+            wsHandler.sendTo(others, dictionary, frame);
+        } finally {
+            if (frame != null) frame.release();
+        }
     }
 
-    public record VehicleUpdate(String vehicleId) {}
-}
+    // Sessions switching to binary get the whole dictionary and the current state of every vehicle they follow
+    private void join(List<String> sessionIds) {
+        List<VehicleState> fleet = new ArrayList<>(sent.values());
+        fleet.forEach(v -> statuses.code(v.status()));
+        List<Map<String, Object>> all = new ArrayList<>(fleet.size());
+        fleet.forEach(v -> all.add(entry(indexes.get(v.id()), v)));
+        String dictionary = dictionary(all, true);
+        List<String> unfiltered = new ArrayList<>();
+        Map<String, List<VehicleState>> snapshots = new HashMap<>();
+        for (String sessionId : sessionIds) {
+            if (subscriptions.isFiltered(sessionId)) snapshots.put(sessionId, new ArrayList<>());
+            else unfiltered.add(sessionId);
+        }
+        if (!snapshots.isEmpty()) {
+            Set<String> matches = new HashSet<>();
+            for (VehicleState v : fleet) {
+                matches.clear();
+                subscriptions.collectMatches(v, matches);
+                for (String sessionId : matches) {
+                    List<VehicleState> snapshot = snapshots.get(sessionId);
+                    if (snapshot != null) snapshot.add(v);
+                }
+            }
+        }
+        if (!unfiltered.isEmpty()) sendSnapshot(unfiltered, dictionary, fleet);
+        snapshots.forEach((sessionId, states) -> sendSnapshot(List.of(sessionId), dictionary, states));
+        wsHandler.activateBinary(sessionIds);
+    }
 
+    // Text sessions get the full record of every vehicle they follow, taken after this tick's changes
+    private void resync(List<String> sessionIds) {
+        List<String> unfiltered = new ArrayList<>();
+        Map<String, StringJoiner> filtered = new HashMap<>();
+        for (String sessionId : sessionIds) {
+            if (subscriptions.isFiltered(sessionId)) filtered.put(sessionId, new StringJoiner(","));
+            else unfiltered.add(sessionId);
+        }
+        StringJoiner all = unfiltered.isEmpty() ? null : new StringJoiner(",");
+        Set<String> matches = new HashSet<>();
+        for (VehicleState v : sent.values()) {
+            String fragment = null;
+            if (all != null) {
+                fragment = fragment(null, v);
+                if (fragment != null) all.add(fragment);
+            }
+            if (filtered.isEmpty()) continue;
+            matches.clear();
+            subscriptions.collectMatches(v, matches);
+            for (String sessionId : matches) {
+                StringJoiner joined = filtered.get(sessionId);
+                if (joined == null) continue;
+                if (fragment == null) fragment = fragment(null, v);
+                if (fragment != null) joined.add(fragment);
+            }
+        }
+        if (all != null) wsHandler.sendTo(unfiltered, snapshotFrame(all.toString()));
+        filtered.forEach((sessionId, joined) -> wsHandler.sendTo(List.of(sessionId), snapshotFrame(joined.toString())));
+    }
+
+    private void sendSnapshot(List<String> sessionIds, String dictionary, List<VehicleState> states) {
+        FramePool.Frame frame = encode(states, NO_REMOVALS);
+        try {
+            wsHandler.sendTo(sessionIds, dictionary, frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private FramePool.Frame encode(List<VehicleState> states, int[] removed) {
+        FramePool.Frame frame = framePool.acquire(BinaryFeedFormat.frameSize(states.size(), removed.length));
+        ByteBuffer buf = frame.buffer();
+        BinaryFeedFormat.writeHeader(buf, states.size(), removed.length);
+        for (VehicleState v : states) {
+            BinaryFeedFormat.writeUpdate(buf, indexes.get(v.id()), v, statusCode(v.status()));
+        }
+        for (int index : removed) {
+            BinaryFeedFormat.writeRemoved(buf, index);
+        }
+        return frame;
+    }
+
+    private int statusCode(String status) {
+        int code = statuses.code(status);
+        return code == CategoryDictionary.NONE || code >= BinaryFeedFormat.MAX_STATUSES ? BinaryFeedFormat.NO_STATUS : code;
+    }
+
+    private static Map<String, Object> entry(int index, VehicleState v) {
+        Map<String, Object> e = new LinkedHashMap<>();
+        e.put("index", index);
+        e.put("id", v.id());
+        e.put("driverName", v.driverName());
+        e.put("corridor", v.corridor());
+        e.put("vehicleType", v.vehicleType());
+        return e;
+    }
+
+    private String dictionary(List<Map<String, Object>> entries, boolean withStatuses) {
+        Map<String, Object> d = new LinkedHashMap<>();
+        d.put("type", "vehicle_dictionary");
+        if (withStatuses) {
+            // Taken after this tick's statuses were coded, so it covers every code in its frames
+            List<String> names = statuses.names();
+            d.put("statuses", names);
+            sentStatuses = names.size();
+        }
+        d.put("vehicles", entries);
+        try {
+            return objectMapper.writeValueAsString(d);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize the vehicle dictionary", e);
+            return null;
+        }
+    }
+
+    private String toJson(List<String> ids) {
+        try {
+            return objectMapper.writeValueAsString(ids);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize removed vehicle ids", e);
+            return null;
+        }
+    }
+
+    /** The serialized delta from {@code last} to {@code current}, the full record when last is null; null when unchanged. */
+    private String fragment(VehicleState last, VehicleState current) {
+        Map<String, Object> delta = delta(last, current);
+        if (delta == null) return null;
+        try {
+            return objectMapper.writeValueAsString(delta);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize update for vehicle {}", current.id(), e);
+            return null;
+        }
+    }
+
+    // A snapshot replaces the client's picture: vehicles it does not list are gone or no longer followed
+    private static String snapshotFrame(String joinedFragments) {
+        return "{\"type\":\"vehicle_update\",\"snapshot\":true,\"vehicles\":[" + joinedFragments + "]}";
+    }
+
+    // Fragments are already-serialized delta objects, so the frame is assembled without re-encoding
+    private static String frame(String joinedFragments, String removedJson) {
+        StringBuilder sb = new StringBuilder(joinedFragments.length() + 64);
+        sb.append("{\"type\":\"vehicle_update\",\"vehicles\":[").append(joinedFragments).append(']');
+        if (removedJson != null) sb.append(",\"removed\":").append(removedJson);
+        return sb.append('}').toString();
+    }
+
+    /** Changed fields of {@code current} relative to {@code last}, or null when nothing changed. */
+    static Map<String, Object> delta(VehicleState last, VehicleState current) {
+        Map<String, Object> d = new LinkedHashMap<>();
+        d.put("id", current.id());
+        if (last == null || !Objects.equals(last.driverName(), current.driverName())) d.put("driverName", current.driverName());
+        if (last == null || !Objects.equals(last.corridor(), current.corridor())) d.put("corridor", current.corridor());
+        if (last == null || last.speed() != current.speed()) d.put("speed", current.speed());
+        if (last == null || last.fuel() != current.fuel()) d.put("fuel", current.fuel());
+        if (last == null || !Objects.equals(last.status(), current.status())) d.put("status", current.status());
+        if (last == null || !Objects.equals(last.vehicleType(), current.vehicleType())) d.put("vehicleType", current.vehicleType());
+        if (last == null || last.latitude() != current.latitude()) d.put("latitude", current.latitude());
+        if (last == null || last.longitude() != current.longitude()) d.put("longitude", current.longitude());
+        if (last == null || !Objects.equals(last.lastUpdate(), current.lastUpdate())) d.put("lastUpdate", current.lastUpdate());
+        return d.size() > 1 ? d : null;
+    }
+}
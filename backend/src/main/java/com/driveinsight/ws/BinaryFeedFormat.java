@@ -0,0 +1,55 @@
+package com.driveinsight.ws;
+
+import com.driveinsight.model.VehicleState;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the binary live feed, sent as {@code BinaryMessage} frames to sessions that asked for
+ * it with {@code {"action":"format","format":"binary"}}. All values are big-endian:
+ *
+ * <pre>
+ * frame     type:1 version:1 updates:4 removed:4 update[updates] index:4[removed]
+ * update    index:4 lat:4 lng:4 speed:2 fuel:1 status:1 lastUpdate:8     24 bytes
+ * </pre>
+ *
+ * lat/lng are in 1e-6 degrees, speed is unsigned in 0.1 km/h, fuel is unsigned percent and
+ * lastUpdate is epoch millis, 0 when unknown. Vehicle indexes and status codes refer to the
+ * {@code vehicle_dictionary} text frames, which also carry the driver, corridor and vehicle type,
+ * so a client holds the full state of every vehicle without asking the REST API.
+ */
+public final class BinaryFeedFormat {
+    public static final byte VEHICLE_UPDATE = 1;
+    public static final byte VERSION = 1;
+    public static final int HEADER_BYTES = 1 + 1 + 4 + 4;
+    public static final int UPDATE_BYTES = 24;
+    public static final int REMOVED_BYTES = 4;
+    /** Status code for a null status or one beyond the dictionary's capacity. */
+    public static final int NO_STATUS = 255;
+    public static final int MAX_STATUSES = 255;
+
+    private BinaryFeedFormat() {
+    }
+
+    public static int frameSize(int updates, int removed) {
+        return HEADER_BYTES + updates * UPDATE_BYTES + removed * REMOVED_BYTES;
+    }
+
+    public static void writeHeader(ByteBuffer buf, int updates, int removed) {
+        buf.put(VEHICLE_UPDATE).put(VERSION).putInt(updates).putInt(removed);
+    }
+
+    public static void writeUpdate(ByteBuffer buf, int index, VehicleState v, int statusCode) {
+        buf.putInt(index)
+                .putInt((int) Math.round(v.latitude() * 1e6))
+                .putInt((int) Math.round(v.longitude() * 1e6))
+                .putShort((short) Math.max(0, Math.min(0xFFFF, Math.round(v.speed() * 10))))
+                .put((byte) Math.max(0, Math.min(255, v.fuel())))
+                .put((byte) statusCode)
+                .putLong(v.lastUpdate() != null ? v.lastUpdate().toEpochMilli() : 0);
+    }
+
+    public static void writeRemoved(ByteBuffer buf, int index) {
+        buf.putInt(index);
+    }
+}
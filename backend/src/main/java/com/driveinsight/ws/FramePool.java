@@ -0,0 +1,104 @@
+package com.driveinsight.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable buffers for binary feed frames. A frame is encoded once and shared by every session it
+ * goes to; each pending send holds a reference, and the buffer returns to the pool when the last
+ * one is released, which happens after the frame is written to the socket, or when a busy session
+ * queues a copy instead. Frames stranded in the buffer of a session that closed are simply left
+ * to the garbage collector.
+ */
+@Component
+public class FramePool {
+    private final BlockingQueue<ByteBuffer> free;
+    private final int bufferBytes;
+    private final int maxPooledBytes;
+    private final Counter allocations;
+
+    public FramePool(MeterRegistry meterRegistry,
+                     @Value("${fleet.ws.binary.pool-size:16}") int poolSize,
+                     @Value("${fleet.ws.binary.buffer-bytes:65536}") int bufferBytes,
+                     @Value("${fleet.ws.binary.max-pooled-bytes:4194304}") int maxPooledBytes) {
+        this.free = new ArrayBlockingQueue<>(poolSize);
+        this.bufferBytes = bufferBytes;
+        this.maxPooledBytes = maxPooledBytes;
+        this.allocations = Counter.builder("fleet.ws.frames.allocated")
+                .description("Frame buffers allocated because the pool had none large enough")
+                .register(meterRegistry);
+        Gauge.builder("fleet.ws.frames.pooled", free, BlockingQueue::size)
+                .description("Idle frame buffers in the pool")
+                .register(meterRegistry);
+    }
+
+    /** A frame with room for {@code size} bytes, holding one reference for the caller. */
+    public Frame acquire(int size) {
+        ByteBuffer buf = free.poll();
+        if (buf == null || buf.capacity() < size) {
+            // A pooled buffer that is too small is dropped so the pool drifts towards the frame sizes in use
+            buf = ByteBuffer.allocate(Math.max(size, bufferBytes));
+            allocations.increment();
+        }
+        buf.clear().limit(size);
+        return new Frame(buf);
+    }
+
+    private void recycle(ByteBuffer buf) {
+        if (buf.capacity() <= maxPooledBytes) free.offer(buf);
+    }
+
+    /**
+     * One encoded frame. Sessions send it like any other message; the session wrapper in
+     * {@link WebSocketSessionManager} turns it into a {@code BinaryMessage} and releases it.
+     */
+    public final class Frame implements WebSocketMessage<ByteBuffer> {
+        private final ByteBuffer buf;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Frame(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        /** The buffer to encode into; it must be full (position at limit) before the frame is sent. */
+        public ByteBuffer buffer() {
+            return buf;
+        }
+
+        public Frame retain() {
+            refs.incrementAndGet();
+            return this;
+        }
+
+        public void release() {
+            if (refs.decrementAndGet() == 0) recycle(buf);
+        }
+
+        /** A view of the encoded bytes with its own position, so concurrent sends do not interfere. */
+        @Override
+        public ByteBuffer getPayload() {
+            ByteBuffer view = buf.duplicate();
+            view.flip();
+            return view;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return buf.position();
+        }
+
+        @Override
+        public boolean isLast() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.driveinsight.ws;
+
+import java.util.List;
+
+/**
+ * Client message on /ws, e.g. {@code {"action":"subscribe","corridor":"Beira"}},
+ * {@code {"action":"subscribe","bbox":[minLat,minLng,maxLat,maxLng]}} or
+ * {@code {"action":"unsubscribe","vehicleIds":["V-001"]}}. An unsubscribe without any
+ * filter clears all of the session's subscriptions. {@code {"action":"format","format":"binary"}}
+ * switches the session to the binary feed described in {@link BinaryFeedFormat}, and
+ * {@code "json"} switches it back.
+ */
+public record SubscriptionMessage(String action, String corridor, List<String> vehicleIds, double[] bbox, String format) {
+}
@@ -0,0 +1,187 @@
+package com.driveinsight.ws;
+
+import com.driveinsight.model.VehicleState;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session subscription filters for the live feed, indexed by key so that routing an update
+ * only looks at the sessions that can match it. Corridors and vehicle ids map directly to
+ * sessions; bounding boxes are registered in every 1-degree grid cell they overlap, and very
+ * wide boxes are kept in a short list that is checked for every update.
+ *
+ * <p>Sessions without any subscription receive the whole fleet.
+ */
+@Component
+public class SubscriptionRegistry {
+    private static final double CELL_DEGREES = 1.0;
+    private static final int MAX_CELLS_PER_BOX = 256;
+
+    public record BoundingBox(double minLat, double minLng, double maxLat, double maxLng) {
+        public boolean contains(double lat, double lng) {
+            return lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng;
+        }
+    }
+
+    private record BoxSubscription(String sessionId, BoundingBox box) {}
+
+    private static final class SessionFilters {
+        final Set<String> corridors = ConcurrentHashMap.newKeySet();
+        final Set<String> vehicleIds = ConcurrentHashMap.newKeySet();
+        final Set<BoundingBox> boxes = ConcurrentHashMap.newKeySet();
+
+        boolean isEmpty() {
+            return corridors.isEmpty() && vehicleIds.isEmpty() && boxes.isEmpty();
+        }
+    }
+
+    private final Map<String, SessionFilters> filters = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byCorridor = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byVehicle = new ConcurrentHashMap<>();
+    private final Map<Long, Set<BoxSubscription>> byCell = new ConcurrentHashMap<>();
+    private final Set<BoxSubscription> wideBoxes = ConcurrentHashMap.newKeySet();
+
+    public boolean isFiltered(String sessionId) {
+        SessionFilters f = filters.get(sessionId);
+        return f != null && !f.isEmpty();
+    }
+
+    public boolean hasFilteredSessions() {
+        return !filters.isEmpty();
+    }
+
+    public synchronized void subscribeCorridor(String sessionId, String corridor) {
+        String key = normalize(corridor);
+        session(sessionId).corridors.add(key);
+        byCorridor.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
+    }
+
+    public synchronized void unsubscribeCorridor(String sessionId, String corridor) {
+        String key = normalize(corridor);
+        SessionFilters f = filters.get(sessionId);
+        if (f != null) f.corridors.remove(key);
+        removeFrom(byCorridor, key, sessionId);
+        dropIfEmpty(sessionId);
+    }
+
+    public synchronized void subscribeVehicles(String sessionId, Collection<String> vehicleIds) {
+        SessionFilters f = session(sessionId);
+        for (String id : vehicleIds) {
+            f.vehicleIds.add(id);
+            byVehicle.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
+        }
+    }
+
+    public synchronized void unsubscribeVehicles(String sessionId, Collection<String> vehicleIds) {
+        SessionFilters f = filters.get(sessionId);
+        for (String id : vehicleIds) {
+            if (f != null) f.vehicleIds.remove(id);
+            removeFrom(byVehicle, id, sessionId);
+        }
+        dropIfEmpty(sessionId);
+    }
+
+    public synchronized void subscribeBox(String sessionId, BoundingBox box) {
+        if (!session(sessionId).boxes.add(box)) return;
+        BoxSubscription sub = new BoxSubscription(sessionId, box);
+        List<Long> cells = cells(box);
+        if (cells == null) {
+            wideBoxes.add(sub);
+        } else {
+            cells.forEach(c -> byCell.computeIfAbsent(c, k -> ConcurrentHashMap.newKeySet()).add(sub));
+        }
+    }
+
+    public synchronized void unsubscribeBox(String sessionId, BoundingBox box) {
+        SessionFilters f = filters.get(sessionId);
+        if (f == null || !f.boxes.remove(box)) return;
+        BoxSubscription sub = new BoxSubscription(sessionId, box);
+        List<Long> cells = cells(box);
+        if (cells == null) {
+            wideBoxes.remove(sub);
+        } else {
+            cells.forEach(c -> removeFrom(byCell, c, sub));
+        }
+        dropIfEmpty(sessionId);
+    }
+
+    /** Drops every filter of the session, returning it to the whole-fleet feed. */
+    public synchronized void unsubscribeAll(String sessionId) {
+        SessionFilters f = filters.remove(sessionId);
+        if (f == null) return;
+        f.corridors.forEach(c -> removeFrom(byCorridor, c, sessionId));
+        f.vehicleIds.forEach(v -> removeFrom(byVehicle, v, sessionId));
+        for (BoundingBox box : f.boxes) {
+            BoxSubscription sub = new BoxSubscription(sessionId, box);
+            List<Long> cells = cells(box);
+            if (cells == null) wideBoxes.remove(sub);
+            else cells.forEach(c -> removeFrom(byCell, c, sub));
+        }
+    }
+
+    /** Filtered sessions interested in a vehicle at state {@code v}. */
+    public void collectMatches(VehicleState v, Set<String> into) {
+        if (v == null) return;
+        Set<String> s = byVehicle.get(v.id());
+        if (s != null) into.addAll(s);
+        if (v.corridor() != null) {
+            s = byCorridor.get(normalize(v.corridor()));
+            if (s != null) into.addAll(s);
+        }
+        Set<BoxSubscription> boxes = byCell.get(cell(v.latitude(), v.longitude()));
+        if (boxes != null) {
+            for (BoxSubscription b : boxes) {
+                if (b.box().contains(v.latitude(), v.longitude())) into.add(b.sessionId());
+            }
+        }
+        for (BoxSubscription b : wideBoxes) {
+            if (b.box().contains(v.latitude(), v.longitude())) into.add(b.sessionId());
+        }
+    }
+
+    private SessionFilters session(String sessionId) {
+        return filters.computeIfAbsent(sessionId, k -> new SessionFilters());
+    }
+
+    private void dropIfEmpty(String sessionId) {
+        SessionFilters f = filters.get(sessionId);
+        if (f != null && f.isEmpty()) filters.remove(sessionId);
+    }
+
+    private static <K, V> void removeFrom(Map<K, Set<V>> index, K key, V value) {
+        index.computeIfPresent(key, (k, set) -> {
+            set.remove(value);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static String normalize(String corridor) {
+        return corridor.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long cell(double lat, double lng) {
+        return key((long) Math.floor(lat / CELL_DEGREES), (long) Math.floor(lng / CELL_DEGREES));
+    }
+
+    private static long key(long row, long col) {
+        return (row << 32) ^ (col & 0xffffffffL);
+    }
+
+    // null when the box is too large to index cell by cell
+    private static List<Long> cells(BoundingBox box) {
+        long minRow = (long) Math.floor(box.minLat() / CELL_DEGREES);
+        long maxRow = (long) Math.floor(box.maxLat() / CELL_DEGREES);
+        long minCol = (long) Math.floor(box.minLng() / CELL_DEGREES);
+        long maxCol = (long) Math.floor(box.maxLng() / CELL_DEGREES);
+        if ((maxRow - minRow + 1) * (maxCol - minCol + 1) > MAX_CELLS_PER_BOX) return null;
+        List<Long> cells = new ArrayList<>();
+        for (long r = minRow; r <= maxRow; r++) {
+            for (long c = minCol; c <= maxCol; c++) {
+                cells.add(key(r, c));
+            }
+        }
+        return cells;
+    }
+}
@@ -1,39 +1,183 @@
 package com.driveinsight.ws;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class VehicleWebSocketHandler implements WebSocketHandler {
+    private static final Logger log = LoggerFactory.getLogger(VehicleWebSocketHandler.class);
+
     private final WebSocketSessionManager sessionManager;
+    private final SubscriptionRegistry subscriptions;
+    private final ObjectMapper objectMapper;
+    // Sends run off the caller's thread; the session decorator keeps a slow client to one blocked sender
+    private final ThreadPoolExecutor sendExecutor;
+    private final Timer sendTimer;
+    private final Counter slowDrops;
+    private final Counter sendFailures;
+    private final Counter resyncs;
+    // Sessions on the binary feed, and those that asked for it but have not been sent a dictionary yet
+    private final Set<String> binarySessions = ConcurrentHashMap.newKeySet();
+    private final Queue<String> binaryRequests = new ConcurrentLinkedQueue<>();
+    // Sessions that need the full state of what they follow: new ones, those back on JSON or with changed filters, and those that missed frames
+    private final Queue<String> resyncRequests = new ConcurrentLinkedQueue<>();
 
-    public VehicleWebSocketHandler(WebSocketSessionManager sessionManager) {
+    public VehicleWebSocketHandler(WebSocketSessionManager sessionManager,
+                                   SubscriptionRegistry subscriptions,
+                                   ObjectMapper objectMapper,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${fleet.ws.send-threads:4}") int sendThreads) {
         this.sessionManager = sessionManager;
+        this.subscriptions = subscriptions;
+        this.objectMapper = objectMapper;
+        AtomicInteger n = new AtomicInteger();
+        this.sendExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread t = new Thread(r, "ws-send-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // With the decorator, send time is mostly the hand-off unless this sender ends up flushing the buffer
+        this.sendTimer = Timer.builder("fleet.ws.send")
+                .description("Time spent handing a frame to a WebSocket session")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.slowDrops = Counter.builder("fleet.ws.dropped")
+                .tag("reason", "slow")
+                .description("Sessions closed for exceeding the send time or buffer limit")
+                .register(meterRegistry);
+        this.sendFailures = Counter.builder("fleet.ws.dropped")
+                .tag("reason", "error")
+                .description("Sessions removed after a failed send")
+                .register(meterRegistry);
+        this.resyncs = Counter.builder("fleet.ws.resyncs")
+                .description("Snapshots sent to sessions that dropped frames")
+                .register(meterRegistry);
+        Gauge.builder("fleet.ws.sessions", sessionManager, m -> m.getSessions().size())
+                .register(meterRegistry);
+        Gauge.builder("fleet.ws.send.queue", sendExecutor, e -> e.getQueue().size())
+                .description("Sends waiting for a ws-send thread")
+                .register(meterRegistry);
+        Gauge.builder("fleet.ws.buffered", sessionManager, m -> bufferedBytes(m, false))
+                .baseUnit("bytes")
+                .description("Bytes buffered across all sessions behind an in-flight send")
+                .register(meterRegistry);
+        Gauge.builder("fleet.ws.buffered.max", sessionManager, m -> bufferedBytes(m, true))
+                .baseUnit("bytes")
+                .description("Largest per-session send buffer")
+                .register(meterRegistry);
+    }
+
+    private static double bufferedBytes(WebSocketSessionManager manager, boolean max) {
+        long total = 0;
+        long largest = 0;
+        for (WebSocketSession s : manager.getSessions()) {
+            if (s instanceof ConcurrentWebSocketSessionDecorator d) {
+                int size = d.getBufferSize();
+                total += size;
+                largest = Math.max(largest, size);
+            }
+        }
+        return max ? largest : total;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         sessionManager.addSession(session);
+        resyncRequests.add(session.getId());
     }
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
-        // No-op for now
+        if (!(message instanceof TextMessage text)) return;
+        SubscriptionMessage msg;
+        try {
+            msg = objectMapper.readValue(text.getPayload(), SubscriptionMessage.class);
+        } catch (Exception e) {
+            reply(session, Map.of("type", "error", "message", "malformed message"));
+            return;
+        }
+        if ("format".equalsIgnoreCase(msg.action())) {
+            if ("binary".equalsIgnoreCase(msg.format())) {
+                if (!binarySessions.contains(session.getId())) binaryRequests.add(session.getId());
+            } else if ("json".equalsIgnoreCase(msg.format())) {
+                if (binarySessions.remove(session.getId())) resyncRequests.add(session.getId());
+            } else {
+                reply(session, Map.of("type", "error", "message", "format must be json or binary"));
+            }
+            return;
+        }
+        boolean subscribe = "subscribe".equalsIgnoreCase(msg.action());
+        if (!subscribe && !"unsubscribe".equalsIgnoreCase(msg.action())) {
+            reply(session, Map.of("type", "error", "message", "unknown action: " + msg.action()));
+            return;
+        }
+        SubscriptionRegistry.BoundingBox box = null;
+        if (msg.bbox() != null) {
+            double[] b = msg.bbox();
+            if (b.length != 4 || b[0] > b[2] || b[1] > b[3]) {
+                reply(session, Map.of("type", "error", "message", "bbox must be [minLat, minLng, maxLat, maxLng]"));
+                return;
+            }
+            box = new SubscriptionRegistry.BoundingBox(b[0], b[1], b[2], b[3]);
+        }
+        String id = session.getId();
+        if (!subscribe && msg.corridor() == null && msg.vehicleIds() == null && box == null) {
+            subscriptions.unsubscribeAll(id);
+        } else if (subscribe) {
+            if (msg.corridor() != null) subscriptions.subscribeCorridor(id, msg.corridor());
+            if (msg.vehicleIds() != null) subscriptions.subscribeVehicles(id, msg.vehicleIds());
+            if (box != null) subscriptions.subscribeBox(id, box);
+        } else {
+            if (msg.corridor() != null) subscriptions.unsubscribeCorridor(id, msg.corridor());
+            if (msg.vehicleIds() != null) subscriptions.unsubscribeVehicles(id, msg.vehicleIds());
+            if (box != null) subscriptions.unsubscribeBox(id, box);
+        }
+        // What the session follows changed, so it gets a snapshot of its new set
+        resyncRequests.add(id);
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         sessionManager.removeSession(session);
+        subscriptions.unsubscribeAll(session.getId());
+        binarySessions.remove(session.getId());
         session.close(CloseStatus.SERVER_ERROR);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
         sessionManager.removeSession(session);
+        subscriptions.unsubscribeAll(session.getId());
+        binarySessions.remove(session.getId());
     }
 
     @Override
@@ -41,14 +185,157 @@ public class VehicleWebSocketHandler implements WebSocketHandler {
         return false;
     }
 
+    public boolean hasSessions() {
+        return !sessionManager.getSessions().isEmpty();
+    }
+
+    public boolean hasFilteredSessions() {
+        return subscriptions.hasFilteredSessions();
+    }
+
+    public boolean hasBinarySessions() {
+        return !binarySessions.isEmpty();
+    }
+
+    public boolean hasTextSessions() {
+        return sessionManager.getSessions().size() > binarySessions.size();
+    }
+
+    public boolean isBinary(String sessionId) {
+        return binarySessions.contains(sessionId);
+    }
+
+    /** Sessions that asked for the binary feed since the last call and are still open. */
+    public List<String> takeBinaryRequests() {
+        List<String> ids = new ArrayList<>();
+        for (String id; (id = binaryRequests.poll()) != null; ) {
+            if (sessionManager.getSession(id) != null && !binarySessions.contains(id) && !ids.contains(id)) ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Open sessions that need a snapshot: those connected, switched back to JSON or resubscribed
+     * since the last call, and those whose buffer dropped frames since then, whose deltas no longer add up.
+     */
+    public List<String> takeResyncRequests() {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String id; (id = resyncRequests.poll()) != null; ) {
+            if (sessionManager.getSession(id) != null) ids.add(id);
+        }
+        for (WebSocketSession s : sessionManager.getSessions()) {
+            if (sessionManager.takeDropped(s) && ids.add(s.getId())) resyncs.increment();
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Moves sessions onto the binary feed, once they have been sent the dictionary and a full frame. */
+    public void activateBinary(Collection<String> sessionIds) {
+        sessionIds.forEach(id -> {
+            // A session that closed in the meantime must not linger in the set
+            if (sessionManager.getSession(id) != null) binarySessions.add(id);
+        });
+    }
+
+    /** Fans one pre-serialized frame out to every open session, whatever its feed format, without blocking the caller. */
     public void broadcast(String json) {
+        TextMessage message = new TextMessage(json);
+        sessionManager.getSessions().forEach(s -> sendExecutor.execute(() -> send(s, message)));
+    }
+
+    public List<String> filteredSessionIds(boolean binary) {
+        List<String> ids = new ArrayList<>();
         sessionManager.getSessions().forEach(s -> {
-            try {
-                if (s.isOpen()) {
-                    s.sendMessage(new TextMessage(json));
-                }
-            } catch (Exception ignored) {}
+            if (subscriptions.isFiltered(s.getId()) && isBinary(s.getId()) == binary) ids.add(s.getId());
+        });
+        return ids;
+    }
+
+    /** Sends a JSON feed frame to the text sessions that have no subscription filters, except {@code skip}. */
+    public void broadcastUnfiltered(String json, Set<String> skip) {
+        TextMessage message = new TextMessage(json);
+        sessionManager.getSessions().forEach(s -> {
+            if (!subscriptions.isFiltered(s.getId()) && !isBinary(s.getId()) && !skip.contains(s.getId())) {
+                sendExecutor.execute(() -> send(s, message));
+            }
+        });
+    }
+
+    /**
+     * Sends an optional dictionary update followed by an optional binary frame to the binary sessions
+     * that have no subscription filters, except {@code skip}. The caller keeps its own reference to the frame.
+     */
+    public void broadcastUnfiltered(String dictionaryJson, FramePool.Frame frame, Set<String> skip) {
+        TextMessage dictionary = dictionaryJson != null ? new TextMessage(dictionaryJson) : null;
+        sessionManager.getSessions().forEach(s -> {
+            if (!subscriptions.isFiltered(s.getId()) && isBinary(s.getId()) && !skip.contains(s.getId())) {
+                sendBinary(s, dictionary, frame);
+            }
+        });
+    }
+
+    public void sendTo(Collection<String> sessionIds, String json) {
+        TextMessage message = new TextMessage(json);
+        sessionIds.forEach(id -> {
+            WebSocketSession s = sessionManager.getSession(id);
+            if (s != null) sendExecutor.execute(() -> send(s, message));
         });
     }
-}
 
+    /** Like {@link #broadcastUnfiltered(String, FramePool.Frame, Set)} for the given sessions. */
+    public void sendTo(Collection<String> sessionIds, String dictionaryJson, FramePool.Frame frame) {
+        TextMessage dictionary = dictionaryJson != null ? new TextMessage(dictionaryJson) : null;
+        sessionIds.forEach(id -> {
+            WebSocketSession s = sessionManager.getSession(id);
+            if (s != null) sendBinary(s, dictionary, frame);
+        });
+    }
+
+    // One task per session keeps the dictionary ahead of the frame that refers to it
+    private void sendBinary(WebSocketSession session, TextMessage dictionary, FramePool.Frame frame) {
+        if (frame != null) frame.retain();
+        sendExecutor.execute(() -> {
+            if (dictionary != null) send(session, dictionary);
+            if (frame != null) send(session, frame);
+        });
+    }
+
+    private void reply(WebSocketSession session, Map<String, Object> body) {
+        WebSocketSession decorated = sessionManager.getSession(session.getId());
+        if (decorated == null) return;
+        try {
+            TextMessage message = new TextMessage(objectMapper.writeValueAsString(body));
+            sendExecutor.execute(() -> send(decorated, message));
+        } catch (Exception e) {
+            log.debug("Failed to encode reply", e);
+        }
+    }
+
+    private void send(WebSocketSession session, WebSocketMessage<?> message) {
+        if (!session.isOpen()) {
+            sessionManager.removeSession(session);
+            if (message instanceof FramePool.Frame frame) frame.release();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            session.sendMessage(message);
+        } catch (SessionLimitExceededException e) {
+            // The decorator has already closed the session; it was too slow to keep up
+            log.info("Dropping slow WebSocket session {}: {}", session.getId(), e.getMessage());
+            slowDrops.increment();
+            sessionManager.removeSession(session);
+        } catch (Exception e) {
+            log.debug("WebSocket send to {} failed", session.getId(), e);
+            sendFailures.increment();
+            sessionManager.removeSession(session);
+        } finally {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdownNow();
+    }
+}
@@ -1,26 +1,121 @@
 package com.driveinsight.ws;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
 
-import java.util.Collections;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Tracks open sessions. Each session is wrapped in a {@link ConcurrentWebSocketSessionDecorator}
+ * so that sends never queue behind a slow client: while one send is in flight further messages
+ * are buffered up to {@code bufferSizeLimit} bytes, and the oldest are dropped beyond that.
+ *
+ * <p>Pooled binary frames are released only once written. The decorator does not report what it
+ * drops, so a frame that would wait in the buffer behind a send in progress is copied and its
+ * pooled buffer released straight away; only frames sent on an idle session go out from the pool.
+ *
+ * <p>Drops are counted instead: once a session's buffer is idle, any message accepted but never
+ * written was dropped, and {@link #takeDropped} tells the feed that the session needs a full snapshot.
+ */
 @Component
 public class WebSocketSessionManager {
-    private final Set<WebSocketSession> sessions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final int sendTimeLimitMs;
+    private final int bufferSizeLimit;
+
+    public WebSocketSessionManager(@Value("${fleet.ws.send-time-limit-ms:5000}") int sendTimeLimitMs,
+                                   @Value("${fleet.ws.buffer-size-limit:524288}") int bufferSizeLimit) {
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
 
     public void addSession(WebSocketSession session) {
-        sessions.add(session);
+        sessions.put(session.getId(), new BufferedSession(new FrameSendingSession(session), sendTimeLimitMs, bufferSizeLimit));
     }
 
     public void removeSession(WebSocketSession session) {
-        sessions.remove(session);
+        sessions.remove(session.getId());
     }
 
-    public Set<WebSocketSession> getSessions() {
-        return sessions;
+    public WebSocketSession getSession(String id) {
+        return sessions.get(id);
     }
-}
 
+    public Collection<WebSocketSession> getSessions() {
+        return sessions.values();
+    }
+
+    /** True if messages to the session were dropped since the previous call that returned true. */
+    public boolean takeDropped(WebSocketSession session) {
+        return session instanceof BufferedSession b && b.takeDropped();
+    }
+
+    private static final class BufferedSession extends ConcurrentWebSocketSessionDecorator {
+        private final FrameSendingSession writer;
+        // Counted after the decorator returns, so a concurrent send can only make the loss look smaller
+        private final AtomicLong accepted = new AtomicLong();
+        private final AtomicLong reportedLoss = new AtomicLong();
+
+        BufferedSession(FrameSendingSession delegate, int sendTimeLimitMs, int bufferSizeLimit) {
+            super(delegate, sendTimeLimitMs, bufferSizeLimit, OverflowStrategy.DROP);
+            this.writer = delegate;
+        }
+
+        boolean takeDropped() {
+            // While a send is in flight or messages are buffered, accepted messages may still be written
+            if (getTimeSinceSendStarted() > 0 || getBufferSize() > 0) return false;
+            long loss = accepted.get() - writer.written.get();
+            long reported = reportedLoss.get();
+            return loss > reported && reportedLoss.compareAndSet(reported, loss);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            // Another send may start between the check and the enqueue; a pooled frame dropped then is
+            // left to the garbage collector, which costs an allocation but never reuses a queued buffer
+            if (message instanceof FramePool.Frame frame && (getTimeSinceSendStarted() > 0 || getBufferSize() > 0)) {
+                ByteBuffer payload = frame.getPayload();
+                byte[] copy = new byte[payload.remaining()];
+                payload.get(copy);
+                frame.release();
+                message = new BinaryMessage(copy);
+            }
+            super.sendMessage(message);
+            accepted.incrementAndGet();
+        }
+    }
+
+    // Sits under the buffering decorator, so a frame is released only once it has actually been written
+    private static final class FrameSendingSession extends WebSocketSessionDecorator {
+        final AtomicLong written = new AtomicLong();
+
+        FrameSendingSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (!(message instanceof FramePool.Frame frame)) {
+                super.sendMessage(message);
+                written.incrementAndGet();
+                return;
+            }
+            try {
+                super.sendMessage(new BinaryMessage(frame.getPayload()));
+                written.incrementAndGet();
+            } finally {
+                frame.release();
+            }
+        }
+    }
+}
@@ -1,3 +1,5 @@
+-- Schema as first released. Later versions only alter it, so databases created by any earlier build upgrade in place
+
 CREATE TABLE IF NOT EXISTS vehicles (
   id VARCHAR(50) PRIMARY KEY,
   driver_name VARCHAR(255) NOT NULL,
@@ -0,0 +1,4 @@
+-- Acknowledge/resolve timestamps and the index the active-alert registry loads through
+ALTER TABLE alerts ADD COLUMN acknowledged_at TIMESTAMP NULL;
+ALTER TABLE alerts ADD COLUMN resolved_at TIMESTAMP NULL;
+CREATE INDEX idx_alerts_active_vehicle ON alerts (is_active, vehicle_id);
@@ -0,0 +1,5 @@
+CREATE TABLE IF NOT EXISTS geofences (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  name VARCHAR(100) NOT NULL,
+  vertices TEXT NOT NULL
+);
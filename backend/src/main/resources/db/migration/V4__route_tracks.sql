@@ -0,0 +1,10 @@
+-- Delta/varint-encoded route geometry, one row per segment
+CREATE TABLE IF NOT EXISTS route_tracks (
+  route_id BIGINT NOT NULL,
+  segment INT NOT NULL,
+  first_sequence INT NOT NULL,
+  point_count INT NOT NULL,
+  data MEDIUMBLOB NOT NULL,
+  PRIMARY KEY (route_id, segment),
+  CONSTRAINT fk_route_tracks_route FOREIGN KEY (route_id) REFERENCES routes(id)
+);
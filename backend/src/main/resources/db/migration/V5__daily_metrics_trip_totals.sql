@@ -0,0 +1,8 @@
+-- Trip detection merges its totals into one row per vehicle and day. Rows sharing a (vehicle, date) could only
+-- come from repeated seeding; the oldest is kept so the unique index can be built
+DELETE newer FROM daily_metrics newer
+  JOIN daily_metrics older ON older.vehicle_id = newer.vehicle_id AND older.date = newer.date AND older.id < newer.id;
+ALTER TABLE daily_metrics ADD COLUMN driving_seconds DOUBLE NOT NULL DEFAULT 0;
+ALTER TABLE daily_metrics ADD COLUMN fuel_used_litres DOUBLE NOT NULL DEFAULT 0;
+CREATE INDEX idx_daily_metrics_date ON daily_metrics (date);
+CREATE UNIQUE INDEX idx_daily_metrics_vehicle_date ON daily_metrics (vehicle_id, date);
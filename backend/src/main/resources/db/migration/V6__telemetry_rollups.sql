@@ -0,0 +1,17 @@
+-- Buckets are merged on write (sums, not averages); resolution is 1m, 1h or 1d, scope is vehicle or corridor
+CREATE TABLE IF NOT EXISTS telemetry_rollups (
+  resolution VARCHAR(2) NOT NULL,
+  scope VARCHAR(8) NOT NULL,
+  group_key VARCHAR(64) NOT NULL,
+  bucket_start TIMESTAMP NOT NULL,
+  samples BIGINT NOT NULL,
+  speed_min DOUBLE NOT NULL,
+  speed_max DOUBLE NOT NULL,
+  speed_sum DOUBLE NOT NULL,
+  fuel_min INT NOT NULL,
+  fuel_max INT NOT NULL,
+  fuel_sum BIGINT NOT NULL,
+  distance_km DOUBLE NOT NULL,
+  PRIMARY KEY (resolution, scope, group_key, bucket_start),
+  INDEX idx_rollups_resolution_bucket (resolution, bucket_start)
+);
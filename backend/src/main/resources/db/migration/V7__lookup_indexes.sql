@@ -0,0 +1,4 @@
+-- VehicleRepository.findByCorridor/findByStatus, and route points read in sequence order per route
+CREATE INDEX idx_vehicles_corridor ON vehicles (corridor);
+CREATE INDEX idx_vehicles_status ON vehicles (status);
+CREATE INDEX idx_route_points_route_sequence ON route_points (route_id, sequence);
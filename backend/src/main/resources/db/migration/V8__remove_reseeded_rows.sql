@@ -0,0 +1,39 @@
+-- Earlier builds replayed the demo data on every boot. Copies of the seed rows beyond the first are removed;
+-- rows that differ from the seed in any column are left alone
+-- Rules raise the same low_fuel alert as the seed, so a seed alert is recognised by its pair: each replay
+-- inserted both in one statement (consecutive ids, one created_at), before the first migration was applied
+CREATE TEMPORARY TABLE reseeded_alerts AS
+  SELECT fuel.id AS fuel_id, service.id AS service_id FROM alerts fuel
+    JOIN alerts service ON service.id = fuel.id + 1 AND service.created_at = fuel.created_at
+    WHERE fuel.vehicle_id = 'V-002' AND fuel.type = 'low_fuel' AND fuel.message = 'V-002 - 15% remaining'
+      AND fuel.severity = 'high'
+      AND service.vehicle_id = 'V-005' AND service.type = 'maintenance' AND service.message = 'V-005 - Service required'
+      AND service.severity = 'medium'
+      AND fuel.created_at < (SELECT installed_at FROM schema_version WHERE version = 1);
+SELECT MIN(fuel_id) INTO @first_seed_alert FROM reseeded_alerts;
+DELETE FROM alerts WHERE id IN (SELECT fuel_id FROM reseeded_alerts WHERE fuel_id > @first_seed_alert);
+DELETE FROM alerts WHERE id IN (SELECT service_id FROM reseeded_alerts WHERE fuel_id > @first_seed_alert);
+DROP TEMPORARY TABLE reseeded_alerts;
+
+DELETE newer FROM daily_metrics newer
+  JOIN daily_metrics older ON older.vehicle_id = newer.vehicle_id AND older.total_distance = newer.total_distance
+    AND older.fuel_efficiency = newer.fuel_efficiency AND older.avg_speed = newer.avg_speed AND older.id < newer.id
+  WHERE (newer.vehicle_id, newer.total_distance, newer.fuel_efficiency, newer.avg_speed) IN (('V-001', 147, 16.8, 43), ('V-002', 89, 15.2, 39))
+    AND newer.driving_seconds = 0;
+
+CREATE TEMPORARY TABLE reseeded_routes AS
+  SELECT newer.id FROM routes newer
+    JOIN routes older ON older.vehicle_id = newer.vehicle_id AND older.start_location = newer.start_location
+      AND older.end_location = newer.end_location AND older.distance = newer.distance AND older.id < newer.id
+    WHERE newer.vehicle_id = 'V-001' AND newer.start_location = 'Blantyre' AND newer.end_location = 'Mozambique Border'
+      AND newer.distance = 120 AND newer.duration = 180 AND newer.stops = 3;
+DELETE FROM route_points WHERE route_id IN (SELECT id FROM reseeded_routes);
+DELETE FROM route_tracks WHERE route_id IN (SELECT id FROM reseeded_routes);
+DELETE FROM routes WHERE id IN (SELECT id FROM reseeded_routes);
+DROP TEMPORARY TABLE reseeded_routes;
+
+-- The seed points were always attached to route 1, so each replay added another copy of the same three
+DELETE newer FROM route_points newer
+  JOIN route_points older ON older.route_id = newer.route_id AND older.sequence = newer.sequence
+    AND older.latitude = newer.latitude AND older.longitude = newer.longitude AND older.id < newer.id
+  WHERE newer.route_id = 1;
@@ -0,0 +1,2 @@
+-- Geofence entry/exit alerts are deduplicated per geofence, so overlapping geofences each get their own
+ALTER TABLE alerts ADD COLUMN geofence_id BIGINT NULL;
@@ -1,3 +1,5 @@
+-- Demo fleet, applied by DataInitializer only when fleet.db.seed is on and the vehicles table is empty
+
 INSERT INTO vehicles (id, driver_name, corridor, speed, fuel, status, vehicle_type, latitude, longitude) VALUES
 ('V-001', 'John Smith', 'Beira', 45, 78, 'active', 'truck', -15.7861, 35.0058),
 ('V-002', 'Sarah Johnson', 'Nacala', 41, 45, 'active', 'van', -13.9626, 33.7741),
@@ -8,12 +10,12 @@ INSERT INTO vehicles (id, driver_name, corridor, speed, fuel, status, vehicle_ty
 -- Sample route for V-001
 INSERT INTO routes (vehicle_id, start_location, end_location, distance, duration, avg_speed, stops)
 VALUES ('V-001', 'Blantyre', 'Mozambique Border', 120.0, 180, 40.0, 3);
+SET @route_id = LAST_INSERT_ID();
 
--- Route points for the inserted route id (assumes AUTO_INCREMENT starts at 1)
 INSERT INTO route_points (route_id, latitude, longitude, sequence) VALUES
-(1, -15.7861, 35.0058, 1),
-(1, -16.0000, 35.1000, 2),
-(1, -16.2000, 35.0500, 3);
+(@route_id, -15.7861, 35.0058, 1),
+(@route_id, -16.0000, 35.1000, 2),
+(@route_id, -16.2000, 35.0500, 3);
 
 INSERT INTO alerts (vehicle_id, type, message, severity, is_active) VALUES
 ('V-002', 'low_fuel', 'V-002 - 15% remaining', 'high', true),
@@ -23,3 +25,8 @@ INSERT INTO daily_metrics (vehicle_id, total_distance, fuel_efficiency, avg_spee
 ('V-001', 147, 16.8, 43),
 ('V-002', 89, 15.2, 39);
 
+-- Sample geofences around the corridor ports (vertices are "lat lng" pairs)
+INSERT IGNORE INTO geofences (id, name, vertices) VALUES
+(1, 'Port of Beira', '-19.78 34.78,-19.78 34.90,-19.88 34.90,-19.88 34.78'),
+(2, 'Port of Nacala', '-14.50 40.63,-14.50 40.74,-14.60 40.74,-14.60 40.63'),
+(3, 'Port of Durban', '-29.82 30.97,-29.82 31.07,-29.92 31.07,-29.92 30.97');